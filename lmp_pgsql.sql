@@ -718,3 +718,135 @@ create unique index uk_file_chunk_part_upload_part
 create index idx_file_chunk_part_upload
     on lmp.file_chunk_part (upload_id);
 
+
+create unlogged table lmp.message_holder_session
+(
+    user_id          bigint                                             not null,
+    session_id       bigint                                             not null,
+    node_id          varchar(64)                                        not null,
+    timeout_ms       bigint                                             not null,
+    created_at       timestamp with time zone default CURRENT_TIMESTAMP not null,
+    last_active_time timestamp with time zone default CURRENT_TIMESTAMP not null,
+    expire_at        timestamp with time zone                           not null,
+    constraint pk_message_holder_session
+        primary key (user_id, session_id)
+);
+
+comment on table lmp.message_holder_session is '流式回复暂存会话表（集群部署时共享生成中的会话，unlogged：崩溃后清空，不写WAL）';
+
+comment on column lmp.message_holder_session.user_id is '用户ID';
+
+comment on column lmp.message_holder_session.session_id is '会话ID';
+
+comment on column lmp.message_holder_session.node_id is '写入节点ID';
+
+comment on column lmp.message_holder_session.timeout_ms is '会话超时时间（毫秒）';
+
+comment on column lmp.message_holder_session.created_at is '会话创建时间';
+
+comment on column lmp.message_holder_session.last_active_time is '最后写入时间（按批次更新）';
+
+comment on column lmp.message_holder_session.expire_at is '到期时间（最后写入时间 + 超时时间）';
+
+alter table lmp.message_holder_session
+    owner to postgres;
+
+create index idx_message_holder_session_expire_at
+    on lmp.message_holder_session (expire_at);
+
+comment on index lmp.idx_message_holder_session_expire_at is '按到期时间清理超时会话';
+
+create unlogged table lmp.message_holder_chunk
+(
+    id          bigserial
+        primary key,
+    user_id     bigint   not null,
+    session_id  bigint   not null,
+    is_thinking smallint not null,
+    content     text     not null,
+    constraint fk_message_holder_chunk_session
+        foreign key (user_id, session_id) references lmp.message_holder_session
+            on delete cascade
+);
+
+comment on table lmp.message_holder_chunk is '流式回复暂存内容分块表（每批追加一行，按id顺序拼接）';
+
+comment on column lmp.message_holder_chunk.id is '分块ID（同一会话内按写入顺序递增）';
+
+comment on column lmp.message_holder_chunk.is_thinking is '是否思考内容：1-思考，0-回复';
+
+comment on column lmp.message_holder_chunk.content is '本批追加的内容';
+
+alter table lmp.message_holder_chunk
+    owner to postgres;
+
+create index idx_message_holder_chunk_session
+    on lmp.message_holder_chunk (user_id, session_id, is_thinking, id);
+
+comment on index lmp.idx_message_holder_chunk_session is '按会话与类型顺序读取暂存内容';
+
+create unlogged table lmp.message_holder_node
+(
+    node_id        varchar(64)                                        not null
+        primary key,
+    base_url       varchar(255)                                       not null,
+    heartbeat_time timestamp with time zone default CURRENT_TIMESTAMP not null
+);
+
+comment on table lmp.message_holder_node is '集群节点表（重新接入落到其他节点时按生成所属节点转发）';
+
+comment on column lmp.message_holder_node.node_id is '节点ID（生成ID的前缀）';
+
+comment on column lmp.message_holder_node.base_url is '节点对外地址';
+
+comment on column lmp.message_holder_node.heartbeat_time is '最后心跳时间';
+
+alter table lmp.message_holder_node
+    owner to postgres;
+
+create extension if not exists vector;
+
+-- 向量表（由PgVectorEmbeddingStore按列存储元数据，已存在时补充片段哈希列）
+create table if not exists public.rag_embedding
+(
+    embedding_id uuid not null
+        primary key,
+    embedding    vector(768),
+    text         text,
+    file_key     varchar(512) not null,
+    content_hash char(64)
+);
+
+alter table public.rag_embedding
+    add column if not exists file_key varchar(512);
+
+alter table public.rag_embedding
+    add column if not exists content_hash char(64);
+
+-- 旧版本入库的片段没有文档标识，无法归属到用户和文档（重新上传时也不会被比对或删除），清理后需重新上传
+delete
+from public.rag_embedding
+where file_key is null;
+
+alter table public.rag_embedding
+    alter column file_key set not null;
+
+comment on table public.rag_embedding is 'RAG文档片段向量表';
+
+comment on column public.rag_embedding.embedding_id is '片段ID';
+
+comment on column public.rag_embedding.embedding is '片段向量';
+
+comment on column public.rag_embedding.text is '片段内容';
+
+comment on column public.rag_embedding.file_key is '所属文档标识（用户ID/文档ID，重新上传时按此比对）';
+
+comment on column public.rag_embedding.content_hash is '片段内容SHA-256（重新上传时只向量化哈希未出现过的片段）';
+
+create index if not exists idx_rag_embedding_file_key_hash
+    on public.rag_embedding (file_key, content_hash);
+
+comment on index public.idx_rag_embedding_file_key_hash is '按文档读取已入库片段哈希';
+
+alter table public.rag_embedding
+    owner to postgres;
@@ -1,6 +1,10 @@
 package com.xjtu.springboot.component;
 
+import com.xjtu.springboot.component.pool.VirtualThreadExecutor;
 import com.xjtu.springboot.config.ThreadPoolConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,21 +12,45 @@ import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PreDestroy;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @Component
 public class ThreadPoolManager {
     private static final Logger log = LoggerFactory.getLogger(ThreadPoolManager.class);
 
+    // 拒绝策略
+    private static final String REJECT_ABORT = "abort";
+    private static final String REJECT_CALLER_RUNS = "caller-runs";
+    private static final String REJECT_DISCARD = "discard";
+    private static final String REJECT_DISCARD_OLDEST = "discard-oldest";
+
+    // 线程池线程未捕获异常处理器（平台线程与虚拟线程共用）
+    private static final Thread.UncaughtExceptionHandler UNCAUGHT_EXCEPTION_HANDLER = (t, e) ->
+            log.error("线程池线程[{}]执行异常", t.getName(), e);
+
     // 注入配置类
     @Autowired
     private ThreadPoolConfig threadPoolConfig;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 任务排队耗时指标：key=业务标识
+     */
+    private final Map<String, Timer> queueWaitTimerMap = new ConcurrentHashMap<>();
+
     /**
      * 存储已创建的线程池：key=业务标识（如sse/order），value=线程池实例
      */
@@ -46,10 +74,13 @@ public class ThreadPoolManager {
                     ExecutorService pool = createThreadPool(bizName);
                     threadPoolMap.put(bizName, pool);
                     shutdownFlagMap.put(bizName, new AtomicBoolean(false));
-                    log.debug("通用线程池[{}]创建完成，配置：核心数={}，线程名前缀={}",
+                    ThreadPoolConfig.PoolConfig config = threadPoolConfig.getConfig(bizName);
+                    log.debug("通用线程池[{}]创建完成，配置：核心数={}，虚拟线程={}，最大并发={}，线程名前缀={}",
                             bizName,
-                            threadPoolConfig.getConfig(bizName).getCoreSize(),
-                            threadPoolConfig.getConfig(bizName).getThreadNamePrefix());
+                            config.getCoreSize(),
+                            config.isVirtual(),
+                            config.resolveMaxConcurrency(),
+                            config.getThreadNamePrefix());
                 }
             }
         }
@@ -105,17 +136,149 @@ public class ThreadPoolManager {
         }
     }
 
+    /**
+     * 提交任务（带排队超时控制）
+     * 线程池已满时按拒绝策略处理（默认直接抛出RejectedExecutionException，调用方可快速失败）；
+     * 任务排队超过maxQueueWaitMs时不再执行，返回的Future以RejectedExecutionException结束
+     * @param bizName 业务标识
+     * @param task 任务
+     * @return 任务完成信号
+     */
+    public CompletableFuture<Void> runAsync(String bizName, Runnable task) {
+        return supplyAsync(bizName, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 提交有返回值的任务（排队超时与拒绝处理同runAsync）
+     * @param bizName 业务标识
+     * @param task 任务
+     * @return 任务结果
+     */
+    public <T> CompletableFuture<T> supplyAsync(String bizName, Supplier<T> task) {
+        ExecutorService pool = getThreadPool(bizName);
+        long maxQueueWaitMs = threadPoolConfig.getConfig(bizName).getMaxQueueWaitMs();
+        Timer queueWaitTimer = queueWaitTimerMap.computeIfAbsent(bizName, name -> Timer.builder("thread.pool.queue.wait")
+                .description("任务从提交到开始执行的排队耗时")
+                .tag("pool", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        QueuedTask<T> queuedTask = new QueuedTask<>(bizName, task, maxQueueWaitMs, queueWaitTimer);
+        pool.execute(queuedTask);
+        // 排队中被调用方取消：立即出队，不再占用队列容量
+        queuedTask.future.whenComplete((ignored, ex) -> {
+            if (queuedTask.future.isCancelled()) {
+                removeQueued(pool, queuedTask);
+            }
+        });
+        return queuedTask.future;
+    }
+
+    private static void removeQueued(ExecutorService pool, Runnable task) {
+        if (pool instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) pool).remove(task);
+        } else if (pool instanceof VirtualThreadExecutor) {
+            ((VirtualThreadExecutor) pool).remove(task);
+        }
+    }
+
     /**
      * 创建指定业务的线程池（内部方法）
      */
     private ExecutorService createThreadPool(String bizName) {
         ThreadPoolConfig.PoolConfig config = threadPoolConfig.getConfig(bizName);
-        return Executors.newFixedThreadPool(
+        if (!threadPoolConfig.getConfigs().containsKey(bizName)) {
+            log.warn("线程池[{}]未单独配置，使用默认配置（核心数={}，队列容量={}，拒绝策略={}）",
+                    bizName, config.getCoreSize(), config.getQueueCapacity(), config.getRejectPolicy());
+        }
+        String rejectPolicy = config.getRejectPolicy();
+        if (config.isVirtual()) {
+            // 虚拟线程模式：每任务一线程，信号量限制并发（适合大量IO等待的业务）
+            return new VirtualThreadExecutor(
+                    config.getThreadNamePrefix(),
+                    config.resolveMaxConcurrency(),
+                    config.getQueueCapacity(),
+                    command -> handleVirtualRejected(bizName, rejectPolicy, command),
+                    UNCAUGHT_EXCEPTION_HANDLER,
+                    createThreadFactory(config.getThreadNamePrefix())
+            );
+        }
+        // 有界队列：避免突发流量下任务无限堆积
+        BlockingQueue<Runnable> workQueue = config.getQueueCapacity() > 0
+                ? new LinkedBlockingQueue<>(config.getQueueCapacity())
+                : new LinkedBlockingQueue<>();
+        return new ThreadPoolExecutor(
                 config.getCoreSize(),
-                createThreadFactory(config.getThreadNamePrefix())
+                config.getCoreSize(),
+                0L, TimeUnit.MILLISECONDS,
+                workQueue,
+                createThreadFactory(config.getThreadNamePrefix()),
+                createRejectedHandler(bizName, rejectPolicy)
         );
     }
 
+    /**
+     * 创建拒绝策略（abort/caller-runs/discard/discard-oldest）
+     * 被丢弃的runAsync任务会以RejectedExecutionException结束，避免调用方永久等待
+     */
+    private RejectedExecutionHandler createRejectedHandler(String bizName, String rejectPolicy) {
+        switch (StringUtils.defaultIfBlank(rejectPolicy, REJECT_ABORT)) {
+            case REJECT_CALLER_RUNS:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        rejectTask(bizName, runnable, "线程池已关闭");
+                        return;
+                    }
+                    log.warn("线程池[{}]已满，由调用线程执行任务", bizName);
+                    runnable.run();
+                };
+            case REJECT_DISCARD:
+                return (runnable, executor) -> rejectTask(bizName, runnable, "线程池已满，丢弃任务");
+            case REJECT_DISCARD_OLDEST:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        rejectTask(bizName, runnable, "线程池已关闭");
+                        return;
+                    }
+                    rejectTask(bizName, executor.getQueue().poll(), "线程池已满，丢弃最早的排队任务");
+                    executor.execute(runnable);
+                };
+            default:
+                return (runnable, executor) -> {
+                    log.warn("线程池[{}]已满（排队任务数：{}），拒绝新任务", bizName, executor.getQueue().size());
+                    throw new RejectedExecutionException("线程池[" + bizName + "]已满，拒绝新任务");
+                };
+        }
+    }
+
+    /**
+     * 虚拟线程模式的拒绝处理（不支持discard-oldest，按abort处理）
+     */
+    private void handleVirtualRejected(String bizName, String rejectPolicy, Runnable runnable) {
+        String policy = StringUtils.defaultIfBlank(rejectPolicy, REJECT_ABORT);
+        if (REJECT_CALLER_RUNS.equals(policy)) {
+            log.warn("线程池[{}]等待任务已满，由调用线程执行任务", bizName);
+            runnable.run();
+        } else if (REJECT_DISCARD.equals(policy)) {
+            rejectTask(bizName, runnable, "等待任务已满，丢弃任务");
+        } else {
+            log.warn("线程池[{}]等待任务已满，拒绝新任务", bizName);
+            throw new RejectedExecutionException("线程池[" + bizName + "]已满，拒绝新任务");
+        }
+    }
+
+    /**
+     * 丢弃任务：runAsync提交的任务需要通知调用方
+     */
+    private void rejectTask(String bizName, Runnable runnable, String reason) {
+        log.warn("线程池[{}]{}", bizName, reason);
+        if (runnable instanceof QueuedTask) {
+            ((QueuedTask<?>) runnable).reject(reason);
+        }
+    }
+
     /**
      * 创建通用线程工厂（自定义线程名、守护线程、异常处理器）
      */
@@ -127,12 +290,56 @@ public class ThreadPoolManager {
             // 守护线程：JVM退出时自动销毁
             thread.setDaemon(true);
             // 未捕获异常处理器：防止线程静默失败
-            thread.setUncaughtExceptionHandler((t, e) ->
-                    log.error("线程池线程[{}]执行异常", t.getName(), e));
+            thread.setUncaughtExceptionHandler(UNCAUGHT_EXCEPTION_HANDLER);
             return thread;
         };
     }
 
+    /**
+     * 带排队时间控制的任务包装
+     */
+    private static class QueuedTask<T> implements Runnable {
+        private final String bizName;
+        private final Supplier<T> task;
+        private final long maxQueueWaitMs;
+        private final Timer queueWaitTimer;
+        // 入队时间（纳秒）
+        private final long enqueueTime = System.nanoTime();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        QueuedTask(String bizName, Supplier<T> task, long maxQueueWaitMs, Timer queueWaitTimer) {
+            this.bizName = bizName;
+            this.task = task;
+            this.maxQueueWaitMs = maxQueueWaitMs;
+            this.queueWaitTimer = queueWaitTimer;
+        }
+
+        @Override
+        public void run() {
+            // 排队期间已被取消或拒绝
+            if (future.isDone()) {
+                return;
+            }
+            long waitNanos = System.nanoTime() - enqueueTime;
+            queueWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+            long waitMs = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+            if (maxQueueWaitMs > 0 && waitMs > maxQueueWaitMs) {
+                log.warn("线程池[{}]任务排队{}ms，超过上限{}ms，放弃执行", bizName, waitMs, maxQueueWaitMs);
+                reject("任务排队超时");
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        void reject(String reason) {
+            future.completeExceptionally(new RejectedExecutionException("线程池[" + bizName + "]" + reason));
+        }
+    }
+
     /**
      * Spring容器销毁时，关闭所有线程池
      */
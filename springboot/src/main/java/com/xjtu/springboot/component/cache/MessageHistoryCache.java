@@ -0,0 +1,219 @@
+package com.xjtu.springboot.component.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xjtu.springboot.config.HistoryCacheConfig;
+import com.xjtu.springboot.pojo.Message;
+import com.xjtu.springboot.util.ChatUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 会话消息历史缓存（key=用户ID+会话ID，value=按发送时间升序的消息列表）
+ * 新消息增量追加到已缓存的会话，不重新查库；删除会话、暂停回复时整体失效；
+ * 按消息内容字节数加权淘汰，命中率等指标以message.history为名注册到Micrometer
+ * 缓存的消息列表不可修改，追加时生成新列表（只复制引用），读取方拿到的快照不会变化
+ * 每个会话同时维护消息的token累计值：追加时只累加新消息，构建上下文时不需要逐条重新计算
+ */
+@Slf4j
+@Component
+public class MessageHistoryCache {
+    // 单条消息的固定开销估算（对象头、字段、时间等）
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private final HistoryCacheConfig config;
+    private final Cache<SessionKey, SessionHistory> cache;
+
+    public MessageHistoryCache(HistoryCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxWeightBytes())
+                .weigher((SessionKey key, SessionHistory history) -> history.weight)
+                .expireAfterAccess(config.getExpireAfterAccessMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "message.history");
+    }
+
+    /**
+     * 缓存键
+     */
+    private static final class SessionKey {
+        private final long userId;
+        private final long sessionId;
+
+        SessionKey(Long userId, Long sessionId) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey that = (SessionKey) o;
+            return userId == that.userId && sessionId == that.sessionId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, sessionId);
+        }
+    }
+
+    /**
+     * 会话消息快照（消息按发送时间升序，tokenCount为所有消息的token累计值）
+     */
+    public static final class SessionHistory {
+        private static final SessionHistory EMPTY = new SessionHistory(Collections.emptyList(), 0, 0L);
+
+        private final List<Message> messages;
+        private final int weight;
+        private final long tokenCount;
+
+        private SessionHistory(List<Message> messages, int weight, long tokenCount) {
+            this.messages = messages;
+            this.weight = weight;
+            this.tokenCount = tokenCount;
+        }
+
+        static SessionHistory of(List<Message> messages) {
+            return new SessionHistory(Collections.unmodifiableList(new ArrayList<>(messages)),
+                    weigh(messages), countTokens(messages));
+        }
+
+        SessionHistory append(List<Message> appended) {
+            List<Message> merged = new ArrayList<>(messages.size() + appended.size());
+            merged.addAll(messages);
+            merged.addAll(appended);
+            long total = (long) weight + weigh(appended);
+            return new SessionHistory(Collections.unmodifiableList(merged),
+                    (int) Math.min(Integer.MAX_VALUE, total), tokenCount + countTokens(appended));
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public long getTokenCount() {
+            return tokenCount;
+        }
+    }
+
+    /**
+     * 消息的token累计值（含每条消息的格式开销）
+     */
+    public static long countTokens(List<Message> messages) {
+        long tokens = 0;
+        for (Message message : messages) {
+            tokens += ChatUtil.messageTokens(message.getTokenCount(), message.getContent());
+        }
+        return tokens;
+    }
+
+    private static int weigh(List<Message> messages) {
+        long bytes = 0;
+        for (Message message : messages) {
+            bytes += MESSAGE_OVERHEAD_BYTES + 2L * (length(message.getContent()) + length(message.getThinking()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * 获取会话消息（未命中时调用loader查库并缓存），返回不可修改的列表
+     */
+    public List<Message> get(Long userId, Long sessionId, Supplier<List<Message>> loader) {
+        return getHistory(userId, sessionId, loader).getMessages();
+    }
+
+    /**
+     * 获取会话消息及其token累计值（未命中时调用loader查库并缓存）
+     */
+    public SessionHistory getHistory(Long userId, Long sessionId, Supplier<List<Message>> loader) {
+        if (!config.isEnabled()) {
+            List<Message> loaded = loader.get();
+            return loaded == null || loaded.isEmpty() ? SessionHistory.EMPTY : SessionHistory.of(loaded);
+        }
+        SessionHistory history = cache.get(new SessionKey(userId, sessionId), key -> {
+            List<Message> loaded = loader.get();
+            // 空会话不缓存，交给调用方按原有逻辑处理
+            return loaded == null || loaded.isEmpty() ? null : SessionHistory.of(loaded);
+        });
+        return history == null ? SessionHistory.EMPTY : history;
+    }
+
+    /**
+     * 只读取缓存（未命中返回null）
+     */
+    public List<Message> getIfPresent(Long userId, Long sessionId) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        SessionHistory history = cache.getIfPresent(new SessionKey(userId, sessionId));
+        return history == null ? null : history.messages;
+    }
+
+    /**
+     * 追加新消息（仅对已缓存的会话生效）；处于事务中时在事务提交后追加
+     */
+    public void append(Long userId, Long sessionId, List<Message> messages) {
+        if (!config.isEnabled() || messages.isEmpty()) {
+            return;
+        }
+        List<Message> appended = new ArrayList<>(messages);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        doAppend(userId, sessionId, appended);
+                    } else {
+                        invalidate(userId, sessionId);
+                    }
+                }
+            });
+        } else {
+            doAppend(userId, sessionId, appended);
+        }
+    }
+
+    private void doAppend(Long userId, Long sessionId, List<Message> messages) {
+        cache.asMap().computeIfPresent(new SessionKey(userId, sessionId), (key, history) -> history.append(messages));
+    }
+
+    /**
+     * 会话失效（删除会话、暂停回复等会修改已有消息的操作）
+     */
+    public void invalidate(Long userId, Long sessionId) {
+        SessionKey key = new SessionKey(userId, sessionId);
+        cache.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务提交前其他请求可能又加载了旧数据，事务结束后再失效一次
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(key);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.xjtu.springboot.component.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * 集群节点间通信（跨节点的清除、取消信号，以及生成所属节点的定位）
+ * 单节点部署时为空实现：不广播，不转发
+ */
+public interface ClusterBus {
+    /** 会话暂存内容已清除（payload：userId:sessionId，sessionId为*表示该用户全部会话） */
+    String TOPIC_CLEAR = "clear";
+    /** 取消会话进行中的生成（payload：userId:sessionId:reason） */
+    String TOPIC_CANCEL = "cancel";
+
+    /**
+     * 本节点ID（单节点部署时为null）
+     */
+    String getNodeId();
+
+    /**
+     * 广播到其他节点（本节点不会收到）
+     */
+    void publish(String topic, String payload);
+
+    /**
+     * 订阅其他节点广播的事件（在通信线程上回调，处理需快速返回）
+     */
+    void subscribe(String topic, Consumer<String> handler);
+
+    /**
+     * 节点对外地址（节点不存在或心跳超时时返回null）
+     */
+    String resolveNodeUrl(String nodeId);
+}
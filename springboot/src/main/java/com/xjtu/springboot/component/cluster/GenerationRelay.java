@@ -0,0 +1,172 @@
+package com.xjtu.springboot.component.cluster;
+
+import com.xjtu.springboot.common.Result;
+import com.xjtu.springboot.config.PgStorageConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+/**
+ * 重新接入转发：生成在其他节点时，把请求转发到所属节点，SSE字节流原样转发（事件ID与Last-Event-ID语义不变）
+ * 客户端断开时取消转发请求，所属节点随之摘除该连接（宽限期后按无人接入处理）
+ */
+@Slf4j
+@Component
+public class GenerationRelay {
+    /** 转发请求标记（值为发起转发的节点ID），所属节点不会再次转发 */
+    public static final String RELAY_HEADER = "X-Generation-Relay";
+    private static final String ERROR_EVENT = "error";
+
+    private final ClusterBus clusterBus;
+    private final HttpClient httpClient;
+
+    public GenerationRelay(ClusterBus clusterBus, PgStorageConfig config) {
+        this.clusterBus = clusterBus;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(Math.max(100L, config.getRelayConnectTimeoutMs())))
+                .build();
+    }
+
+    /**
+     * 转发重新接入请求
+     *
+     * @return 转发用的Emitter；所属节点不存在或心跳超时时返回null
+     */
+    public SseEmitter relay(String ownerNode, String generationId, String lastEventId, long timeoutMs) {
+        String baseUrl = clusterBus.resolveNodeUrl(ownerNode);
+        if (baseUrl == null) {
+            return null;
+        }
+        String url = baseUrl + "/session/chat/stream/" + URLEncoder.encode(generationId, StandardCharsets.UTF_8);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", MediaType.TEXT_EVENT_STREAM_VALUE)
+                .header(RELAY_HEADER, String.valueOf(clusterBus.getNodeId()))
+                .GET();
+        if (lastEventId != null) {
+            builder.header("Last-Event-ID", lastEventId);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        RelaySubscriber subscriber = new RelaySubscriber(emitter);
+        CompletableFuture<HttpResponse<Void>> exchange = httpClient.sendAsync(builder.build(), info ->
+                info.statusCode() == 200
+                        ? HttpResponse.BodySubscribers.fromSubscriber(subscriber)
+                        : HttpResponse.BodySubscribers.replacing(null));
+        exchange.whenComplete((response, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (!(cause instanceof CancellationException)) {
+                    log.warn("转发重新接入失败, generationId: {}, 节点: {}", generationId, ownerNode, cause);
+                    sendErrorAndComplete(emitter, 502, "生成所在节点不可用");
+                }
+            } else if (response.statusCode() != 200) {
+                log.warn("转发重新接入失败, generationId: {}, 节点: {}, 状态码: {}",
+                        generationId, ownerNode, response.statusCode());
+                sendErrorAndComplete(emitter, 502, "生成所在节点不可用");
+            }
+        });
+
+        // 客户端断开：取消转发（响应头到达前取消请求，之后取消订阅）
+        Runnable cancel = () -> {
+            exchange.cancel(true);
+            subscriber.cancel();
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(() -> {
+            cancel.run();
+            emitter.complete();
+        });
+        emitter.onError(e -> cancel.run());
+        log.debug("转发重新接入, generationId: {}, 节点: {} ({})", generationId, ownerNode, baseUrl);
+        return emitter;
+    }
+
+    private static void sendErrorAndComplete(SseEmitter emitter, int code, String message) {
+        try {
+            emitter.send(SseEmitter.event().name(ERROR_EVENT).data(Result.error(code, message)));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("发送转发错误事件失败: {}", e.getMessage());
+        } finally {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * 把所属节点的响应体原样写入客户端连接
+     */
+    private static final class RelaySubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private final SseEmitter emitter;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled = false;
+
+        RelaySubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    emitter.send(Collections.singleton(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN)));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开
+                cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!cancelled) {
+                log.debug("转发连接中断: {}", throwable.getMessage());
+            }
+            emitter.complete();
+        }
+
+        @Override
+        public void onComplete() {
+            emitter.complete();
+        }
+    }
+}
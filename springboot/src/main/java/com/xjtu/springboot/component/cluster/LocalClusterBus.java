@@ -0,0 +1,31 @@
+package com.xjtu.springboot.component.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 单节点部署（非pgsql存储）：没有其他节点，广播与订阅都为空操作
+ */
+@Component
+@ConditionalOnExpression("'${message.holder.storage:local}' != 'pgsql'")
+public class LocalClusterBus implements ClusterBus {
+    @Override
+    public String getNodeId() {
+        return null;
+    }
+
+    @Override
+    public void publish(String topic, String payload) {
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<String> handler) {
+    }
+
+    @Override
+    public String resolveNodeUrl(String nodeId) {
+        return null;
+    }
+}
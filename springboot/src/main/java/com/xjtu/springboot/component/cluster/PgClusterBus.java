@@ -0,0 +1,239 @@
+package com.xjtu.springboot.component.cluster;
+
+import com.xjtu.springboot.config.PgStorageConfig;
+import com.xjtu.springboot.mapper.MessageHolderMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 基于PostgreSQL LISTEN/NOTIFY的集群通信
+ * 1. 广播：通过连接池执行pg_notify，消息格式为 nodeId|topic|payload，各节点忽略自己发出的消息
+ * 2. 接收：独立的专用连接（不占用连接池）LISTEN通知通道，断开后按间隔重连；断开期间的通知会丢失，
+ *    遗留的暂存内容由超时清理兜底
+ * 3. 节点目录：定时写入心跳与对外地址，重新接入落到其他节点时按生成所属节点转发
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "message.holder", name = "storage", havingValue = "pgsql")
+public class PgClusterBus implements ClusterBus {
+    private static final char SEPARATOR = '|';
+    private static final Pattern CHANNEL_PATTERN = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    private final PgStorageConfig config;
+    private final MessageHolderMapper mapper;
+    private final String nodeId;
+    private final String baseUrl;
+    // 监听专用连接参数
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    // 事件订阅（topic → 回调）
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    // 心跳线程（守护线程）
+    private final ScheduledExecutorService scheduler;
+    private final Thread listener;
+    private volatile boolean running = true;
+    // 监控指标
+    private final Counter publishFailCounter;
+    private final Counter receivedCounter;
+
+    public PgClusterBus(PgStorageConfig config,
+                        MessageHolderMapper mapper,
+                        MeterRegistry meterRegistry,
+                        @Value("${spring.datasource.url}") String jdbcUrl,
+                        @Value("${spring.datasource.username:}") String username,
+                        @Value("${spring.datasource.password:}") String password,
+                        @Value("${server.port:8080}") int serverPort) {
+        if (!CHANNEL_PATTERN.matcher(config.getNotifyChannel()).matches()) {
+            throw new IllegalStateException("通知通道名称不合法：" + config.getNotifyChannel());
+        }
+        this.config = config;
+        this.mapper = mapper;
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.nodeId = resolveNodeId(config.getNodeId(), serverPort);
+        this.baseUrl = StringUtils.isNotBlank(config.getAdvertiseUrl())
+                ? StringUtils.removeEnd(config.getAdvertiseUrl().trim(), "/")
+                : "http://" + localAddress() + ":" + serverPort;
+        this.publishFailCounter = meterRegistry.counter("cluster.notify.publish.fail");
+        this.receivedCounter = meterRegistry.counter("cluster.notify.received");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        this.listener = new Thread(this::listenLoop, "cluster-listener");
+        this.listener.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        long heartbeatMs = Math.max(1000L, config.getHeartbeatMs());
+        scheduler.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+        listener.start();
+        log.info("集群通信已启动：节点={}，地址={}，通知通道={}", nodeId, baseUrl, config.getNotifyChannel());
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(String topic, String payload) {
+        try {
+            mapper.notify(config.getNotifyChannel(), nodeId + SEPARATOR + topic + SEPARATOR + payload);
+        } catch (Exception e) {
+            publishFailCounter.increment();
+            log.warn("集群广播失败：topic={}，payload={}", topic, payload, e);
+        }
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<String> handler) {
+        handlers.computeIfAbsent(topic, key -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    @Override
+    public String resolveNodeUrl(String targetNodeId) {
+        if (StringUtils.isBlank(targetNodeId)) {
+            return null;
+        }
+        if (nodeId.equals(targetNodeId)) {
+            return baseUrl;
+        }
+        try {
+            return mapper.selectNodeUrl(targetNodeId, config.getNodeTtlMs());
+        } catch (Exception e) {
+            log.warn("查询节点地址失败：{}", targetNodeId, e);
+            return null;
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            mapper.upsertNode(nodeId, baseUrl);
+        } catch (Exception e) {
+            log.warn("节点心跳写入失败：{}", e.getMessage());
+        }
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+                 Statement statement = connection.createStatement()) {
+                // 通道名已校验为合法标识符
+                statement.execute("LISTEN " + config.getNotifyChannel());
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("集群通知监听已连接：{}", config.getNotifyChannel());
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(Math.max(1, config.getListenPollMs()));
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("集群通知监听断开，{}ms后重连：{}", config.getReconnectDelayMs(), e.getMessage());
+                try {
+                    Thread.sleep(config.getReconnectDelayMs());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String message) {
+        int first = message == null ? -1 : message.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : message.indexOf(SEPARATOR, first + 1);
+        if (second < 0) {
+            log.warn("忽略格式错误的集群通知：{}", message);
+            return;
+        }
+        if (nodeId.equals(message.substring(0, first))) {
+            return;
+        }
+        receivedCounter.increment();
+        String topic = message.substring(first + 1, second);
+        String payload = message.substring(second + 1);
+        List<Consumer<String>> topicHandlers = handlers.get(topic);
+        if (topicHandlers == null) {
+            return;
+        }
+        for (Consumer<String> handler : topicHandlers) {
+            try {
+                handler.accept(payload);
+            } catch (Exception e) {
+                log.error("处理集群通知异常：topic={}，payload={}", topic, payload, e);
+            }
+        }
+    }
+
+    private static String resolveNodeId(String configured, int serverPort) {
+        String raw = StringUtils.isNotBlank(configured) ? configured : localHostName() + "-" + serverPort;
+        // 节点ID用作生成ID前缀，不能包含'.'与通知分隔符
+        String sanitized = raw.replaceAll("[^A-Za-z0-9_-]", "-");
+        return StringUtils.left(sanitized, 64);
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+
+    private static String localAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        listener.interrupt();
+        scheduler.shutdownNow();
+        try {
+            mapper.deleteNode(nodeId);
+        } catch (Exception e) {
+            log.debug("注销节点失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.xjtu.springboot.component.generation;
+
+import com.xjtu.springboot.component.storage.MemoryBudget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 一次AI回复生成（与HTTP连接解耦）
+ * 所有事件帧按序号写入服务端日志，再通知当前接入的连接；
+ * 每个连接持有自己的发送游标，由推送线程池按游标从日志读取并发送：写入日志不等待任何连接，
+ * 慢连接只拖慢自己，不会阻塞上游与其他连接；
+ * 日志占用计入所有生成共用的内存预算，预算不足时写入失败（由调用方按超限取消生成）；
+ * 连接断开不影响生成，客户端携带Last-Event-ID重新接入时从该序号之后继续发送；
+ * 取消时中断上游的HTTP交换，Ollama随之停止解码
+ */
+@Slf4j
+public class Generation {
+    private static final byte[] ID_PREFIX = "id:".getBytes(StandardCharsets.UTF_8);
+    // 每帧预留的id行字节数（"id:" + 最长19位序号 + 换行）
+    private static final int ID_LINE_BYTES = ID_PREFIX.length + 20;
+
+    private final String id;
+    private final Long userId;
+    private final Long sessionId;
+    private final long createdAt = System.currentTimeMillis();
+    // 推送线程池（发送会阻塞在慢连接上，不能在写入日志的线程上执行）
+    private final Executor sendExecutor;
+    // 所有生成的日志共用的内存预算
+    private final MemoryBudget logBudget;
+
+    // 事件帧日志（下标+1即事件序号）
+    private final List<byte[]> frames = new ArrayList<>();
+    // 日志已预留的字节数
+    private long logBytes = 0;
+    // 日志已释放（过期清理/预算回收），之后不再写入
+    private boolean released = false;
+    // 当前接入的连接（写入时遍历通知，接入/断开较少）
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean finished = false;
+    private volatile long finishedAt = 0;
+    // 上游AI请求（cancel即中断HTTP交换）
+    private volatile CompletableFuture<Void> upstream;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile String cancelReason;
+    // 暂存内容的读写与取消互斥（暂存按会话保存，同一会话的新生成会重新初始化）
+    private final Object holderMonitor = new Object();
+
+    public Generation(String id, Long userId, Long sessionId, Executor sendExecutor, MemoryBudget logBudget) {
+        this.id = id;
+        this.userId = userId;
+        this.sessionId = sessionId;
+        this.sendExecutor = sendExecutor;
+        this.logBudget = logBudget;
+    }
+
+    /**
+     * 绑定上游请求（绑定前已取消则立即取消）
+     */
+    public void setUpstream(CompletableFuture<Void> upstream) {
+        this.upstream = upstream;
+        if (cancelled.get()) {
+            upstream.cancel(true);
+        }
+    }
+
+    /**
+     * 取消生成：中断上游请求，收尾由上游结束回调完成（不加生成锁）
+     * 返回后本生成不会再读写暂存内容
+     *
+     * @param reason 取消原因
+     * @return 是否为本次调用取消（已结束/已取消返回false）
+     */
+    public boolean cancel(String reason) {
+        synchronized (holderMonitor) {
+            if (finished || !cancelled.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelReason = reason;
+        }
+        CompletableFuture<Void> current = upstream;
+        if (current != null) {
+            current.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * 未取消时读写暂存内容（与cancel互斥：同一会话的新生成取消本生成后，本生成不会再读写新生成的暂存）
+     *
+     * @return 已取消时返回null（不执行）
+     */
+    public <T> T accessHolder(Supplier<T> action) {
+        synchronized (holderMonitor) {
+            return cancelled.get() ? null : action.get();
+        }
+    }
+
+    /**
+     * 写入一个事件帧（不含id行的完整SSE帧）并通知所有接入的连接
+     *
+     * @return 生成已结束或日志内存预算不足时返回false（不写入）
+     */
+    public boolean publish(byte[] frame) {
+        long bytes = frame.length + ID_LINE_BYTES;
+        if (!logBudget.tryReserve(bytes)) {
+            log.warn("生成日志内存预算不足（已用：{}字节，上限：{}字节）, generationId: {}",
+                    logBudget.getUsedBytes(), logBudget.getLimitBytes(), id);
+            return false;
+        }
+        return append(frame, bytes);
+    }
+
+    /**
+     * 写入结束事件帧（完成/错误，每个生成只有一帧）：不受预算限制，保证客户端能收到结果
+     */
+    public void publishFinal(byte[] frame) {
+        long bytes = frame.length + ID_LINE_BYTES;
+        logBudget.forceReserve(bytes);
+        append(frame, bytes);
+    }
+
+    private boolean append(byte[] frame, long bytes) {
+        synchronized (this) {
+            if (finished || released) {
+                logBudget.release(bytes);
+                log.warn("生成已结束, 丢弃事件帧, generationId: {}", id);
+                return false;
+            }
+            byte[] idLine = (frames.size() + 1 + "\n").getBytes(StandardCharsets.UTF_8);
+            byte[] numbered = new byte[ID_PREFIX.length + idLine.length + frame.length];
+            System.arraycopy(ID_PREFIX, 0, numbered, 0, ID_PREFIX.length);
+            System.arraycopy(idLine, 0, numbered, ID_PREFIX.length, idLine.length);
+            System.arraycopy(frame, 0, numbered, ID_PREFIX.length + idLine.length, frame.length);
+            frames.add(numbered);
+            logBytes += bytes;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal();
+        }
+        return true;
+    }
+
+    /**
+     * 接入连接：先发送生成信息，再从lastEventId之后的日志开始发送；生成已结束则发送完后完成连接
+     */
+    public void attach(SseEmitter emitter, byte[] headerFrame, long lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter, headerFrame);
+        synchronized (this) {
+            subscriber.cursor = (int) Math.max(0, Math.min(lastEventId, frames.size()));
+            subscribers.add(subscriber);
+        }
+        subscriber.signal();
+    }
+
+    /**
+     * 断开连接（生成继续）
+     */
+    public void detach(SseEmitter emitter) {
+        subscribers.removeIf(subscriber -> {
+            if (subscriber.emitter != emitter) {
+                return false;
+            }
+            subscriber.closed = true;
+            return true;
+        });
+    }
+
+    /**
+     * 生成结束：各连接发送完剩余日志后完成，日志保留到过期清理
+     */
+    public void finish() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            finishedAt = System.currentTimeMillis();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal();
+        }
+    }
+
+    /**
+     * 释放日志（过期清理/预算回收时调用，之后不能再重新接入）
+     *
+     * @return 释放的字节数
+     */
+    public long releaseLog() {
+        long bytes;
+        synchronized (this) {
+            if (released) {
+                return 0;
+            }
+            released = true;
+            frames.clear();
+            bytes = logBytes;
+            logBytes = 0;
+        }
+        logBudget.release(bytes);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal();
+        }
+        return bytes;
+    }
+
+    private boolean sendFrame(SseEmitter emitter, byte[] frame) {
+        try {
+            emitter.send(Collections.singleton(new ResponseBodyEmitter.DataWithMediaType(frame, MediaType.TEXT_PLAIN)));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开：只摘除连接，不影响生成
+            log.debug("推送生成事件失败, 断开连接, generationId: {}", id, e);
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * 接入的连接：按自己的游标从日志读取并发送，同一时刻最多一个推送任务
+     */
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        // 以下只由推送任务访问（scheduled的CAS保证相邻两次推送任务之间的可见性）
+        private byte[] header;
+        private int cursor;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+
+        Subscriber(SseEmitter emitter, byte[] header) {
+            this.emitter = emitter;
+            this.header = header;
+        }
+
+        /**
+         * 有新内容：没有进行中的推送任务时提交一个
+         */
+        void signal() {
+            if (closed || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                sendExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                log.warn("推送线程池拒绝任务, 断开连接, generationId: {}", id);
+                close();
+                emitter.complete();
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                drain();
+                scheduled.set(false);
+                // 清除标记后再检查一次，避免漏掉推送期间写入的帧
+            } while (hasPending() && scheduled.compareAndSet(false, true));
+        }
+
+        private void drain() {
+            if (header != null) {
+                if (!sendFrame(emitter, header)) {
+                    close();
+                    return;
+                }
+                header = null;
+            }
+            while (!closed) {
+                byte[] frame = null;
+                boolean done;
+                synchronized (Generation.this) {
+                    if (cursor < frames.size()) {
+                        frame = frames.get(cursor);
+                    }
+                    done = frame == null && (finished || released);
+                }
+                if (frame == null) {
+                    if (done) {
+                        close();
+                        emitter.complete();
+                    }
+                    return;
+                }
+                // 在生成锁之外发送
+                if (!sendFrame(emitter, frame)) {
+                    close();
+                    return;
+                }
+                cursor++;
+            }
+        }
+
+        private boolean hasPending() {
+            if (closed) {
+                return false;
+            }
+            synchronized (Generation.this) {
+                return header != null || cursor < frames.size() || finished || released;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public String getCancelReason() {
+        return cancelReason;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public synchronized long getLastEventId() {
+        return frames.size();
+    }
+
+    public synchronized long getLogBytes() {
+        return logBytes;
+    }
+}
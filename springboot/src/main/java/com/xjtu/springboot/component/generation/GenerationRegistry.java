@@ -0,0 +1,267 @@
+package com.xjtu.springboot.component.generation;
+
+import com.xjtu.springboot.component.cluster.ClusterBus;
+import com.xjtu.springboot.component.pool.VirtualThreadExecutor;
+import com.xjtu.springboot.component.storage.MemoryBudget;
+import com.xjtu.springboot.config.GenerationConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成注册表：按生成ID保存进行中与刚结束的生成，结束超过保留时长后清理；
+ * 登录用户的进行中生成同时按(userId, sessionId)登记，用于暂停、删除会话时取消上游请求
+ * 集群部署时生成ID以所属节点ID为前缀；本节点没有该会话的生成时，取消请求广播给其他节点
+ * 所有生成的事件日志共用一个内存预算，不足时先回收保留期内已结束的生成（最早结束的优先）
+ */
+@Slf4j
+@Component
+public class GenerationRegistry {
+    public static final String REASON_PAUSE = "pause";
+    public static final String REASON_DELETE = "delete";
+    public static final String REASON_ABANDONED = "abandoned";
+    public static final String REASON_SUPERSEDED = "superseded";
+    public static final String REASON_OVERFLOW = "overflow";
+
+    private static final char NODE_SEPARATOR = '.';
+
+    private final GenerationConfig config;
+    private final MeterRegistry meterRegistry;
+    private final ClusterBus clusterBus;
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+    // 进行中的生成（key：userId:sessionId）
+    private final Map<String, Generation> activeBySession = new ConcurrentHashMap<>();
+    // 过期清理、断线取消检查线程（守护线程）
+    private final ScheduledExecutorService scheduler;
+    // 推送线程池（每个连接同时最多一个推送任务，慢连接只占用自己的线程）
+    private final VirtualThreadExecutor sendExecutor;
+    // 事件日志内存预算
+    private final MemoryBudget logBudget;
+    private final Counter logEvictCounter;
+
+    public GenerationRegistry(GenerationConfig config, MeterRegistry meterRegistry, ClusterBus clusterBus) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.clusterBus = clusterBus;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "generation-registry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sendExecutor = new VirtualThreadExecutor("generation-send",
+                Math.max(1, config.getSendConcurrency()), 0,
+                command -> {
+                    throw new RejectedExecutionException("生成推送线程池已关闭");
+                },
+                (t, e) -> log.error("生成推送线程[{}]执行异常", t.getName(), e),
+                r -> {
+                    Thread t = new Thread(r, "generation-send");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.logBudget = new MemoryBudget(config.getMaxLogBytes());
+        logBudget.setReclaimer(this::evictFinished);
+        this.logEvictCounter = meterRegistry.counter("chat.generation.log.evicted");
+        Gauge.builder("chat.generation.log.bytes", logBudget, MemoryBudget::getUsedBytes)
+                .description("所有生成的事件日志占用的字节数")
+                .register(meterRegistry);
+        long interval = Math.max(1000L, config.getCleanIntervalMs());
+        scheduler.scheduleWithFixedDelay(this::cleanExpired, interval, interval, TimeUnit.MILLISECONDS);
+        Gauge.builder("chat.generation.active", generations, Map::size)
+                .description("注册表中的生成数（含保留期内已结束的生成）")
+                .register(meterRegistry);
+        clusterBus.subscribe(ClusterBus.TOPIC_CANCEL, this::onRemoteCancel);
+    }
+
+    /**
+     * 创建并登记一次生成（同一会话已有进行中的生成时取消旧生成）
+     */
+    public Generation create(Long userId, Long sessionId) {
+        String nodeId = clusterBus.getNodeId();
+        String id = nodeId == null ? UUID.randomUUID().toString() : nodeId + NODE_SEPARATOR + UUID.randomUUID();
+        Generation generation = new Generation(id, userId, sessionId, sendExecutor, logBudget);
+        generations.put(generation.getId(), generation);
+        if (isSessionScoped(userId, sessionId)) {
+            Generation previous = activeBySession.put(sessionKey(userId, sessionId), generation);
+            if (previous != null) {
+                cancel(previous, REASON_SUPERSEDED);
+            }
+        }
+        return generation;
+    }
+
+    public Generation get(String generationId) {
+        return generationId == null ? null : generations.get(generationId);
+    }
+
+    /**
+     * 生成所属的节点（单节点部署或本节点的生成返回null）
+     */
+    public String getOwnerNode(String generationId) {
+        String nodeId = clusterBus.getNodeId();
+        int split = generationId == null ? -1 : generationId.indexOf(NODE_SEPARATOR);
+        if (nodeId == null || split <= 0) {
+            return null;
+        }
+        String owner = generationId.substring(0, split);
+        return nodeId.equals(owner) ? null : owner;
+    }
+
+    /**
+     * 会话当前进行中的生成
+     */
+    public Generation getActive(Long userId, Long sessionId) {
+        if (!isSessionScoped(userId, sessionId)) {
+            return null;
+        }
+        return activeBySession.get(sessionKey(userId, sessionId));
+    }
+
+    /**
+     * 取消会话当前进行中的生成；本节点没有时广播给其他节点（生成可能在其他节点进行）
+     *
+     * @return 是否在本节点取消了进行中的生成
+     */
+    public boolean cancel(Long userId, Long sessionId, String reason) {
+        Generation generation = getActive(userId, sessionId);
+        if (generation != null) {
+            return cancel(generation, reason);
+        }
+        if (isSessionScoped(userId, sessionId)) {
+            clusterBus.publish(ClusterBus.TOPIC_CANCEL, sessionKey(userId, sessionId) + ":" + reason);
+        }
+        return false;
+    }
+
+    private void onRemoteCancel(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3) {
+            log.warn("忽略格式错误的取消通知：{}", payload);
+            return;
+        }
+        try {
+            Generation generation = getActive(Long.valueOf(parts[0]), Long.valueOf(parts[1]));
+            if (generation != null) {
+                cancel(generation, parts[2]);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("忽略格式错误的取消通知：{}", payload);
+        }
+    }
+
+    public boolean cancel(Generation generation, String reason) {
+        if (!generation.cancel(reason)) {
+            return false;
+        }
+        log.info("取消生成, generationId: {}, userId: {}, sessionId: {}, 原因: {}",
+                generation.getId(), generation.getUserId(), generation.getSessionId(), reason);
+        Counter.builder("chat.generation.cancelled")
+                .description("被取消的生成数")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return true;
+    }
+
+    /**
+     * 断开连接；生成不再有任何连接时，等待重新接入的宽限期，期满仍无人接入则取消上游请求
+     */
+    public void detach(Generation generation, SseEmitter emitter) {
+        generation.detach(emitter);
+        if (generation.isFinished() || generation.getSubscriberCount() > 0) {
+            return;
+        }
+        long graceMs = config.getAbandonGraceMs();
+        if (graceMs < 0) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            if (!generation.isFinished() && generation.getSubscriberCount() == 0) {
+                cancel(generation, REASON_ABANDONED);
+            }
+        }, graceMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 结束生成（完成所有接入的连接），移出会话索引
+     *
+     * @return 结束时是否仍是会话当前的生成（已被同一会话的新生成取代时返回false，会话级资源归新生成所有）
+     */
+    public boolean finish(Generation generation) {
+        generation.finish();
+        if (isSessionScoped(generation.getUserId(), generation.getSessionId())) {
+            return activeBySession.remove(sessionKey(generation.getUserId(), generation.getSessionId()), generation);
+        }
+        return true;
+    }
+
+    private static boolean isSessionScoped(Long userId, Long sessionId) {
+        return userId != null && userId > 0 && sessionId != null && sessionId > 0;
+    }
+
+    private static String sessionKey(Long userId, Long sessionId) {
+        return userId + ":" + sessionId;
+    }
+
+    private void cleanExpired() {
+        try {
+            long deadline = System.currentTimeMillis() - config.getRetentionMs();
+            for (Generation generation : generations.values()) {
+                if (generation.isFinished() && generation.getFinishedAt() < deadline
+                        && generations.remove(generation.getId(), generation)) {
+                    generation.releaseLog();
+                }
+            }
+        } catch (Exception e) {
+            log.error("清理过期生成异常", e);
+        }
+    }
+
+    /**
+     * 日志预算不足：提前清理保留期内已结束的生成（最早结束的优先），直到释放bytesNeeded字节
+     */
+    private long evictFinished(long bytesNeeded) {
+        List<Generation> candidates = new ArrayList<>();
+        for (Generation generation : generations.values()) {
+            if (generation.isFinished()) {
+                candidates.add(generation);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(Generation::getFinishedAt));
+        long freed = 0;
+        for (Generation generation : candidates) {
+            if (freed >= bytesNeeded) {
+                break;
+            }
+            if (generations.remove(generation.getId(), generation)) {
+                freed += generation.releaseLog();
+                logEvictCounter.increment();
+            }
+        }
+        if (freed > 0) {
+            log.warn("生成日志内存预算不足，提前清理已结束的生成（{}字节）", freed);
+        }
+        return freed;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        sendExecutor.shutdownNow();
+    }
+}
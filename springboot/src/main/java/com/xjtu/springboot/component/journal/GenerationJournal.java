@@ -0,0 +1,464 @@
+package com.xjtu.springboot.component.journal;
+
+import com.xjtu.springboot.config.JournalConfig;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 生成日志：进行中回复的只追加日志（message.holder.journal.enabled=true时启用）
+ * 1. 记录写入内存映射的分段文件（只是内存拷贝），刷盘线程每个组提交间隔最多刷盘一次；
+ *    进程崩溃/重启时已写入映射的内容由操作系统落盘，只有操作系统崩溃才会丢失最后一个间隔内的记录
+ * 2. 记录格式：长度(4) + CRC32(4) + 类型(1) + 时间(8) + userId(8) + sessionId(8) + 是否思考(1) + UTF-8内容；
+ *    重放时遇到长度为0或校验失败（写了一半）即停止读取该分段
+ * 3. 会话取出回复/清除后记录失效；分段写满时滚动，早于所有进行中会话的分段直接删除
+ * 4. 启动时重放上次遗留的分段，未完成的回复交给JournalRecovery处理后删除
+ */
+@Slf4j
+@Component
+public class GenerationJournal {
+    private static final byte TYPE_INIT = 1;
+    private static final byte TYPE_APPEND = 2;
+    private static final byte TYPE_CLEAR = 3;
+    private static final byte TYPE_CLEAR_USER = 4;
+    // 长度 + CRC32
+    private static final int HEADER_BYTES = 8;
+    // 类型 + 时间 + userId + sessionId + 是否思考
+    private static final int FIXED_PAYLOAD_BYTES = 26;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final JournalConfig config;
+    private final MessageHolderConfig holderConfig;
+    private volatile boolean enabled;
+
+    // 以下由this保护
+    private volatile Segment current;
+    // 本次运行已写满、尚未删除的分段
+    private final ArrayDeque<Segment> sealed = new ArrayDeque<>();
+    // 进行中的会话（key：userId:sessionId）
+    private final Map<String, LiveSession> live = new HashMap<>();
+
+    // 上次运行遗留的分段与未完成的回复
+    private final List<Path> previousSegments = new ArrayList<>();
+    private final List<RecoveredReply> recovered = new ArrayList<>();
+    // 组提交线程（守护线程）
+    private ScheduledExecutorService flusher;
+    // 监控指标
+    private final Counter writtenBytesCounter;
+    private final Counter writeFailCounter;
+    private final Timer flushTimer;
+
+    public GenerationJournal(JournalConfig config, MessageHolderConfig holderConfig, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.holderConfig = holderConfig;
+        this.enabled = config.isEnabled();
+        this.writtenBytesCounter = meterRegistry.counter("message.holder.journal.bytes");
+        this.writeFailCounter = meterRegistry.counter("message.holder.journal.fail");
+        this.flushTimer = meterRegistry.timer("message.holder.journal.flush");
+    }
+
+    /**
+     * 重放上次遗留的分段，打开本次运行的新分段
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Path dir = Paths.get(config.getDir());
+        try {
+            Files.createDirectories(dir);
+            long lastSeq = replay(dir);
+            synchronized (this) {
+                current = Segment.open(dir, lastSeq + 1, config.getSegmentBytes());
+            }
+        } catch (IOException e) {
+            enabled = false;
+            log.error("生成日志初始化失败，已禁用：{}", dir, e);
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "generation-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1L, config.getFlushIntervalMs());
+        flusher.scheduleWithFixedDelay(this::groupCommit, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("生成日志已启用：目录={}，分段大小={}字节，组提交间隔={}ms，待恢复回复={}个",
+                dir, config.getSegmentBytes(), interval, recovered.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void init(Long userId, Long sessionId) {
+        if (enabled) {
+            write(TYPE_INIT, userId, sessionId, false, null);
+        }
+    }
+
+    public void append(Long userId, Long sessionId, String text, boolean thinking) {
+        if (enabled && text != null && !text.isEmpty()) {
+            write(TYPE_APPEND, userId, sessionId, thinking, text);
+        }
+    }
+
+    /**
+     * 会话回复已取出或已清除：之前的记录失效
+     */
+    public void clear(Long userId, Long sessionId) {
+        if (enabled) {
+            write(TYPE_CLEAR, userId, sessionId, false, null);
+        }
+    }
+
+    public void clearAll(Long userId) {
+        if (enabled) {
+            write(TYPE_CLEAR_USER, userId, 0L, false, null);
+        }
+    }
+
+    /**
+     * 上次运行未完成的回复（启动时重放得到）
+     */
+    public List<RecoveredReply> getRecovered() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * 遗留回复已处理：删除上次运行的分段
+     */
+    public synchronized void completeRecovery() {
+        for (Path path : previousSegments) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("删除已恢复的日志分段失败：{}", path, e);
+            }
+        }
+        previousSegments.clear();
+        recovered.clear();
+    }
+
+    // ======== 写入 ========
+
+    private void write(byte type, Long userId, Long sessionId, boolean thinking, String text) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        try {
+            if (text == null) {
+                writeRecord(type, userId, sessionId, thinking, null);
+                return;
+            }
+            // 超长内容按字符切分为多条记录（UTF-8每个字符最多3字节，代理对不拆开）
+            int maxChars = Math.max(1, (config.getSegmentBytes() - HEADER_BYTES - FIXED_PAYLOAD_BYTES) / 3);
+            int offset = 0;
+            while (offset < text.length()) {
+                int end = Math.min(text.length(), offset + maxChars);
+                if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                writeRecord(type, userId, sessionId, thinking, text.substring(offset, end).getBytes(StandardCharsets.UTF_8));
+                offset = end;
+            }
+        } catch (IOException | RuntimeException e) {
+            writeFailCounter.increment();
+            enabled = false;
+            log.error("生成日志写入失败，已禁用（进行中的回复不再记录）", e);
+        }
+    }
+
+    private synchronized void writeRecord(byte type, long userId, long sessionId, boolean thinking, byte[] text)
+            throws IOException {
+        int payloadBytes = FIXED_PAYLOAD_BYTES + (text == null ? 0 : text.length);
+        int recordBytes = HEADER_BYTES + payloadBytes;
+        if (current.position + recordBytes > current.capacity) {
+            roll();
+        }
+        Segment segment = current;
+        MappedByteBuffer buffer = segment.buffer;
+        int pos = segment.position;
+        long now = System.currentTimeMillis();
+        int payload = pos + HEADER_BYTES;
+        buffer.put(payload, type);
+        buffer.putLong(payload + 1, now);
+        buffer.putLong(payload + 9, userId);
+        buffer.putLong(payload + 17, sessionId);
+        buffer.put(payload + 25, (byte) (thinking ? 1 : 0));
+        if (text != null) {
+            buffer.put(payload + FIXED_PAYLOAD_BYTES, text, 0, text.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(payload, payloadBytes));
+        buffer.putInt(pos + 4, (int) crc.getValue());
+        // 长度最后写入：重放时长度为0表示没有更多记录
+        buffer.putInt(pos, payloadBytes);
+        segment.position = pos + recordBytes;
+        segment.written = segment.position;
+        writtenBytesCounter.increment(recordBytes);
+        track(type, userId, sessionId, segment.seq, now);
+    }
+
+    /**
+     * 维护进行中的会话（决定哪些分段可以删除）
+     */
+    private void track(byte type, long userId, long sessionId, long seq, long now) {
+        switch (type) {
+            case TYPE_INIT:
+            case TYPE_APPEND:
+                live.computeIfAbsent(sessionKey(userId, sessionId), k -> new LiveSession(seq)).lastActiveTime = now;
+                break;
+            case TYPE_CLEAR:
+                live.remove(sessionKey(userId, sessionId));
+                break;
+            case TYPE_CLEAR_USER:
+                live.keySet().removeIf(key -> key.startsWith(userId + ":"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 滚动到新分段，删除早于所有进行中会话的分段（持锁调用）；
+     * 上次运行的分段尚未恢复完成时不删除：其中已保存回复的清除记录写在本次运行的分段里
+     */
+    private void roll() throws IOException {
+        Segment old = current;
+        old.buffer.force();
+        old.close();
+        sealed.addLast(old);
+        current = Segment.open(old.path.getParent(), old.seq + 1, config.getSegmentBytes());
+
+        // 超时未活动的会话已被会话存储清理，不再阻止删除
+        long idleBefore = System.currentTimeMillis() - holderConfig.getDefaultSessionTimeout();
+        live.values().removeIf(session -> session.lastActiveTime < idleBefore);
+        if (!previousSegments.isEmpty()) {
+            return;
+        }
+        long minLiveSeq = current.seq;
+        for (LiveSession session : live.values()) {
+            minLiveSeq = Math.min(minLiveSeq, session.firstSeq);
+        }
+        Iterator<Segment> iterator = sealed.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment.seq >= minLiveSeq) {
+                break;
+            }
+            Files.deleteIfExists(segment.path);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 组提交：把上次刷盘之后写入的范围刷到磁盘
+     */
+    private void groupCommit() {
+        Segment segment = current;
+        int written = segment.written;
+        if (written <= segment.forced) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            segment.buffer.force(segment.forced, written - segment.forced);
+            segment.forced = written;
+        } catch (RuntimeException e) {
+            log.warn("生成日志刷盘失败：{}", e.getMessage());
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // ======== 重放 ========
+
+    /**
+     * 按顺序重放遗留分段，得到未完成的回复
+     *
+     * @return 最大的分段序号（没有遗留分段时为0）
+     */
+    private long replay(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(path -> parseSeq(path) > 0)
+                    .sorted((a, b) -> Long.compare(parseSeq(a), parseSeq(b)))
+                    .toList();
+        }
+        Map<String, RecoveredReply> replies = new LinkedHashMap<>();
+        long lastSeq = 0;
+        for (Path file : files) {
+            lastSeq = parseSeq(file);
+            previousSegments.add(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                replaySegment(buffer, replies);
+            }
+        }
+        long idleBefore = System.currentTimeMillis() - holderConfig.getDefaultSessionTimeout();
+        for (RecoveredReply reply : replies.values()) {
+            // 已超时（会话存储也会丢弃）或没有内容的不恢复
+            if (reply.getLastActiveTime() >= idleBefore && reply.getContent().length() > 0) {
+                recovered.add(reply);
+            }
+        }
+        return lastSeq;
+    }
+
+    private static void replaySegment(ByteBuffer buffer, Map<String, RecoveredReply> replies) {
+        int pos = 0;
+        int limit = buffer.limit();
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES + FIXED_PAYLOAD_BYTES <= limit) {
+            int payloadBytes = buffer.getInt(pos);
+            if (payloadBytes < FIXED_PAYLOAD_BYTES || pos + HEADER_BYTES + payloadBytes > limit) {
+                return;
+            }
+            int payload = pos + HEADER_BYTES;
+            crc.reset();
+            crc.update(buffer.slice(payload, payloadBytes));
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                // 写了一半的记录
+                return;
+            }
+            byte type = buffer.get(payload);
+            long time = buffer.getLong(payload + 1);
+            long userId = buffer.getLong(payload + 9);
+            long sessionId = buffer.getLong(payload + 17);
+            boolean thinking = buffer.get(payload + 25) == 1;
+            String key = sessionKey(userId, sessionId);
+            switch (type) {
+                case TYPE_INIT:
+                    replies.computeIfAbsent(key, k -> new RecoveredReply(userId, sessionId)).setLastActiveTime(time);
+                    break;
+                case TYPE_APPEND:
+                    byte[] text = new byte[payloadBytes - FIXED_PAYLOAD_BYTES];
+                    buffer.get(payload + FIXED_PAYLOAD_BYTES, text);
+                    RecoveredReply reply = replies.computeIfAbsent(key, k -> new RecoveredReply(userId, sessionId));
+                    (thinking ? reply.getThinking() : reply.getContent()).append(new String(text, StandardCharsets.UTF_8));
+                    reply.setLastActiveTime(time);
+                    break;
+                case TYPE_CLEAR:
+                    replies.remove(key);
+                    break;
+                case TYPE_CLEAR_USER:
+                    replies.keySet().removeIf(k -> k.startsWith(userId + ":"));
+                    break;
+                default:
+                    return;
+            }
+            pos = payload + payloadBytes;
+        }
+    }
+
+    private static long parseSeq(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String sessionKey(long userId, long sessionId) {
+        return userId + ":" + sessionId;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (this) {
+            if (current != null) {
+                current.buffer.force();
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * 日志分段（写入位置由日志锁保护，written/forced用于组提交）
+     */
+    private static final class Segment {
+        final long seq;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int position = 0;
+        volatile int written = 0;
+        // 只由刷盘线程访问
+        int forced = 0;
+
+        private Segment(long seq, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.seq = seq;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        static Segment open(Path dir, long seq, int capacity) throws IOException {
+            Path path = dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new Segment(seq, path, channel, buffer, capacity);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭日志分段失败：{}", path, e);
+            }
+        }
+    }
+
+    /**
+     * 进行中的会话（firstSeq：该会话最早的记录所在分段）
+     */
+    private static final class LiveSession {
+        final long firstSeq;
+        long lastActiveTime;
+
+        LiveSession(long firstSeq) {
+            this.firstSeq = firstSeq;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.xjtu.springboot.component.journal;
+
+import com.xjtu.springboot.component.persist.MessageWriteBehind;
+import com.xjtu.springboot.config.JournalConfig;
+import com.xjtu.springboot.service.ChatService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 启动恢复：把上次运行中断的回复保存为消息（末尾附加中断提示），全部同步写库成功后才删除遗留的日志分段；
+ * 有回复写库失败时保留分段，下次启动重新恢复（已保存的回复记一条清除记录，不会重复保存）
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JournalRecovery {
+    private final GenerationJournal journal;
+    private final JournalConfig config;
+    private final ChatService chatService;
+    private final MessageWriteBehind messageWriteBehind;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        List<RecoveredReply> replies = journal.getRecovered();
+        boolean allPersisted = true;
+        if (config.isRecoverOnStartup() && !replies.isEmpty()) {
+            int saved = 0;
+            for (RecoveredReply reply : replies) {
+                try {
+                    String thinking = reply.getThinking().length() > 0 ? reply.getThinking().toString() : null;
+                    if (chatService.saveRecoveredReply(reply.getUserId(), reply.getSessionId(),
+                            thinking, reply.getContent() + config.getRecoveredSuffix())) {
+                        // 保存只是进入写回队列，同步写库后才算恢复完成
+                        messageWriteBehind.flushSession(reply.getSessionId());
+                        saved++;
+                    }
+                    journal.clear(reply.getUserId(), reply.getSessionId());
+                } catch (Exception e) {
+                    allPersisted = false;
+                    log.error("恢复中断的回复失败，userId={}，sessionId={}", reply.getUserId(), reply.getSessionId(), e);
+                }
+            }
+            log.info("中断的回复恢复完成：日志中{}个，已保存{}个", replies.size(), saved);
+        }
+        if (!allPersisted) {
+            log.warn("有中断的回复未能写库，保留上次运行的日志分段，下次启动重新恢复");
+            return;
+        }
+        journal.completeRecovery();
+    }
+}
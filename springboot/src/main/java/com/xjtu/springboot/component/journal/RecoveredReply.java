@@ -0,0 +1,16 @@
+package com.xjtu.springboot.component.journal;
+
+import lombok.Data;
+
+/**
+ * 从生成日志中恢复的未完成回复
+ */
+@Data
+public class RecoveredReply {
+    private final long userId;
+    private final long sessionId;
+    private final StringBuilder thinking = new StringBuilder();
+    private final StringBuilder content = new StringBuilder();
+    // 最后一条记录的时间（毫秒）
+    private long lastActiveTime;
+}
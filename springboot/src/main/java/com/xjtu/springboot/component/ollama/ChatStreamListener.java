@@ -0,0 +1,21 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.dto.model.ResponseDto;
+
+/**
+ * 流式对话回调（在HttpClient的IO线程上执行，不应阻塞）
+ */
+public interface ChatStreamListener {
+    /**
+     * 收到增量内容
+     * @param text 增量文本
+     * @param thinking true：思考内容，false：回复内容
+     */
+    void onToken(String text, boolean thinking);
+
+    /**
+     * 收到结束帧（done=true，携带耗时、token统计等信息）
+     */
+    default void onDone(ResponseDto doneFrame) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.config.ChatContextConfig;
+import com.xjtu.springboot.dto.chat.MsgDto;
+import com.xjtu.springboot.pojo.common.MsgType;
+import com.xjtu.springboot.pojo.common.Role;
+import com.xjtu.springboot.pojo.model.RequestMessage;
+import com.xjtu.springboot.util.ChatUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 对话上下文窗口构建器（消息按发送时间升序，最后一条为本轮提问）
+ * 会话的token累计值（由历史缓存按会话维护）未超出预算时整段保留，不逐条累加；
+ * 超出时从最新消息往前累加token估算值，超出预算的较早轮次被裁剪并压缩成一条摘要（系统消息），
+ * 再按实际prompt大小确定num_ctx；消息上已有的tokenCount（入库时的估算值）直接复用，不重复计算
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextWindowBuilder {
+    private final ChatContextConfig config;
+
+    /**
+     * 构建结果
+     */
+    public static class ContextWindow {
+        private final List<RequestMessage> messages;
+        private final int promptTokens;
+        private final int numCtx;
+        private final int trimmedCount;
+
+        ContextWindow(List<RequestMessage> messages, int promptTokens, int numCtx, int trimmedCount) {
+            this.messages = messages;
+            this.promptTokens = promptTokens;
+            this.numCtx = numCtx;
+            this.trimmedCount = trimmedCount;
+        }
+
+        public List<RequestMessage> getMessages() {
+            return messages;
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        public int getNumCtx() {
+            return numCtx;
+        }
+
+        public int getTrimmedCount() {
+            return trimmedCount;
+        }
+    }
+
+    public ContextWindow build(List<MsgDto> messageList) {
+        return build(messageList, null);
+    }
+
+    /**
+     * @param messageList   按发送时间升序的消息
+     * @param runningTokens messageList的token累计值（未知时为null）
+     */
+    public ContextWindow build(List<MsgDto> messageList, Long runningTokens) {
+        int budget = config.getPromptBudgetTokens();
+        if (runningTokens != null && runningTokens <= budget) {
+            // 整段在预算内：直接保留（累计值包含文件消息，只会偏大）
+            List<RequestMessage> messages = new ArrayList<>(messageList.size());
+            for (MsgDto message : messageList) {
+                if (!Objects.equals(message.getType(), MsgType.FILE.getType())) {
+                    messages.add(toRequestMessage(message));
+                }
+            }
+            int promptTokens = runningTokens.intValue();
+            return new ContextWindow(messages, promptTokens, sizeNumCtx(promptTokens), 0);
+        }
+
+        List<MsgDto> candidates = new ArrayList<>();
+        for (MsgDto message : messageList) {
+            // TODO 文件消息要单独处理
+            if (Objects.equals(message.getType(), MsgType.FILE.getType())) {
+                continue;
+            }
+            candidates.add(message);
+        }
+
+        // 从最新消息往前累加，最新一条无论多长都保留
+        int promptTokens = 0;
+        int start = candidates.size();
+        while (start > 0) {
+            int tokens = tokensOf(candidates.get(start - 1));
+            if (start < candidates.size() && promptTokens + tokens > budget) {
+                break;
+            }
+            promptTokens += tokens;
+            start--;
+        }
+        // 窗口从用户消息开始，避免以半轮AI回复开头
+        while (start < candidates.size() - 1 && !isUser(candidates.get(start))) {
+            promptTokens -= tokensOf(candidates.get(start));
+            start++;
+        }
+
+        List<RequestMessage> messages = new ArrayList<>(candidates.size() - start + 1);
+        if (start > 0) {
+            RequestMessage summary = summarize(candidates.subList(0, start));
+            if (summary != null) {
+                messages.add(summary);
+                promptTokens += ChatUtil.estimateMessageTokens(summary.getContent());
+            }
+            log.debug("上下文超出预算，裁剪较早的{}条消息", start);
+        }
+        for (int i = start; i < candidates.size(); i++) {
+            messages.add(toRequestMessage(candidates.get(i)));
+        }
+        return new ContextWindow(messages, promptTokens, sizeNumCtx(promptTokens), start);
+    }
+
+    /**
+     * num_ctx = prompt + 回复预留，按步长向上取整并限制在上下限之间
+     */
+    private int sizeNumCtx(int promptTokens) {
+        int step = Math.max(1, config.getNumCtxStep());
+        long required = (long) promptTokens + config.getNumPredict();
+        long rounded = (required + step - 1) / step * step;
+        return (int) Math.max(config.getMinNumCtx(), Math.min(config.getMaxNumCtx(), rounded));
+    }
+
+    /**
+     * 被裁剪轮次的摘要：按时间顺序列出用户提问的开头部分，超出摘要预算时保留最近的
+     */
+    private RequestMessage summarize(List<MsgDto> trimmed) {
+        int summaryBudget = config.getSummaryBudgetTokens();
+        if (summaryBudget <= 0) {
+            return null;
+        }
+        List<String> items = new ArrayList<>();
+        int tokens = 0;
+        for (int i = trimmed.size() - 1; i >= 0; i--) {
+            MsgDto message = trimmed.get(i);
+            if (!isUser(message) || message.getContent() == null || message.getContent().isBlank()) {
+                continue;
+            }
+            String item = abbreviate(message.getContent().strip(), config.getSummaryItemChars());
+            int itemTokens = ChatUtil.estimateTokens(item) + 1;
+            if (tokens + itemTokens > summaryBudget) {
+                break;
+            }
+            items.add(item);
+            tokens += itemTokens;
+        }
+        if (items.isEmpty()) {
+            return null;
+        }
+        Collections.reverse(items);
+        StringBuilder sb = new StringBuilder("以下是本次对话中较早的用户提问摘要（完整内容已省略）：");
+        for (String item : items) {
+            sb.append('\n').append("- ").append(item);
+        }
+        RequestMessage summary = new RequestMessage();
+        summary.setRole(Role.SYSTEM.getName());
+        summary.setContent(sb.toString());
+        return summary;
+    }
+
+    private static String abbreviate(String text, int maxChars) {
+        if (maxChars <= 0 || text.length() <= maxChars) {
+            return text;
+        }
+        int end = maxChars;
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    /**
+     * 消息token数：优先使用已有的估算值，没有则计算后回写，同一消息只估算一次
+     */
+    private static int tokensOf(MsgDto message) {
+        Integer tokenCount = message.getTokenCount();
+        if (tokenCount == null || tokenCount <= 0) {
+            message.setTokenCount(ChatUtil.estimateTokens(message.getContent()));
+        }
+        return ChatUtil.messageTokens(message.getTokenCount(), message.getContent());
+    }
+
+    private static boolean isUser(MsgDto message) {
+        return Objects.equals(message.getRole(), Role.USER.getRole());
+    }
+
+    private static RequestMessage toRequestMessage(MsgDto message) {
+        RequestMessage requestMessage = new RequestMessage();
+        if (Objects.equals(message.getRole(), Role.USER.getRole())) {
+            requestMessage.setRole(Role.USER.getName());
+        } else if (Objects.equals(message.getRole(), Role.ASSISTANT.getRole())) {
+            requestMessage.setRole(Role.ASSISTANT.getName());
+        }
+        requestMessage.setContent(message.getContent());
+        return requestMessage;
+    }
+}
@@ -0,0 +1,314 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.config.ChatSchedulerConfig;
+import com.xjtu.springboot.exception.CustomException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * AI请求公平调度器（位于Ollama调用之前）
+ * 每个登录用户一个队列，未登录用户共用一个低权重队列；队列之间按差额轮询（DRR）分配并发名额：
+ * 每轮按权重补充额度，每发起一个请求消耗1；单个队列受同时进行数上限约束，排队数超限直接返回429
+ */
+@Slf4j
+@Component
+public class FairChatScheduler {
+    public static final String CLASS_USER = "user";
+    public static final String CLASS_ANONYMOUS = "anonymous";
+    private static final String ANONYMOUS_FLOW = "anonymous";
+
+    private final ChatSchedulerConfig config;
+    private final int capacity;
+
+    // 以下状态都由this保护
+    private final Map<String, Flow> flows = new HashMap<>();
+    // 有排队请求的队列（轮询顺序）
+    private final ArrayDeque<Flow> activeFlows = new ArrayDeque<>();
+    private int running = 0;
+
+    private final ClassMeters userMeters;
+    private final ClassMeters anonymousMeters;
+
+    public FairChatScheduler(ChatSchedulerConfig config, OllamaBackendPool backendPool, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.capacity = resolveCapacity(config, backendPool);
+        this.userMeters = new ClassMeters(CLASS_USER, meterRegistry);
+        this.anonymousMeters = new ClassMeters(CLASS_ANONYMOUS, meterRegistry);
+        Gauge.builder("chat.scheduler.running", this, FairChatScheduler::getRunning)
+                .description("进行中的AI请求数")
+                .register(meterRegistry);
+        log.info("AI请求公平调度：启用={}，总并发={}",
+                config.isEnabled(), capacity == Integer.MAX_VALUE ? "不限" : capacity);
+    }
+
+    private static int resolveCapacity(ChatSchedulerConfig config, OllamaBackendPool backendPool) {
+        if (config.getMaxConcurrency() > 0) {
+            return config.getMaxConcurrency();
+        }
+        int sum = 0;
+        for (OllamaBackend backend : backendPool.getBackends()) {
+            if (backend.getMaxConcurrency() <= 0) {
+                return Integer.MAX_VALUE;
+            }
+            sum += backend.getMaxConcurrency();
+        }
+        return sum;
+    }
+
+    /**
+     * 提交一次AI请求：轮到时调用starter发起请求
+     * 返回的Future在请求结束时完成；cancel时排队中的请求直接出队，进行中的请求取消上游
+     *
+     * @param userId  用户ID
+     * @param isLogin 是否登录用户（未登录用户共用低权重队列）
+     * @param starter 发起请求（返回请求结束信号）
+     */
+    public CompletableFuture<Void> submit(Long userId, boolean isLogin, Supplier<CompletableFuture<Void>> starter) {
+        if (!config.isEnabled()) {
+            return starter.get();
+        }
+        boolean anonymous = !isLogin || userId == null || userId <= 0;
+        String flowKey = anonymous ? ANONYMOUS_FLOW : String.valueOf(userId);
+        Ticket ticket = new Ticket(starter);
+        List<Ticket> ready;
+        synchronized (this) {
+            Flow flow = flows.computeIfAbsent(flowKey, key -> new Flow(key, anonymous));
+            if (flow.queue.size() >= flow.maxQueued()) {
+                flow.meters.rejected.increment();
+                return CompletableFuture.failedFuture(new CustomException(429, anonymous
+                        ? "当前未登录用户请求过多，请登录或稍后重试"
+                        : "您同时进行的对话过多，请稍后重试"));
+            }
+            ticket.flow = flow;
+            flow.queue.addLast(ticket);
+            flow.meters.queued++;
+            if (flow.queue.size() == 1) {
+                activeFlows.addLast(flow);
+            }
+            ready = dispatch();
+        }
+        // 排队期间被取消：出队
+        ticket.result.whenComplete((ignored, ex) -> {
+            if (ticket.result.isCancelled()) {
+                onCancelled(ticket);
+            }
+        });
+        start(ready);
+        return ticket.result;
+    }
+
+    /**
+     * 按DRR选出可以发起的请求（持锁调用，发起在锁外进行）
+     */
+    private List<Ticket> dispatch() {
+        List<Ticket> ready = null;
+        // 连续一整轮没有发起任何请求（剩余队列都达到单队列上限）时停止
+        int idleVisits = 0;
+        while (running < capacity && !activeFlows.isEmpty() && idleVisits < activeFlows.size()) {
+            Flow flow = activeFlows.pollFirst();
+            if (flow.running >= flow.maxConcurrent()) {
+                // 达到单队列并发上限：本轮跳过，不累积额度
+                activeFlows.addLast(flow);
+                idleVisits++;
+                continue;
+            }
+            if (flow.deficit < 1) {
+                flow.deficit += flow.weight();
+            }
+            boolean started = false;
+            while (flow.deficit >= 1 && running < capacity
+                    && flow.running < flow.maxConcurrent() && !flow.queue.isEmpty()) {
+                Ticket ticket = flow.queue.pollFirst();
+                flow.meters.queued--;
+                flow.deficit--;
+                flow.running++;
+                running++;
+                ticket.state = Ticket.RUNNING;
+                flow.meters.queueWait.record(System.nanoTime() - ticket.enqueueNanos, TimeUnit.NANOSECONDS);
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(ticket);
+                started = true;
+            }
+            if (flow.queue.isEmpty()) {
+                // 队列清空：额度不保留（DRR）
+                flow.deficit = 0;
+                removeIfIdle(flow);
+            } else if (flow.deficit >= 1 && running >= capacity) {
+                // 总并发已满：保留位置与剩余额度，下次继续
+                activeFlows.addFirst(flow);
+            } else {
+                activeFlows.addLast(flow);
+            }
+            idleVisits = started ? 0 : idleVisits + 1;
+        }
+        return ready;
+    }
+
+    private void start(List<Ticket> ready) {
+        if (ready == null) {
+            return;
+        }
+        for (Ticket ticket : ready) {
+            CompletableFuture<Void> upstream;
+            try {
+                upstream = ticket.starter.get();
+            } catch (Throwable e) {
+                upstream = CompletableFuture.failedFuture(e);
+            }
+            ticket.upstream = upstream;
+            // 绑定前已被取消
+            if (ticket.result.isCancelled()) {
+                upstream.cancel(true);
+            }
+            upstream.whenComplete((ignored, ex) -> {
+                onFinished(ticket);
+                if (ex != null) {
+                    ticket.result.completeExceptionally(ex);
+                } else {
+                    ticket.result.complete(null);
+                }
+            });
+        }
+    }
+
+    private void onCancelled(Ticket ticket) {
+        CompletableFuture<Void> upstream = null;
+        synchronized (this) {
+            if (ticket.state == Ticket.QUEUED) {
+                Flow flow = ticket.flow;
+                if (flow.queue.remove(ticket)) {
+                    flow.meters.queued--;
+                    ticket.state = Ticket.DONE;
+                    if (flow.queue.isEmpty()) {
+                        activeFlows.remove(flow);
+                        flow.deficit = 0;
+                        removeIfIdle(flow);
+                    }
+                }
+            } else if (ticket.state == Ticket.RUNNING) {
+                upstream = ticket.upstream;
+            }
+        }
+        if (upstream != null) {
+            upstream.cancel(true);
+        }
+    }
+
+    private void onFinished(Ticket ticket) {
+        List<Ticket> ready;
+        synchronized (this) {
+            if (ticket.state != Ticket.RUNNING) {
+                return;
+            }
+            ticket.state = Ticket.DONE;
+            Flow flow = ticket.flow;
+            flow.running--;
+            running--;
+            removeIfIdle(flow);
+            ready = dispatch();
+        }
+        start(ready);
+    }
+
+    private void removeIfIdle(Flow flow) {
+        if (flow.running == 0 && flow.queue.isEmpty()) {
+            flows.remove(flow.key);
+        }
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * 单个用户（或未登录用户整体）的请求队列
+     */
+    private class Flow {
+        final String key;
+        final boolean anonymous;
+        final ClassMeters meters;
+        final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        int running = 0;
+        int deficit = 0;
+
+        Flow(String key, boolean anonymous) {
+            this.key = key;
+            this.anonymous = anonymous;
+            this.meters = anonymous ? anonymousMeters : userMeters;
+        }
+
+        int weight() {
+            return Math.max(1, anonymous ? config.getAnonymousWeight() : config.getUserWeight());
+        }
+
+        int maxConcurrent() {
+            return Math.max(1, anonymous ? config.getAnonymousMaxConcurrent() : config.getUserMaxConcurrent());
+        }
+
+        int maxQueued() {
+            return Math.max(1, anonymous ? config.getAnonymousMaxQueued() : config.getUserMaxQueued());
+        }
+    }
+
+    /**
+     * 一次排队的AI请求
+     */
+    private static class Ticket {
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+
+        final Supplier<CompletableFuture<Void>> starter;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final long enqueueNanos = System.nanoTime();
+        Flow flow;
+        // 状态由调度器锁保护
+        int state = QUEUED;
+        volatile CompletableFuture<Void> upstream;
+
+        Ticket(Supplier<CompletableFuture<Void>> starter) {
+            this.starter = starter;
+        }
+    }
+
+    /**
+     * 按用户类别（登录/未登录）统计的指标
+     */
+    private static class ClassMeters {
+        final Timer queueWait;
+        final Counter rejected;
+        // 排队数（由调度器锁保护，Gauge读取允许不精确）
+        volatile int queued = 0;
+
+        ClassMeters(String className, MeterRegistry registry) {
+            this.queueWait = Timer.builder("chat.scheduler.queue.wait")
+                    .description("AI请求从排队到发起的耗时")
+                    .tag("class", className)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.rejected = Counter.builder("chat.scheduler.rejected")
+                    .description("排队数超限被拒绝的AI请求数")
+                    .tag("class", className)
+                    .register(registry);
+            Gauge.builder("chat.scheduler.queue.depth", this, m -> m.queued)
+                    .description("排队中的AI请求数")
+                    .tag("class", className)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.xjtu.springboot.component.ollama;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个Ollama后端（在途请求计数 + 被动健康状态）
+ */
+public class OllamaBackend {
+    private final String baseUrl;
+    private final URI chatUri;
+    private final int maxConcurrency;
+    // 在途请求数
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+    // 不可用截止时间（System.currentTimeMillis，0表示健康）
+    private volatile long unhealthyUntil = 0L;
+
+    public OllamaBackend(String baseUrl, int maxConcurrency) {
+        String url = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.baseUrl = url;
+        this.chatUri = URI.create(url + "/api/chat");
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * 占用一个并发名额（达到上限返回false）
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = outstanding.get();
+            if (maxConcurrency > 0 && current >= maxConcurrency) {
+                return false;
+            }
+            if (outstanding.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    boolean isHealthy(long now) {
+        return unhealthyUntil <= now;
+    }
+
+    boolean hasCapacity() {
+        return maxConcurrency <= 0 || outstanding.get() < maxConcurrency;
+    }
+
+    void markUnhealthy(long until) {
+        unhealthyUntil = until;
+    }
+
+    void markHealthy() {
+        if (unhealthyUntil != 0L) {
+            unhealthyUntil = 0L;
+        }
+    }
+
+    long getUnhealthyUntil() {
+        return unhealthyUntil;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public URI getChatUri() {
+        return chatUri;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+}
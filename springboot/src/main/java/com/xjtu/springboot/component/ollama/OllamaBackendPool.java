@@ -0,0 +1,283 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.config.OllamaConfig;
+import com.xjtu.springboot.exception.CustomException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.net.ConnectException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ollama多后端连接池
+ * 1. 路由：最少在途请求优先；带会话亲和键时优先命中同一后端（复用KV缓存），负载差距过大才改选
+ * 2. 健康：被动检测，连接失败的后端摘除一段时间，到期后自动重新参与路由
+ * 3. 排队：后端全部满载时请求短暂排队，有后端释放名额时按先来先到分配，超时才返回503
+ * 4. 所有后端共用一个HttpClient
+ */
+@Slf4j
+@Component
+public class OllamaBackendPool {
+    private final List<OllamaBackend> backends;
+    private final HttpClient httpClient;
+    private final long unhealthyCooldownMs;
+    private final int affinitySlack;
+    private final long acquireTimeoutMs;
+    private final int acquireMaxQueued;
+    // 等待名额的请求（先来先到，由自身锁保护）
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    public OllamaBackendPool(OllamaConfig config) {
+        List<OllamaBackend> list = new ArrayList<>();
+        for (OllamaConfig.Backend backend : config.resolveBackends()) {
+            list.add(new OllamaBackend(backend.getUrl(), backend.getMaxConcurrency()));
+        }
+        this.backends = Collections.unmodifiableList(list);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMs()))
+                .build();
+        this.unhealthyCooldownMs = config.getUnhealthyCooldownMs();
+        this.affinitySlack = Math.max(0, config.getAffinitySlack());
+        this.acquireTimeoutMs = Math.max(0L, config.getAcquireTimeoutMs());
+        this.acquireMaxQueued = Math.max(0, config.getAcquireMaxQueued());
+        log.info("Ollama后端：{}", list.stream().map(OllamaBackend::getBaseUrl).toList());
+    }
+
+    /**
+     * 选择并占用一个后端（用完必须调用release）
+     * 后端全部满载时排队等待名额，超过acquire-timeout-ms仍未分配到时以503失败；cancel返回的Future即可出队
+     *
+     * @param affinityKey 会话亲和键（如会话ID，为空表示不需要亲和）
+     * @param exclude     本次请求已失败的后端（重试时跳过，可为空）
+     */
+    public CompletableFuture<OllamaBackend> acquire(Long affinityKey, List<OllamaBackend> exclude) {
+        // 已有请求在排队时不插队
+        if (getWaiting() == 0) {
+            OllamaBackend backend = tryAcquire(affinityKey, exclude);
+            if (backend != null) {
+                return CompletableFuture.completedFuture(backend);
+            }
+        }
+        if (!hasCandidate(exclude) || acquireTimeoutMs == 0) {
+            return CompletableFuture.failedFuture(new CustomException(503, "AI服务繁忙或不可用，请稍后重试"));
+        }
+        Waiter waiter = new Waiter(affinityKey, exclude);
+        synchronized (waiters) {
+            if (waiters.size() >= acquireMaxQueued) {
+                return CompletableFuture.failedFuture(new CustomException(503, "AI服务繁忙，请稍后重试"));
+            }
+            waiters.addLast(waiter);
+        }
+        // 被取消：出队
+        waiter.future.whenComplete((backend, ex) -> {
+            if (ex != null) {
+                removeWaiter(waiter);
+            }
+        });
+        // 超时：先出队再以503失败
+        CompletableFuture.delayedExecutor(acquireTimeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+            removeWaiter(waiter);
+            waiter.future.completeExceptionally(new CustomException(503, "AI服务繁忙，请稍后重试"));
+        });
+        // 入队前可能已有名额释放，补一次分配
+        dispatchWaiters();
+        return waiter.future;
+    }
+
+    /**
+     * 选择并占用（不等待，失败返回空）
+     */
+    private OllamaBackend tryAcquire(Long affinityKey, List<OllamaBackend> exclude) {
+        while (true) {
+            OllamaBackend selected = select(affinityKey, exclude);
+            if (selected == null) {
+                return null;
+            }
+            // 选择与占用之间可能被并发请求占满，失败则重新选择
+            if (selected.tryAcquire()) {
+                return selected;
+            }
+        }
+    }
+
+    /**
+     * 把空出的名额按先来先到分配给排队的请求（完成Future在锁外进行）
+     */
+    private void dispatchWaiters() {
+        while (true) {
+            Waiter granted = null;
+            OllamaBackend backend = null;
+            synchronized (waiters) {
+                Iterator<Waiter> iterator = waiters.iterator();
+                while (iterator.hasNext()) {
+                    Waiter waiter = iterator.next();
+                    if (waiter.future.isDone()) {
+                        iterator.remove();
+                        continue;
+                    }
+                    // 排在前面的请求可能排除了空出的后端，继续看后面的请求
+                    backend = tryAcquire(waiter.affinityKey, waiter.exclude);
+                    if (backend != null) {
+                        iterator.remove();
+                        granted = waiter;
+                        break;
+                    }
+                }
+            }
+            if (granted == null) {
+                return;
+            }
+            if (!granted.future.complete(backend)) {
+                // 分配的同时已超时或被取消：归还名额，继续分配
+                backend.release();
+            }
+        }
+    }
+
+    private void removeWaiter(Waiter waiter) {
+        synchronized (waiters) {
+            waiters.remove(waiter);
+        }
+    }
+
+    private boolean hasCandidate(List<OllamaBackend> exclude) {
+        for (OllamaBackend backend : backends) {
+            if (exclude == null || !exclude.contains(backend)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 排队等待名额的请求数
+     */
+    public int getWaiting() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * 释放后端，并根据请求结果更新健康状态
+     *
+     * @param failure 请求异常（成功为空）
+     */
+    public void release(OllamaBackend backend, Throwable failure) {
+        backend.release();
+        if (failure == null) {
+            backend.markHealthy();
+        } else if (isConnectFailure(failure)) {
+            backend.markUnhealthy(System.currentTimeMillis() + unhealthyCooldownMs);
+            log.warn("Ollama后端连接失败，摘除{}ms：{}", unhealthyCooldownMs, backend.getBaseUrl());
+        }
+        dispatchWaiters();
+    }
+
+    /**
+     * 是否为连接失败（请求未送达后端，可以换一台重试）
+     */
+    public boolean isConnectFailure(Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException;
+    }
+
+    private OllamaBackend select(Long affinityKey, List<OllamaBackend> exclude) {
+        long now = System.currentTimeMillis();
+        OllamaBackend leastLoaded = null;
+        OllamaBackend affinity = null;
+        long affinityScore = Long.MIN_VALUE;
+        boolean anyHealthy = false;
+        for (OllamaBackend backend : backends) {
+            if ((exclude != null && exclude.contains(backend)) || !backend.isHealthy(now)) {
+                continue;
+            }
+            anyHealthy = true;
+            if (!backend.hasCapacity()) {
+                continue;
+            }
+            if (leastLoaded == null || backend.getOutstanding() < leastLoaded.getOutstanding()) {
+                leastLoaded = backend;
+            }
+            if (affinityKey != null) {
+                // 最高随机权重哈希：后端上下线时只有落在该后端上的会话会迁移
+                long score = mix(affinityKey, backend.getBaseUrl());
+                if (affinity == null || score > affinityScore) {
+                    affinity = backend;
+                    affinityScore = score;
+                }
+            }
+        }
+        if (!anyHealthy) {
+            // 全部被摘除：选最早恢复的后端做探测，避免整体不可用时间被拉长
+            return probeCandidate(exclude);
+        }
+        if (affinity != null && affinity.getOutstanding() <= leastLoaded.getOutstanding() + affinitySlack) {
+            return affinity;
+        }
+        return leastLoaded;
+    }
+
+    private OllamaBackend probeCandidate(List<OllamaBackend> exclude) {
+        OllamaBackend candidate = null;
+        for (OllamaBackend backend : backends) {
+            if ((exclude != null && exclude.contains(backend)) || !backend.hasCapacity()) {
+                continue;
+            }
+            if (candidate == null || backend.getUnhealthyUntil() < candidate.getUnhealthyUntil()) {
+                candidate = backend;
+            }
+        }
+        return candidate;
+    }
+
+    private static long mix(long key, String url) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            h = (h ^ b) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 等待中的请求（亲和键与排除列表在排队期间不变）
+     */
+    private static class Waiter {
+        final Long affinityKey;
+        final List<OllamaBackend> exclude;
+        final CompletableFuture<OllamaBackend> future = new CompletableFuture<>();
+
+        Waiter(Long affinityKey, List<OllamaBackend> exclude) {
+            this.affinityKey = affinityKey;
+            this.exclude = exclude;
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public List<OllamaBackend> getBackends() {
+        return backends;
+    }
+}
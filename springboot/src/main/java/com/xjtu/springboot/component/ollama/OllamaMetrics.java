@@ -0,0 +1,182 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.dto.model.ResponseDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ollama推理指标（按模型、后端打标签）
+ * 首字延迟在客户端测量，其余数据取自结束帧（done=true）中Ollama返回的统计字段：
+ * 区分慢回复来自模型冷加载（load_duration）、prompt过长（prompt_eval）还是生成本身（eval）
+ */
+@Component
+public class OllamaMetrics {
+    private static final String TAG_MODEL = "model";
+    private static final String TAG_BACKEND = "backend";
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final MeterRegistry meterRegistry;
+    // 按“模型|后端”缓存指标，避免每次记录都重新查找
+    private final Map<String, ModelMeters> metersMap = new ConcurrentHashMap<>();
+
+    public OllamaMetrics(MeterRegistry meterRegistry, OllamaBackendPool backendPool) {
+        this.meterRegistry = meterRegistry;
+        for (OllamaBackend backend : backendPool.getBackends()) {
+            Gauge.builder("ollama.backend.outstanding", backend, OllamaBackend::getOutstanding)
+                    .description("后端在途请求数")
+                    .tag(TAG_BACKEND, backend.getBaseUrl())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 单个后端+模型的指标集合
+     */
+    private static class ModelMeters {
+        final Timer timeToFirstToken;
+        final Timer loadDuration;
+        final Timer totalDuration;
+        final DistributionSummary evalRate;
+        final DistributionSummary promptEvalRate;
+        final DistributionSummary promptTokens;
+        final Counter errors;
+        final Counter cancelled;
+
+        ModelMeters(MeterRegistry registry, Tags tags) {
+            this.timeToFirstToken = Timer.builder("ollama.chat.time.to.first.token")
+                    .description("发出请求到收到第一个token的耗时")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.loadDuration = Timer.builder("ollama.chat.load.duration")
+                    .description("模型加载耗时（冷启动时明显偏大）")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.totalDuration = Timer.builder("ollama.chat.total.duration")
+                    .description("Ollama处理单次请求的总耗时")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.evalRate = DistributionSummary.builder("ollama.chat.eval.rate")
+                    .description("生成速度")
+                    .baseUnit("tokens/s")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.promptEvalRate = DistributionSummary.builder("ollama.chat.prompt.eval.rate")
+                    .description("prompt处理速度")
+                    .baseUnit("tokens/s")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.promptTokens = DistributionSummary.builder("ollama.chat.prompt.tokens")
+                    .description("prompt的token数")
+                    .baseUnit("tokens")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.errors = Counter.builder("ollama.chat.errors")
+                    .description("请求失败次数")
+                    .tags(tags)
+                    .register(registry);
+            this.cancelled = Counter.builder("ollama.chat.cancelled")
+                    .description("主动取消的请求数")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+
+    private ModelMeters meters(String model, OllamaBackend backend) {
+        String modelTag = model == null ? "unknown" : model;
+        String backendTag = backend == null ? "none" : backend.getBaseUrl();
+        return metersMap.computeIfAbsent(modelTag + "|" + backendTag,
+                key -> new ModelMeters(meterRegistry, Tags.of(TAG_MODEL, modelTag, TAG_BACKEND, backendTag)));
+    }
+
+    /**
+     * 包装回调：记录首字延迟与结束帧统计
+     */
+    public StreamObservation observe(String model, ChatStreamListener delegate) {
+        return new StreamObservation(model, delegate);
+    }
+
+    /**
+     * 单次流式请求的观测（回调由同一条流的IO线程串行调用）
+     */
+    public class StreamObservation implements ChatStreamListener {
+        private final String model;
+        private final ChatStreamListener delegate;
+        private volatile OllamaBackend backend;
+        private volatile long startNanos;
+        private boolean firstTokenRecorded = false;
+
+        StreamObservation(String model, ChatStreamListener delegate) {
+            this.model = model;
+            this.delegate = delegate;
+        }
+
+        /**
+         * 请求发出（切换后端重试时会重新计时）
+         */
+        public void start(OllamaBackend backend) {
+            this.backend = backend;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * 请求失败
+         */
+        public void failed() {
+            meters(model, backend).errors.increment();
+        }
+
+        /**
+         * 请求被主动取消（暂停、删除会话、连接断开后无人接入）
+         */
+        public void cancelled() {
+            meters(model, backend).cancelled.increment();
+        }
+
+        @Override
+        public void onToken(String text, boolean thinking) {
+            if (!firstTokenRecorded) {
+                firstTokenRecorded = true;
+                meters(model, backend).timeToFirstToken.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+            delegate.onToken(text, thinking);
+        }
+
+        @Override
+        public void onDone(ResponseDto doneFrame) {
+            ModelMeters meters = meters(doneFrame.getModel() == null ? model : doneFrame.getModel(), backend);
+            if (doneFrame.getLoadDuration() != null) {
+                meters.loadDuration.record(doneFrame.getLoadDuration(), TimeUnit.NANOSECONDS);
+            }
+            if (doneFrame.getTotalDuration() != null) {
+                meters.totalDuration.record(doneFrame.getTotalDuration(), TimeUnit.NANOSECONDS);
+            }
+            if (doneFrame.getPromptEvalCount() != null) {
+                meters.promptTokens.record(doneFrame.getPromptEvalCount());
+            }
+            recordRate(meters.promptEvalRate, doneFrame.getPromptEvalCount(), doneFrame.getPromptEvalDuration());
+            recordRate(meters.evalRate, doneFrame.getEvalCount(), doneFrame.getEvalDuration());
+            delegate.onDone(doneFrame);
+        }
+
+        private void recordRate(DistributionSummary summary, Long count, Long durationNanos) {
+            if (count != null && durationNanos != null && durationNanos > 0) {
+                summary.record(count * NANOS_PER_SECOND / durationNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.xjtu.springboot.dto.model.ResponseDto;
+import com.xjtu.springboot.exception.CustomException;
+import com.xjtu.springboot.pojo.model.ResponseMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Ollama NDJSON流式解码器
+ * 基于Jackson非阻塞解析器直接消费响应的ByteBuffer，不切分行、不逐帧绑定DTO：
+ * 普通帧只提取message.content/message.thinking/done，
+ * 仅在done=true的结束帧才组装完整的ResponseDto（耗时、token统计）
+ * 单个实例对应一条流，非线程安全
+ */
+public class OllamaStreamDecoder {
+    // 根对象字段
+    private static final String FIELD_MODEL = "model";
+    private static final String FIELD_CREATED_AT = "created_at";
+    private static final String FIELD_MESSAGE = "message";
+    private static final String FIELD_DONE = "done";
+    private static final String FIELD_DONE_REASON = "done_reason";
+    private static final String FIELD_TOTAL_DURATION = "total_duration";
+    private static final String FIELD_LOAD_DURATION = "load_duration";
+    private static final String FIELD_PROMPT_EVAL_COUNT = "prompt_eval_count";
+    private static final String FIELD_PROMPT_EVAL_DURATION = "prompt_eval_duration";
+    private static final String FIELD_EVAL_COUNT = "eval_count";
+    private static final String FIELD_EVAL_DURATION = "eval_duration";
+    private static final String FIELD_ERROR = "error";
+    // message对象字段
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_THINKING = "thinking";
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final ChatStreamListener listener;
+
+    // 当前嵌套深度（根对象为1，message对象为2）
+    private int depth = 0;
+    private boolean inMessage = false;
+    // 当前字段名
+    private String currentField;
+
+    // 当前帧的值（逐帧复用）
+    private String content;
+    private String thinking;
+    private boolean done;
+    private String doneReason;
+    private Long totalDuration;
+    private Long loadDuration;
+    private Long promptEvalCount;
+    private Long promptEvalDuration;
+    private Long evalCount;
+    private Long evalDuration;
+    // 模型名同一条流内不变，只读取一次
+    private String model;
+    // created_at逐帧变化，先拷贝到复用的字符缓冲区，仅结束帧才生成字符串
+    private char[] createdAtChars = new char[32];
+    private int createdAtLength = 0;
+
+    public OllamaStreamDecoder(JsonFactory jsonFactory, ChatStreamListener listener) throws IOException {
+        this.parser = jsonFactory.createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.listener = listener;
+    }
+
+    /**
+     * 投递一段响应数据（调用返回前会消费完整个ByteBuffer）
+     */
+    public void feed(ByteBuffer buffer) throws IOException {
+        feeder.feedInput(buffer);
+        drain();
+    }
+
+    /**
+     * 输入结束，处理剩余数据
+     */
+    public void endOfInput() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handleToken(token);
+        }
+    }
+
+    private void handleToken(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                if (depth == 1) {
+                    resetFrame();
+                } else if (depth == 2 && FIELD_MESSAGE.equals(currentField) && token == JsonToken.START_OBJECT) {
+                    inMessage = true;
+                }
+                currentField = null;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                if (depth == 1) {
+                    inMessage = false;
+                } else if (depth == 0) {
+                    finishFrame();
+                }
+                currentField = null;
+                break;
+            case FIELD_NAME:
+                currentField = parser.currentName();
+                break;
+            default:
+                handleValue(token);
+                currentField = null;
+                break;
+        }
+    }
+
+    private void handleValue(JsonToken token) throws IOException {
+        String field = currentField;
+        if (field == null) {
+            return;
+        }
+        if (inMessage && depth == 2) {
+            if (token == JsonToken.VALUE_STRING) {
+                if (FIELD_CONTENT.equals(field)) {
+                    content = readNonEmptyText();
+                } else if (FIELD_THINKING.equals(field)) {
+                    thinking = readNonEmptyText();
+                }
+            }
+            return;
+        }
+        if (depth != 1) {
+            return;
+        }
+        if (FIELD_DONE.equals(field)) {
+            done = token == JsonToken.VALUE_TRUE;
+        } else if (FIELD_CREATED_AT.equals(field) && token == JsonToken.VALUE_STRING) {
+            copyCreatedAt();
+        } else if (FIELD_MODEL.equals(field) && model == null && token == JsonToken.VALUE_STRING) {
+            model = parser.getText();
+        } else if (FIELD_ERROR.equals(field) && token == JsonToken.VALUE_STRING) {
+            throw new CustomException(503, "AI服务返回错误：" + parser.getText());
+        } else if (token == JsonToken.VALUE_NUMBER_INT) {
+            handleCounter(field);
+        } else if (FIELD_DONE_REASON.equals(field) && token == JsonToken.VALUE_STRING) {
+            doneReason = parser.getText();
+        }
+    }
+
+    private void handleCounter(String field) throws IOException {
+        // 计数/耗时字段只出现在结束帧
+        if (FIELD_TOTAL_DURATION.equals(field)) {
+            totalDuration = parser.getLongValue();
+        } else if (FIELD_LOAD_DURATION.equals(field)) {
+            loadDuration = parser.getLongValue();
+        } else if (FIELD_PROMPT_EVAL_COUNT.equals(field)) {
+            promptEvalCount = parser.getLongValue();
+        } else if (FIELD_PROMPT_EVAL_DURATION.equals(field)) {
+            promptEvalDuration = parser.getLongValue();
+        } else if (FIELD_EVAL_COUNT.equals(field)) {
+            evalCount = parser.getLongValue();
+        } else if (FIELD_EVAL_DURATION.equals(field)) {
+            evalDuration = parser.getLongValue();
+        }
+    }
+
+    /**
+     * 空字符串不生成对象（大部分帧只有content/thinking其中之一非空）
+     */
+    private String readNonEmptyText() throws IOException {
+        return parser.getTextLength() == 0 ? null : parser.getText();
+    }
+
+    private void copyCreatedAt() throws IOException {
+        int length = parser.getTextLength();
+        if (createdAtChars.length < length) {
+            createdAtChars = Arrays.copyOf(createdAtChars, length);
+        }
+        System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), createdAtChars, 0, length);
+        createdAtLength = length;
+    }
+
+    private void resetFrame() {
+        inMessage = false;
+        content = null;
+        thinking = null;
+        done = false;
+        doneReason = null;
+        totalDuration = null;
+        loadDuration = null;
+        promptEvalCount = null;
+        promptEvalDuration = null;
+        evalCount = null;
+        evalDuration = null;
+        createdAtLength = 0;
+    }
+
+    private void finishFrame() {
+        if (thinking != null) {
+            listener.onToken(thinking, true);
+        }
+        if (content != null) {
+            listener.onToken(content, false);
+        }
+        if (done) {
+            listener.onDone(buildDoneFrame());
+        }
+    }
+
+    /**
+     * 组装结束帧DTO（每条流仅一次）
+     */
+    private ResponseDto buildDoneFrame() {
+        ResponseMessage message = new ResponseMessage();
+        message.setRole("assistant");
+        message.setContent(content == null ? "" : content);
+        message.setThinking(thinking);
+        ResponseDto responseDto = new ResponseDto();
+        responseDto.setModel(model);
+        responseDto.setCreatedAt(createdAtLength == 0 ? null : new String(createdAtChars, 0, createdAtLength));
+        responseDto.setMessage(message);
+        responseDto.setDone(true);
+        responseDto.setDoneReason(doneReason);
+        responseDto.setTotalDuration(totalDuration);
+        responseDto.setLoadDuration(loadDuration);
+        responseDto.setPromptEvalCount(promptEvalCount);
+        responseDto.setPromptEvalDuration(promptEvalDuration);
+        responseDto.setEvalCount(evalCount);
+        responseDto.setEvalDuration(evalDuration);
+        return responseDto;
+    }
+}
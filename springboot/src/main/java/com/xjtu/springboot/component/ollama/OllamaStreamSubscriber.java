@@ -0,0 +1,87 @@
+package com.xjtu.springboot.component.ollama;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Ollama流式响应订阅者（NDJSON）
+ * 由HttpClient的IO线程推送数据，不占用业务线程池；数据直接交给解码器，不做按行拷贝
+ */
+public class OllamaStreamSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+    // 流式解码器（单流复用解析器与缓冲区）
+    private final OllamaStreamDecoder decoder;
+    // 流结束信号（正常完成/异常）
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private volatile Flow.Subscription subscription;
+    // 已主动取消（取消可能早于订阅建立）
+    private volatile boolean cancelled = false;
+
+    public OllamaStreamSubscriber(OllamaStreamDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        try {
+            for (ByteBuffer buffer : buffers) {
+                decoder.feed(buffer);
+            }
+        } catch (Exception e) {
+            // 回调异常：终止读取，通知上层
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            // 处理末尾没有换行符的最后一帧
+            decoder.endOfInput();
+            completion.complete(null);
+        } catch (Exception e) {
+            completion.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 流结束信号
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 主动取消读取（关闭底层连接，Ollama检测到连接断开后停止解码）
+     */
+    public void cancel() {
+        cancelled = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        // 取消订阅后不一定会回调onError，这里直接结束响应体
+        completion.completeExceptionally(new CancellationException("生成已取消"));
+    }
+}
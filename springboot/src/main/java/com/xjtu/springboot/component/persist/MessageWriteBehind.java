@@ -0,0 +1,455 @@
+package com.xjtu.springboot.component.persist;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.xjtu.springboot.config.WriteBehindConfig;
+import com.xjtu.springboot.mapper.MessageMapper;
+import com.xjtu.springboot.mapper.SessionMapper;
+import com.xjtu.springboot.pojo.Message;
+import com.xjtu.springboot.pojo.Session;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 对话消息延迟批量写入
+ * AI回复结束时只把消息和会话时间更新放入队列，由后台线程按固定间隔合并写库：
+ * 消息用多行insert，同一会话的多次时间更新只保留最新值，整批在一个事务内提交；
+ * 整批失败时按会话拆分为独立事务重写，一个会话的失败不影响其他会话：
+ * 会话已被删除的数据直接转入死信文件，其余的放回队列重试，连续失败超过上限后也转入死信文件，
+ * 转入死信时通知丢弃监听器（如失效该会话的历史缓存，缓存中已有这些未入库的消息）；
+ * 需要读到最新数据的操作（查询历史、暂停、删除）先调用flushSession同步写入该会话的待写数据；
+ * 关闭时同步写库，写库失败则落盘，下次启动时重新写入
+ */
+@Slf4j
+@Component
+public class MessageWriteBehind {
+    private static final String FALLBACK_FILE_PREFIX = "pending-";
+    private static final String FALLBACK_FILE_SUFFIX = ".json";
+    // 死信文件（不会自动重新写入，需人工处理）
+    private static final String DEAD_LETTER_FILE_PREFIX = "dead-";
+
+    private final MessageMapper messageMapper;
+    private final SessionMapper sessionMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteBehindConfig config;
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    // 待写入消息（按提交顺序）
+    private final LinkedBlockingDeque<Message> messageQueue = new LinkedBlockingDeque<>();
+    // 待写入的会话时间更新：key=会话ID
+    private final Map<Long, Session> sessionTouchMap = new ConcurrentHashMap<>();
+    // 每个会话的待写消息数：key=会话ID
+    private final Map<Long, AtomicInteger> pendingCountMap = new ConcurrentHashMap<>();
+    // 预取的消息ID
+    private final ArrayDeque<Long> idPool = new ArrayDeque<>();
+    // 写库互斥（后台定时写入与同步写入共用）
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // 每个会话连续写库失败的次数（由flushLock保护）：key=会话ID
+    private final Map<Long, Integer> failureCountMap = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    // 会话待写数据被丢弃（转入死信）时的回调：参数为userId、sessionId
+    private volatile BiConsumer<Long, Long> discardListener;
+
+    public MessageWriteBehind(MessageMapper messageMapper,
+                              SessionMapper sessionMapper,
+                              PlatformTransactionManager transactionManager,
+                              WriteBehindConfig config) {
+        this.messageMapper = messageMapper;
+        this.sessionMapper = sessionMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 落盘文件格式
+     */
+    @Data
+    public static class PendingSnapshot {
+        private List<Message> messages = new ArrayList<>();
+        private List<Session> sessionTouches = new ArrayList<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        // 重新写入上次关闭时未能写库的数据
+        replayFallbackFiles();
+        if (config.isWriteBehind()) {
+            scheduler.scheduleWithFixedDelay(this::scheduledFlush,
+                    config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 提交一批消息及其会话的时间更新（返回前为消息分配好ID）
+     */
+    public void submit(List<Message> messages, Session sessionTouch) {
+        assignIds(messages);
+        for (Message message : messages) {
+            pendingCountMap.computeIfAbsent(message.getSessionId(), id -> new AtomicInteger()).incrementAndGet();
+            messageQueue.offer(message);
+        }
+        if (sessionTouch != null) {
+            sessionTouchMap.merge(sessionTouch.getId(), sessionTouch, MessageWriteBehind::mergeTouch);
+        }
+        if (!config.isWriteBehind() || messageQueue.size() >= config.getMaxPending()) {
+            // 未启用或积压过多：提交方同步写库（失败时数据已放回队列，由后台继续重试）
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("同步写入消息失败，待后台重试", e);
+            }
+        }
+    }
+
+    /**
+     * 同步写入指定会话的待写数据（没有待写数据时直接返回；该会话写库失败时抛出异常，其他会话的失败不影响）
+     */
+    public void flushSession(Long sessionId) {
+        // 该会话的数据可能正被另一次写入处理（已取出、失败后放回队列），此时本次取不到数据：
+        // 写入后重新检查，仍有待写数据则再写一次，还有则抛出
+        for (int attempt = 0; hasPending(sessionId); attempt++) {
+            if (attempt >= 2 || flushPending().contains(sessionId)) {
+                throw new IllegalStateException("会话" + sessionId + "的待写消息写入失败，已放回队列重试");
+            }
+        }
+    }
+
+    private boolean hasPending(Long sessionId) {
+        AtomicInteger pending = pendingCountMap.get(sessionId);
+        return (pending != null && pending.get() > 0) || sessionTouchMap.containsKey(sessionId);
+    }
+
+    /**
+     * 设置丢弃回调（由使用方注册，避免与缓存等组件形成循环依赖）
+     */
+    public void setDiscardListener(BiConsumer<Long, Long> discardListener) {
+        this.discardListener = discardListener;
+    }
+
+    /**
+     * 写入当前所有待写数据（有会话写库失败时数据放回队列，异常抛给调用方）
+     */
+    public void flush() {
+        Set<Long> failed = flushPending();
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("待写消息写入失败，已放回队列重试，会话：" + failed);
+        }
+    }
+
+    /**
+     * 写入当前所有待写数据：先整批一个事务，失败时按会话拆分重写
+     *
+     * @return 写库失败、已放回队列的会话ID
+     */
+    private Set<Long> flushPending() {
+        flushLock.lock();
+        try {
+            List<Message> messages = new ArrayList<>(messageQueue.size());
+            messageQueue.drainTo(messages);
+            List<Session> touches = drainTouches();
+            if (messages.isEmpty() && touches.isEmpty()) {
+                return Collections.emptySet();
+            }
+            try {
+                writeBatch(messages, touches);
+                markWritten(messages);
+                failureCountMap.clear();
+                log.debug("批量写入消息{}条，会话更新{}条", messages.size(), touches.size());
+                return Collections.emptySet();
+            } catch (RuntimeException e) {
+                log.warn("整批写入消息失败，按会话拆分重写：{}", e.getMessage());
+            }
+            return flushBySession(messages, touches);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 按会话拆分为独立事务写入（持flushLock调用）
+     */
+    private Set<Long> flushBySession(List<Message> messages, List<Session> touches) {
+        Map<Long, List<Message>> messagesBySession = new LinkedHashMap<>();
+        for (Message message : messages) {
+            messagesBySession.computeIfAbsent(message.getSessionId(), id -> new ArrayList<>()).add(message);
+        }
+        Map<Long, Session> touchBySession = new LinkedHashMap<>();
+        for (Session touch : touches) {
+            touchBySession.put(touch.getId(), touch);
+            messagesBySession.putIfAbsent(touch.getId(), new ArrayList<>());
+        }
+        Set<Long> failed = new HashSet<>();
+        for (Map.Entry<Long, List<Message>> entry : messagesBySession.entrySet()) {
+            Long sessionId = entry.getKey();
+            List<Message> sessionMessages = entry.getValue();
+            Session touch = touchBySession.get(sessionId);
+            List<Session> sessionTouches = touch == null ? Collections.emptyList() : Collections.singletonList(touch);
+            try {
+                writeBatch(sessionMessages, sessionTouches);
+                markWritten(sessionMessages);
+                failureCountMap.remove(sessionId);
+                continue;
+            } catch (RuntimeException e) {
+                int failures = failureCountMap.merge(sessionId, 1, Integer::sum);
+                if (!sessionExists(sessionMessages, touch)) {
+                    // 会话已被删除（外键约束失败），重试不会成功
+                    log.warn("会话{}已不存在，丢弃待写消息{}条", sessionId, sessionMessages.size());
+                } else if (failures >= Math.max(1, config.getMaxRetries())) {
+                    log.error("会话{}连续{}次写库失败，待写消息{}条转入死信文件", sessionId, failures, sessionMessages.size(), e);
+                } else {
+                    log.error("会话{}写库失败（第{}次），待写消息{}条放回队列", sessionId, failures, sessionMessages.size(), e);
+                    requeue(sessionMessages, sessionTouches);
+                    failed.add(sessionId);
+                    continue;
+                }
+            }
+            failureCountMap.remove(sessionId);
+            markWritten(sessionMessages);
+            writeDeadLetterFile(sessionMessages, sessionTouches);
+            notifyDiscarded(sessionMessages, touch);
+        }
+        return failed;
+    }
+
+    private void notifyDiscarded(List<Message> messages, Session touch) {
+        BiConsumer<Long, Long> listener = discardListener;
+        if (listener == null) {
+            return;
+        }
+        Long sessionId = touch != null ? touch.getId() : messages.get(0).getSessionId();
+        Long userId = touch != null ? touch.getUserId() : messages.get(0).getUserId();
+        try {
+            listener.accept(userId, sessionId);
+        } catch (RuntimeException e) {
+            log.error("会话{}待写消息丢弃回调异常", sessionId, e);
+        }
+    }
+
+    private boolean sessionExists(List<Message> messages, Session touch) {
+        Long sessionId = touch != null ? touch.getId() : messages.get(0).getSessionId();
+        Long userId = touch != null ? touch.getUserId() : messages.get(0).getUserId();
+        try {
+            return sessionMapper.selectSessionByIds(userId, sessionId) != null;
+        } catch (RuntimeException e) {
+            // 无法确认（数据库不可用）：按存在处理，保留重试
+            return true;
+        }
+    }
+
+    /**
+     * 已写库（或已转入死信）的消息不再计入会话的待写数
+     */
+    private void markWritten(List<Message> messages) {
+        for (Message message : messages) {
+            AtomicInteger pending = pendingCountMap.get(message.getSessionId());
+            if (pending != null && pending.decrementAndGet() <= 0) {
+                pendingCountMap.remove(message.getSessionId(), pending);
+            }
+        }
+    }
+
+    /**
+     * 从预取的ID中为消息分配ID，不足时从序列批量预取
+     */
+    public void assignIds(List<Message> messages) {
+        synchronized (idPool) {
+            int required = 0;
+            for (Message message : messages) {
+                if (message.getId() == null) {
+                    required++;
+                }
+            }
+            if (idPool.size() < required) {
+                idPool.addAll(messageMapper.nextIds(Math.max(config.getIdBlockSize(), required - idPool.size())));
+            }
+            for (Message message : messages) {
+                if (message.getId() == null) {
+                    message.setId(idPool.poll());
+                }
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return messageQueue.size();
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("批量写入消息失败，{}ms后重试", config.getFlushIntervalMs(), e);
+        }
+    }
+
+    private void writeBatch(List<Message> messages, List<Session> touches) {
+        int batchSize = Math.max(1, config.getBatchSize());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < messages.size(); from += batchSize) {
+                List<Message> batch = messages.subList(from, Math.min(messages.size(), from + batchSize));
+                messageMapper.insertBatch(batch);
+            }
+            for (int from = 0; from < touches.size(); from += batchSize) {
+                List<Session> batch = touches.subList(from, Math.min(touches.size(), from + batchSize));
+                sessionMapper.touchBatch(batch);
+            }
+        });
+    }
+
+    private List<Session> drainTouches() {
+        List<Session> touches = new ArrayList<>(sessionTouchMap.size());
+        Iterator<Map.Entry<Long, Session>> iterator = sessionTouchMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            touches.add(iterator.next().getValue());
+            iterator.remove();
+        }
+        return touches;
+    }
+
+    /**
+     * 写库失败：消息按原顺序放回队首，会话更新与新提交的合并
+     */
+    private void requeue(List<Message> messages, List<Session> touches) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            messageQueue.offerFirst(messages.get(i));
+        }
+        for (Session touch : touches) {
+            sessionTouchMap.merge(touch.getId(), touch, MessageWriteBehind::mergeTouch);
+        }
+    }
+
+    private static Session mergeTouch(Session existing, Session incoming) {
+        Session merged = new Session();
+        merged.setId(existing.getId());
+        merged.setUserId(existing.getUserId());
+        merged.setUpdatedAt(later(existing.getUpdatedAt(), incoming.getUpdatedAt()));
+        merged.setLastMsgTime(later(existing.getLastMsgTime(), incoming.getLastMsgTime()));
+        return merged;
+    }
+
+    private static <T extends Comparable<? super T>> T later(T a, T b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(config.getFlushIntervalMs() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int retries = Math.max(1, config.getShutdownFlushRetries());
+        for (int i = 1; i <= retries; i++) {
+            try {
+                flush();
+                return;
+            } catch (Exception e) {
+                log.error("关闭时写入待写消息失败（第{}次）", i, e);
+            }
+        }
+        writeFallbackFile();
+    }
+
+    /**
+     * 写库失败时的落盘兜底
+     */
+    private void writeFallbackFile() {
+        PendingSnapshot snapshot = new PendingSnapshot();
+        messageQueue.drainTo(snapshot.getMessages());
+        snapshot.setSessionTouches(drainTouches());
+        writeSnapshot(snapshot, FALLBACK_FILE_PREFIX);
+    }
+
+    /**
+     * 无法写库的数据写入死信文件（启动时不会自动重新写入）
+     */
+    private void writeDeadLetterFile(List<Message> messages, List<Session> touches) {
+        PendingSnapshot snapshot = new PendingSnapshot();
+        snapshot.getMessages().addAll(messages);
+        snapshot.getSessionTouches().addAll(touches);
+        writeSnapshot(snapshot, DEAD_LETTER_FILE_PREFIX);
+    }
+
+    private void writeSnapshot(PendingSnapshot snapshot, String prefix) {
+        if (snapshot.getMessages().isEmpty() && snapshot.getSessionTouches().isEmpty()) {
+            return;
+        }
+        Path dir = Paths.get(config.getFallbackDir());
+        Path file = dir.resolve(prefix + System.nanoTime() + FALLBACK_FILE_SUFFIX);
+        try {
+            Files.createDirectories(dir);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                objectMapper.writeValue(writer, snapshot);
+            }
+            log.warn("待写消息{}条已落盘：{}", snapshot.getMessages().size(), file.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("待写消息落盘失败，丢失消息{}条", snapshot.getMessages().size(), e);
+        }
+    }
+
+    private void replayFallbackFiles() {
+        Path dir = Paths.get(config.getFallbackDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                FALLBACK_FILE_PREFIX + "*" + FALLBACK_FILE_SUFFIX)) {
+            for (Path file : files) {
+                PendingSnapshot snapshot = objectMapper.readValue(file.toFile(), PendingSnapshot.class);
+                Map<Long, Session> touches = new LinkedHashMap<>();
+                for (Session touch : snapshot.getSessionTouches()) {
+                    touches.merge(touch.getId(), touch, MessageWriteBehind::mergeTouch);
+                }
+                writeBatch(snapshot.getMessages(), new ArrayList<>(touches.values()));
+                Files.delete(file);
+                log.info("已重新写入落盘的待写消息{}条：{}", snapshot.getMessages().size(), file);
+            }
+        } catch (Exception e) {
+            // 保留文件，下次启动再试
+            log.error("重新写入落盘的待写消息失败", e);
+        }
+    }
+}
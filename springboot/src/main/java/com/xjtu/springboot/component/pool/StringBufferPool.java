@@ -1,67 +1,272 @@
 package com.xjtu.springboot.component.pool;
 
+import com.xjtu.springboot.component.storage.MemoryBudget;
 import com.xjtu.springboot.config.MessageHolderConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * 字符分段池（流式内容缓冲区TokenRope的分段，按大小分级复用，避免大数组反复分配）
+ * 1. 分级：第k个分段长度为 基础长度 << min(k, 最大级别)，长内容的分段按几何增长，分段数与拷贝都少
+ * 2. 共享层：每个级别按CPU数分条带，线程从自己的条带开始tryLock，冲突时换下一个条带，不阻塞等待
+ *    （分段在HttpClient/合并线程上借出、在Tomcat/业务线程上归还，不使用线程缓存，避免分段滞留在不再借用的线程上）
+ * 3. 接入会话存储的内存预算后，池中常驻的分段计入预算：预算不足时归还的分段直接丢弃，
+ *    会话追加预留失败时先回收池中的分段，再回收空闲会话
+ * 共享层满时丢弃（交给GC），池中常驻的字节数通过指标暴露
+ */
 @Slf4j
 @Component
 public class StringBufferPool {
     private final MessageHolderConfig config;
-    // 阻塞队列实现池（线程安全）
-    private BlockingQueue<StringBuffer> pool;
+    // 基础分段长度（字符数）
+    private int segmentSize;
+    // 最大级别（级别k的分段长度为segmentSize << k）
+    private int maxClass;
+    // 几何增长部分的总长度（之后的分段都是最大级别）
+    private int geometricLength;
+    // 各级别的共享层
+    private SizeClass[] classes;
+    // 池中常驻分段计入的内存预算（会话存储接入前只统计不限制）
+    private volatile MemoryBudget budget;
 
-    public StringBufferPool(MessageHolderConfig config) {
+    // 监控指标
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter dropCounter;
+    // 池中常驻的字符数
+    private final LongAdder residentChars = new LongAdder();
+
+    public StringBufferPool(MessageHolderConfig config, MeterRegistry meterRegistry) {
         this.config = config;
+        this.hitCounter = meterRegistry.counter("message.holder.pool.hit");
+        this.missCounter = meterRegistry.counter("message.holder.pool.miss");
+        this.dropCounter = meterRegistry.counter("message.holder.pool.drop");
+        Gauge.builder("message.holder.pool.resident.bytes", this, StringBufferPool::getResidentBytes)
+                .description("字符分段池中常驻的字节数")
+                .register(meterRegistry);
     }
 
     /**
-     * 初始化池（预创建缓冲区）
+     * 初始化池（预创建基础级别的分段）
      */
     @PostConstruct
     public void initPool() {
         int poolSize = config.getBufferPoolSize();
-        int initialCapacity = config.getBufferInitialCapacity();
-        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.segmentSize = Math.max(64, config.getBufferInitialCapacity());
+        // 最大分段长度不超过int范围
+        this.maxClass = Math.max(0, Math.min(config.getBufferSizeClasses() - 1,
+                Integer.numberOfLeadingZeros(segmentSize) - 2));
+        this.geometricLength = segmentSize * ((1 << (maxClass + 1)) - 1);
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.classes = new SizeClass[maxClass + 1];
+        for (int k = 0; k <= maxClass; k++) {
+            // 每个级别常驻字节数相近：级别越高可保留的分段越少
+            int capacity = Math.max(stripes, poolSize >> k);
+            classes[k] = new SizeClass(stripes, (capacity + stripes - 1) / stripes);
+        }
         for (int i = 0; i < poolSize; i++) {
-            pool.offer(new StringBuffer(initialCapacity));
+            if (!classes[0].offer(new char[segmentSize], i)) {
+                break;
+            }
+            residentChars.add(segmentSize);
         }
-        log.info("StringBuffer 池初始化完成，池大小：{}，初始容量：{}", poolSize, initialCapacity);
+        log.info("字符分段池初始化完成，池大小：{}，分段长度：{}~{}，条带数：{}",
+                poolSize, segmentSize, segmentSize << maxClass, stripes);
+    }
+
+    /**
+     * 接入内存预算：已常驻的分段立即计入，之后归还/借出时同步记账
+     */
+    public void attachBudget(MemoryBudget memoryBudget) {
+        memoryBudget.forceReserve(getResidentBytes());
+        this.budget = memoryBudget;
     }
 
     /**
-     * 从池获取缓冲区（无可用则创建新的）
+     * 获取第index个分段（长度为segmentLength(index)；无可用则创建新的）
      */
-    public StringBuffer borrow() {
-        StringBuffer sb = pool.poll();
-        if (sb == null) {
-            // 池空时创建新的（带初始容量）
-            return new StringBuffer(config.getBufferInitialCapacity());
+    public char[] borrowSegment(int index) {
+        int k = Math.min(index, maxClass);
+        char[] segment = classes[k].poll(stripeHint());
+        if (segment == null) {
+            missCounter.increment();
+            return new char[segmentSize << k];
         }
-        // 清空内容，复用缓冲区
-        sb.setLength(0);
-        return sb;
+        hitCounter.increment();
+        removeResident(segment);
+        return segment;
     }
 
     /**
-     * 归还缓冲区到池（池满则丢弃，避免内存浪费）
+     * 归还分段（放入共享层；共享层满或内存预算不足时丢弃）
      */
-    public void recycle(StringBuffer sb) {
-        if (sb == null) {
+    public void recycleSegment(char[] segment) {
+        int k = classOf(segment);
+        if (k < 0) {
             return;
         }
-        // 超过2倍初始容量的缓冲区直接丢弃（避免大对象占用池）
-        if (sb.capacity() > config.getBufferInitialCapacity() * 2) {
-            return;
+        long bytes = segment.length * 2L;
+        MemoryBudget current = budget;
+        // 只使用剩余预算，不为保留分段回收会话
+        if (current == null || current.tryReserveWithoutReclaim(bytes)) {
+            if (classes[k].offer(segment, stripeHint())) {
+                residentChars.add(segment.length);
+                return;
+            }
+            if (current != null) {
+                current.release(bytes);
+            }
+        }
+        // 池满或预算不足，丢弃（非核心，不抛异常）
+        dropCounter.increment();
+    }
+
+    /**
+     * 丢弃池中的分段（从最大级别开始），直到释放bytesNeeded字节或池为空
+     *
+     * @return 释放的字节数
+     */
+    public long trim(long bytesNeeded) {
+        long freed = 0;
+        for (int k = maxClass; k >= 0 && freed < bytesNeeded; k--) {
+            char[] segment;
+            while (freed < bytesNeeded && (segment = classes[k].poll(0)) != null) {
+                removeResident(segment);
+                freed += segment.length * 2L;
+            }
+        }
+        return freed;
+    }
+
+    private void removeResident(char[] segment) {
+        residentChars.add(-segment.length);
+        MemoryBudget current = budget;
+        if (current != null) {
+            current.release(segment.length * 2L);
+        }
+    }
+
+    // ======== 分段布局（分段长度按级别几何增长，达到最大级别后保持不变） ========
+
+    /**
+     * 第index个分段的长度
+     */
+    public int segmentLength(int index) {
+        return segmentSize << Math.min(index, maxClass);
+    }
+
+    /**
+     * 第index个分段在内容中的起始位置
+     */
+    public int segmentStart(int index) {
+        if (index <= maxClass + 1) {
+            return segmentSize * ((1 << index) - 1);
+        }
+        return geometricLength + (index - maxClass - 1) * (segmentSize << maxClass);
+    }
+
+    /**
+     * 内容位置pos所在的分段序号
+     */
+    public int segmentIndex(int pos) {
+        if (pos < geometricLength) {
+            return 31 - Integer.numberOfLeadingZeros(pos / segmentSize + 1);
+        }
+        return maxClass + 1 + (pos - geometricLength) / (segmentSize << maxClass);
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public long getResidentBytes() {
+        return residentChars.sum() * 2;
+    }
+
+    private int classOf(char[] segment) {
+        if (segment == null || segment.length < segmentSize || segment.length % segmentSize != 0) {
+            return -1;
         }
-        sb.setLength(0); // 清空内容
-        if (!pool.offer(sb)) {
-            // 池满，丢弃（非核心，不抛异常）
-            log.warn("StringBuffer 池已满，丢弃缓冲区（容量：{}）", sb.capacity());
+        int multiple = segment.length / segmentSize;
+        if (Integer.bitCount(multiple) != 1) {
+            return -1;
+        }
+        int k = Integer.numberOfTrailingZeros(multiple);
+        return k <= maxClass ? k : -1;
+    }
+
+    private static int stripeHint() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16));
+    }
+
+    /**
+     * 单个级别的共享层（按条带分开加锁）
+     */
+    private static final class SizeClass {
+        private final Stripe[] stripes;
+        private final int mask;
+
+        SizeClass(int stripeCount, int stripeCapacity) {
+            this.stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe(stripeCapacity);
+            }
+            this.mask = stripeCount - 1;
+        }
+
+        char[] poll(int hint) {
+            for (int i = 0; i <= mask; i++) {
+                Stripe stripe = stripes[(hint + i) & mask];
+                if (stripe.size > 0 && stripe.lock.tryLock()) {
+                    try {
+                        if (stripe.size > 0) {
+                            char[] segment = stripe.items[--stripe.size];
+                            stripe.items[stripe.size] = null;
+                            return segment;
+                        }
+                    } finally {
+                        stripe.lock.unlock();
+                    }
+                }
+            }
+            return null;
+        }
+
+        boolean offer(char[] segment, int hint) {
+            for (int i = 0; i <= mask; i++) {
+                Stripe stripe = stripes[(hint + i) & mask];
+                if (stripe.size < stripe.items.length && stripe.lock.tryLock()) {
+                    try {
+                        if (stripe.size < stripe.items.length) {
+                            stripe.items[stripe.size++] = segment;
+                            return true;
+                        }
+                    } finally {
+                        stripe.lock.unlock();
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final char[][] items;
+        // 由lock保护（锁外读取只用于跳过空/满的条带）
+        volatile int size = 0;
+
+        Stripe(int capacity) {
+            this.items = new char[capacity][];
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+package com.xjtu.springboot.component.pool;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 每任务一线程的执行器（优先使用虚拟线程），通过信号量限制最大并发
+ * 项目编译目标为JDK17，虚拟线程相关API通过反射获取；
+ * 运行时不支持虚拟线程（JDK < 21）时退化为固定maxConcurrency个平台线程的线程池，
+ * 等待的任务放在队列中（容量同queueCapacity），不会每个任务占用一个线程
+ */
+@Slf4j
+public class VirtualThreadExecutor extends AbstractExecutorService {
+    // 底层执行器（虚拟线程：每个任务一个线程；退化时为fallback）
+    private final ExecutorService delegate;
+    // 退化为平台线程时的固定大小线程池（虚拟线程模式为空）
+    private final ThreadPoolExecutor fallback;
+    // 并发许可（虚拟线程模式：超出的任务在自己的线程上等待，虚拟线程等待几乎没有开销）
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    // 最大等待任务数（<=0表示不限制）
+    private final int queueCapacity;
+    // 等待许可的任务数
+    private final AtomicInteger waitingCount = new AtomicInteger(0);
+    // 等待许可的任务及其所在线程（用于remove）
+    private final Map<Runnable, Thread> waitingThreads = new ConcurrentHashMap<>();
+    // 超出等待上限时的拒绝处理
+    private final Consumer<Runnable> rejectHandler;
+    private final boolean virtual;
+
+    public VirtualThreadExecutor(String threadNamePrefix,
+                                 int maxConcurrency,
+                                 int queueCapacity,
+                                 Consumer<Runnable> rejectHandler,
+                                 Thread.UncaughtExceptionHandler exceptionHandler,
+                                 ThreadFactory fallbackFactory) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.rejectHandler = rejectHandler;
+        this.permits = new Semaphore(maxConcurrency);
+        ExecutorService virtualExecutor = newVirtualExecutor(threadNamePrefix, exceptionHandler);
+        if (virtualExecutor != null) {
+            this.delegate = virtualExecutor;
+            this.fallback = null;
+            this.virtual = true;
+        } else {
+            log.warn("当前JDK不支持虚拟线程，线程池[{}]退化为平台线程（最大并发：{}）", threadNamePrefix, maxConcurrency);
+            this.fallback = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+                    queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>(),
+                    fallbackFactory, new ThreadPoolExecutor.AbortPolicy());
+            // 空闲时回收线程
+            this.fallback.allowCoreThreadTimeOut(true);
+            this.delegate = fallback;
+            this.virtual = false;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (fallback != null) {
+            try {
+                fallback.execute(command);
+            } catch (RejectedExecutionException e) {
+                if (fallback.isShutdown()) {
+                    throw e;
+                }
+                // 队列已满
+                rejectHandler.accept(command);
+            }
+            return;
+        }
+        // 准入控制：等待中的任务达到上限时直接拒绝，避免无界堆积
+        int waiting = waitingCount.incrementAndGet();
+        if (queueCapacity > 0 && waiting > queueCapacity) {
+            waitingCount.decrementAndGet();
+            rejectHandler.accept(command);
+            return;
+        }
+        try {
+            delegate.execute(() -> awaitAndRun(command));
+        } catch (RejectedExecutionException e) {
+            // 底层执行器已关闭：任务没有启动，归还等待名额
+            waitingCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void awaitAndRun(Runnable command) {
+        Thread current = Thread.currentThread();
+        // 同一个任务对象重复提交时只有第一个可以被remove
+        boolean removable = waitingThreads.putIfAbsent(command, current) == null;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // 关闭或被remove时中断，放弃执行
+            if (removable) {
+                waitingThreads.remove(command, current);
+            }
+            waitingCount.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (removable && !waitingThreads.remove(command, current)) {
+            // 取得许可的同时被remove：放弃执行
+            permits.release();
+            waitingCount.decrementAndGet();
+            Thread.interrupted();
+            return;
+        }
+        waitingCount.decrementAndGet();
+        try {
+            command.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 移除仍在等待许可的任务（与ThreadPoolExecutor.remove一致，已开始执行的任务不受影响）
+     *
+     * @return 是否移除成功
+     */
+    public boolean remove(Runnable command) {
+        if (fallback != null) {
+            return fallback.remove(command);
+        }
+        Thread thread = waitingThreads.remove(command);
+        if (thread == null) {
+            return false;
+        }
+        thread.interrupt();
+        return true;
+    }
+
+    /**
+     * 是否真正使用了虚拟线程
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 当前正在执行的任务数
+     */
+    public int getActiveCount() {
+        if (fallback != null) {
+            return fallback.getActiveCount();
+        }
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * 等待并发许可的任务数
+     */
+    public int getWaitingCount() {
+        if (fallback != null) {
+            return fallback.getQueue().size();
+        }
+        return waitingCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 反射创建虚拟线程执行器：
+     * Thread.ofVirtual().name(prefix, 0).uncaughtExceptionHandler(handler).factory()
+     * + Executors.newThreadPerTaskExecutor(factory)
+     */
+    private static ExecutorService newVirtualExecutor(String threadNamePrefix,
+                                                      Thread.UncaughtExceptionHandler exceptionHandler) {
+        try {
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = ofVirtualClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, threadNamePrefix + "-virtual-", 0L);
+            builder = ofVirtualClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class)
+                    .invoke(builder, exceptionHandler);
+            ThreadFactory factory = (ThreadFactory) ofVirtualClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
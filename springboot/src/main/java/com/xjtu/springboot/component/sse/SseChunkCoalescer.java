@@ -0,0 +1,168 @@
+package com.xjtu.springboot.component.sse;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SSE分块合并器（单条流一个实例）
+ * 连续的同类增量（思考/回复）在时间窗口或字符上限内合并为一个chunk事件发送；
+ * 第一个增量立即发送（保证首字延迟），类型切换与结束时立即发送剩余内容
+ * 合并状态由对象锁保护，调用发送回调时不持有该锁；发送锁保证分块按顺序串行发送；
+ * 窗口到期只把待发送内容交给本流的发送任务，共用的定时线程不执行发送
+ */
+public class SseChunkCoalescer {
+    /**
+     * 合并后的分块输出
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        void send(String text, boolean thinking);
+    }
+
+    private final long windowMs;
+    private final int maxChars;
+    private final ScheduledExecutorService scheduler;
+    // 窗口到期后执行发送的线程池
+    private final Executor flushExecutor;
+    private final ChunkSink sink;
+
+    // 待发送内容（同一类型）
+    private final StringBuilder pending = new StringBuilder();
+    private boolean pendingThinking;
+    // 是否已发送过首个分块
+    private boolean firstSent = false;
+    // 窗口到期的定时发送任务
+    private ScheduledFuture<?> flushTask;
+    private boolean closed = false;
+    // 已合并完成、等待发送的分块（对象锁保护）
+    private final ArrayDeque<Chunk> ready = new ArrayDeque<>();
+    // 发送锁（串行调用发送回调，不与合并状态共用）
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    public SseChunkCoalescer(long windowMs, int maxChars,
+                             ScheduledExecutorService scheduler, Executor flushExecutor, ChunkSink sink) {
+        this.windowMs = windowMs;
+        this.maxChars = maxChars;
+        this.scheduler = scheduler;
+        this.flushExecutor = flushExecutor;
+        this.sink = sink;
+    }
+
+    /**
+     * 追加增量内容（达到发送条件时在调用线程上发送）
+     */
+    public void append(String text, boolean thinking) {
+        synchronized (this) {
+            if (closed || text == null || text.isEmpty()) {
+                return;
+            }
+            // 类型切换：先发送已有内容
+            if (pending.length() > 0 && pendingThinking != thinking) {
+                takePending();
+            }
+            pending.append(text);
+            pendingThinking = thinking;
+
+            if (!firstSent || windowMs <= 0 || pending.length() >= maxChars) {
+                firstSent = true;
+                takePending();
+            } else if (flushTask == null) {
+                // 窗口从第一个待发送增量开始计时
+                flushTask = scheduler.schedule(this::onWindowExpired, windowMs, TimeUnit.MILLISECONDS);
+            }
+            if (ready.isEmpty()) {
+                return;
+            }
+        }
+        sendReady();
+    }
+
+    /**
+     * 立即发送剩余内容（返回时之前的内容都已发送）
+     */
+    public void flush() {
+        synchronized (this) {
+            if (!closed) {
+                takePending();
+            }
+        }
+        sendReady();
+    }
+
+    /**
+     * 发送剩余内容并停止合并（流结束时调用）
+     */
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                takePending();
+                closed = true;
+            }
+        }
+        sendReady();
+    }
+
+    /**
+     * 窗口到期（定时线程）：只取出待发送内容，发送交给发送线程池
+     */
+    private void onWindowExpired() {
+        synchronized (this) {
+            flushTask = null;
+            if (closed || pending.length() == 0) {
+                return;
+            }
+            takePending();
+        }
+        try {
+            flushExecutor.execute(this::sendReady);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭：内容留在队列中，由下一次追加/结束时发送
+        }
+    }
+
+    private void takePending() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.length() == 0) {
+            return;
+        }
+        ready.add(new Chunk(pending.toString(), pendingThinking));
+        pending.setLength(0);
+    }
+
+    /**
+     * 按顺序发送已就绪的分块（不持有对象锁）
+     */
+    private void sendReady() {
+        sendLock.lock();
+        try {
+            Chunk chunk;
+            while ((chunk = pollReady()) != null) {
+                sink.send(chunk.text, chunk.thinking);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private synchronized Chunk pollReady() {
+        return ready.poll();
+    }
+
+    private static final class Chunk {
+        final String text;
+        final boolean thinking;
+
+        Chunk(String text, boolean thinking) {
+            this.text = text;
+            this.thinking = thinking;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.xjtu.springboot.component.sse;
+
+import com.xjtu.springboot.component.pool.VirtualThreadExecutor;
+import com.xjtu.springboot.config.ChatStreamConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE分块合并器工厂（持有所有合并器共用的窗口定时线程池与窗口到期发送线程池）
+ * 定时线程只负责取出到期内容，发送在发送线程池上执行，慢发送不会拖延其他流的窗口
+ */
+@Slf4j
+@Component
+public class SseChunkCoalescerFactory {
+    private final ChatStreamConfig config;
+    // 窗口定时线程池（守护线程，不执行发送）
+    private final ScheduledExecutorService scheduler;
+    // 窗口到期后的发送线程池（每任务一线程，限制并发）
+    private final VirtualThreadExecutor flushExecutor;
+
+    public SseChunkCoalescerFactory(ChatStreamConfig config) {
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, config.getCoalesceSchedulerThreads()), r -> {
+            Thread t = new Thread(r, "sse-coalescer-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.flushExecutor = new VirtualThreadExecutor("sse-coalescer-flush",
+                Math.max(1, config.getCoalesceFlushConcurrency()), 0,
+                command -> {
+                    throw new RejectedExecutionException("SSE分块发送线程池已关闭");
+                },
+                (t, e) -> log.error("SSE分块发送线程[{}]执行异常", t.getName(), e),
+                r -> {
+                    Thread t = new Thread(r, "sse-coalescer-flush");
+                    t.setDaemon(true);
+                    return t;
+                });
+        log.debug("SSE分块合并配置：窗口={}ms，最大字符数={}", config.getCoalesceWindowMs(), config.getCoalesceMaxChars());
+    }
+
+    /**
+     * 创建单条流的合并器
+     */
+    public SseChunkCoalescer create(SseChunkCoalescer.ChunkSink sink) {
+        return new SseChunkCoalescer(config.getCoalesceWindowMs(), config.getCoalesceMaxChars(),
+                scheduler, flushExecutor, sink);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package com.xjtu.springboot.component.sse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 精简chunk帧编码器（单条流一个实例，非线程安全）
+ * 帧格式：event:chunk\ndata:{"k":"t|c","d":"增量文本"}\n\n
+ * k=t表示思考内容，k=c表示回复内容；模型、耗时等元数据只在finished事件中返回
+ * 编码复用同一个JsonGenerator与字节缓冲区，每帧只产生一次精确长度的拷贝
+ */
+public class SseFrameEncoder {
+    public static final String KIND_THINKING = "t";
+    public static final String KIND_CONTENT = "c";
+
+    private static final byte[] FRAME_PREFIX = "event:chunk\ndata:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FRAME_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final String FIELD_KIND = "k";
+    private static final String FIELD_DELTA = "d";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // 复用的帧缓冲区
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder(512);
+    private final JsonGenerator generator;
+
+    public SseFrameEncoder() throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(buffer);
+        // 多个根对象之间不写分隔符
+        this.generator.setRootValueSeparator(null);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * 编码任意事件帧（data为已序列化的单行JSON）
+     */
+    public static byte[] encodeEvent(String eventName, String data) {
+        return ("event:" + eventName + "\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 编码一个chunk帧（返回完整的SSE帧字节，可直接写入响应）
+     */
+    public byte[] encodeChunk(String text, boolean thinking) throws IOException {
+        buffer.reset();
+        buffer.write(FRAME_PREFIX);
+        generator.writeStartObject();
+        generator.writeStringField(FIELD_KIND, thinking ? KIND_THINKING : KIND_CONTENT);
+        generator.writeStringField(FIELD_DELTA, text);
+        generator.writeEndObject();
+        generator.flush();
+        buffer.write(FRAME_SUFFIX);
+        return buffer.toByteArray();
+    }
+}
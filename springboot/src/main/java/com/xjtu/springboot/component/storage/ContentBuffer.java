@@ -0,0 +1,35 @@
+package com.xjtu.springboot.component.storage;
+
+/**
+ * 会话暂存内容缓冲区（单写者只追加）
+ * 释放与读取完整内容由调用方通过会话锁互斥，释放后不能再读取
+ */
+public interface ContentBuffer {
+    /**
+     * 追加内容（只允许一个写者）
+     *
+     * @return 已释放或容量不足时返回false（不写入任何内容）
+     */
+    boolean append(CharSequence text);
+
+    /**
+     * 内容长度（字符数）
+     */
+    int length();
+
+    /**
+     * 组装完整内容（保存时调用一次）
+     */
+    @Override
+    String toString();
+
+    /**
+     * 占用的字节数（所有存储层合计）
+     */
+    long getReservedBytes();
+
+    /**
+     * 释放缓冲区；写入中时由写者在写完后释放
+     */
+    void release();
+}
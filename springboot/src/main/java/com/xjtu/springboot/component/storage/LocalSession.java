@@ -6,34 +6,70 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * 本地会话存储（内容全部在堆上，默认实现）
+ */
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "message.holder", name = "storage", havingValue = "local", matchIfMissing = true)
 public class LocalSession implements SessionStorage {
+    /**
+     * 内容缓冲区工厂（子类可替换为分层存储等实现）
+     */
+    @FunctionalInterface
+    protected interface ContentBufferFactory {
+        ContentBuffer create(StringBufferPool bufferPool, MemoryBudget budget);
+    }
+
+    private static final String POLICY_EVICT_IDLE = "evict-idle";
+
     // userId → sessionId → SessionMeta
     private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, SessionMeta>> contentMap = new ConcurrentHashMap<>();
     // 配置项
     private final MessageHolderConfig properties;
     // 缓冲区池
     private final StringBufferPool bufferPool;
+    // 全局内存预算（按已分配的分段记账）
+    private final MemoryBudget budget;
+    // 内容缓冲区创建
+    private final Supplier<ContentBuffer> bufferFactory;
+    // 会话到期索引（按到期时间排序）
+    private final SessionExpiryIndex expiryIndex = new SessionExpiryIndex();
     // 监控指标
     private final Counter appendSuccessCounter;
     private final Counter appendFailCounter;
     private final Counter cleanTimeoutCounter;
+    private final Counter evictCounter;
+    private final Counter budgetRejectCounter;
     private final Timer appendTimer;
     // 活跃计数（原子类保证线程安全）
     private final AtomicInteger activeUserCount = new AtomicInteger(0);
     private final AtomicInteger activeSessionCount = new AtomicInteger(0);
 
+    @Autowired
     public LocalSession(MessageHolderConfig properties,
                         StringBufferPool bufferPool,
                         MeterRegistry meterRegistry) {
+        this(properties, bufferPool, meterRegistry, TokenRope::new);
+    }
+
+    protected LocalSession(MessageHolderConfig properties,
+                           StringBufferPool bufferPool,
+                           MeterRegistry meterRegistry,
+                           ContentBufferFactory contentBufferFactory) {
         this.properties = properties;
         this.bufferPool = bufferPool;
 
@@ -42,6 +78,26 @@ public class LocalSession implements SessionStorage {
         this.appendFailCounter = meterRegistry.counter("message.holder.append.fail");
         this.cleanTimeoutCounter = meterRegistry.counter("message.holder.clean.timeout");
         this.appendTimer = meterRegistry.timer("message.holder.append.duration");
+        this.evictCounter = meterRegistry.counter("message.holder.evicted");
+        this.budgetRejectCounter = meterRegistry.counter("message.holder.budget.rejected");
+
+        // 内存预算（含分段池中常驻的分段）：不足时先回收池中的分段，再按策略回收空闲会话，仍不足则拒绝追加
+        this.budget = new MemoryBudget(properties.getGlobalMaxContentBytes());
+        bufferPool.attachBudget(budget);
+        boolean evictIdle = POLICY_EVICT_IDLE.equals(properties.getBudgetPolicy());
+        budget.setReclaimer(bytesNeeded -> {
+            long freed = bufferPool.trim(bytesNeeded);
+            if (freed < bytesNeeded && evictIdle) {
+                freed += evictIdleSessions(bytesNeeded - freed);
+                // 被回收会话的分段会先归还到池（占用刚释放的预算），再从池中丢弃
+                bufferPool.trim(bytesNeeded);
+            }
+            return freed;
+        });
+        meterRegistry.gauge("message.holder.bytes.used", budget, MemoryBudget::getUsedBytes);
+        meterRegistry.gauge("message.holder.bytes.limit", budget, MemoryBudget::getLimitBytes);
+        this.bufferFactory = () -> contentBufferFactory.create(bufferPool, budget);
+        meterRegistry.gauge("message.holder.expiry.pending", expiryIndex, SessionExpiryIndex::size);
     }
 
     @Override
@@ -51,17 +107,19 @@ public class LocalSession implements SessionStorage {
             return;
         }
 
-        // 原子化创建用户维度 Map
-        contentMap.computeIfAbsent(userId, k -> {
-            activeUserCount.incrementAndGet();
-            return new ConcurrentHashMap<>();
-        });
-
-        // 原子化创建会话元数据
-        ConcurrentHashMap<Long, SessionMeta> userSessionMap = contentMap.get(userId);
-        userSessionMap.computeIfAbsent(sessionId, k -> {
-            activeSessionCount.incrementAndGet();
-            return SessionMeta.init(properties.getDefaultSessionTimeout(), bufferPool);
+        // 原子化创建用户维度 Map + 会话元数据（与移除空用户 Map 互斥，会话不会落入已移除的 Map）
+        contentMap.compute(userId, (k, userSessionMap) -> {
+            if (userSessionMap == null) {
+                activeUserCount.incrementAndGet();
+                userSessionMap = new ConcurrentHashMap<>();
+            }
+            userSessionMap.computeIfAbsent(sessionId, key -> {
+                activeSessionCount.incrementAndGet();
+                SessionMeta meta = SessionMeta.init(properties.getDefaultSessionTimeout(), bufferFactory);
+                expiryIndex.schedule(userId, sessionId, meta);
+                return meta;
+            });
+            return userSessionMap;
         });
 
         log.debug("初始化用户[{}]会话[{}]（超时时间：{}ms）", userId, sessionId, properties.getDefaultSessionTimeout());
@@ -93,32 +151,36 @@ public class LocalSession implements SessionStorage {
                 return false;
             }
 
-            // 细粒度锁：仅锁定当前会话
-            sessionMeta.getSessionLock().lock();
-            try {
-                // 获取目标缓冲区
-                StringBuffer targetSb = isThinking ? sessionMeta.getThinkingContent() : sessionMeta.getReplyContent();
-
-                // 长度限制校验
-                int newLength = targetSb.length() + content.length();
-                if (newLength > properties.getMaxContentLength()) {
-                    appendFailCounter.increment();
-                    log.warn("用户[{}]会话[{}]内容超限（当前：{}，最大：{}）",
-                            userId, sessionId, newLength, properties.getMaxContentLength());
-                    return false;
-                }
+            // 单写者只追加缓冲区：不加锁
+            ContentBuffer target = sessionMeta.getContent(isThinking);
 
-                // 累加内容 + 更新活跃时间
-                targetSb.append(content);
-                sessionMeta.updateLastActiveTime();
-                appendSuccessCounter.increment();
+            // 单会话长度限制校验（思考与回复合计，按UTF-16字节计算）
+            long newBytes = (sessionMeta.getContentLength() + content.length()) * 2;
+            if (newBytes > properties.getMaxContentLength()) {
+                appendFailCounter.increment();
+                log.warn("用户[{}]会话[{}]内容超限（当前：{}字节，最大：{}字节）",
+                        userId, sessionId, newBytes, properties.getMaxContentLength());
+                return false;
+            }
 
-                log.trace("用户[{}]会话[{}]累加{}内容，当前长度：{}",
-                        userId, sessionId, isThinking ? "思考" : "回复", targetSb.length());
-                return true;
-            } finally {
-                sessionMeta.getSessionLock().unlock();
+            // 累加内容（全局预算不足或会话已清除时不写入任何内容） + 更新活跃时间
+            if (!target.append(content)) {
+                appendFailCounter.increment();
+                if (sessionMeta == userSessionMap.get(sessionId)) {
+                    budgetRejectCounter.increment();
+                    log.warn("累加内容失败：暂存内存预算不足（已用：{}字节，上限：{}字节），用户[{}]会话[{}]",
+                            budget.getUsedBytes(), budget.getLimitBytes(), userId, sessionId);
+                } else {
+                    log.warn("累加内容失败：用户[{}]会话[{}]已清除", userId, sessionId);
+                }
+                return false;
             }
+            sessionMeta.updateLastActiveTime();
+            appendSuccessCounter.increment();
+
+            log.trace("用户[{}]会话[{}]累加{}内容，当前长度：{}",
+                    userId, sessionId, isThinking ? "思考" : "回复", target.length());
+            return true;
         });
     }
 
@@ -138,24 +200,26 @@ public class LocalSession implements SessionStorage {
             return "";
         }
 
-        // 细粒度锁保证原子性
+        // 细粒度锁保证取出与清除的原子性（所有释放缓冲区的操作都持有会话锁）
         sessionMeta.getSessionLock().lock();
         try {
-            StringBuffer targetSb = isThinking ? sessionMeta.getThinkingContent() : sessionMeta.getReplyContent();
-            String result = targetSb.toString();
+            // 已被清除/回收的会话不再读取（缓冲区已归还到池）
+            if (userSessionMap.get(sessionId) != sessionMeta) {
+                return "";
+            }
+            // 完整内容只在保存时组装一次
+            String result = sessionMeta.getContent(isThinking).toString();
 
             // 非思考内容：清除会话 + 释放缓冲区
             if (!isThinking) {
+                // 移除会话
+                userSessionMap.remove(sessionId, sessionMeta);
                 // 释放缓冲区到池
                 sessionMeta.releaseBuffer();
-                // 移除会话
-                userSessionMap.remove(sessionId);
+                expiryIndex.cancel(sessionMeta);
                 activeSessionCount.decrementAndGet();
                 // 无会话时清理用户维度 Map
-                if (userSessionMap.isEmpty()) {
-                    contentMap.remove(userId);
-                    activeUserCount.decrementAndGet();
-                }
+                removeUserIfEmpty(userId, userSessionMap);
                 log.debug("用户[{}]会话[{}]获取回复内容并清除，长度：{}", userId, sessionId, result.length());
             } else {
                 log.debug("用户[{}]会话[{}]获取思考内容，长度：{}", userId, sessionId, result.length());
@@ -179,16 +243,13 @@ public class LocalSession implements SessionStorage {
         }
 
         // 移除并释放会话缓冲区
-        SessionMeta sessionMeta = userSessionMap.remove(sessionId);
-        if (sessionMeta != null) {
-            sessionMeta.releaseBuffer();
+        SessionMeta sessionMeta = userSessionMap.get(sessionId);
+        if (sessionMeta != null && removeSession(userSessionMap, sessionId, sessionMeta)) {
+            expiryIndex.cancel(sessionMeta);
             activeSessionCount.decrementAndGet();
             cleanTimeoutCounter.increment();
             // 清理空用户 Map
-            if (userSessionMap.isEmpty()) {
-                contentMap.remove(userId);
-                activeUserCount.decrementAndGet();
-            }
+            removeUserIfEmpty(userId, userSessionMap);
             log.debug("清除用户[{}]会话[{}]，当前活跃用户：{}，活跃会话：{}",
                     userId, sessionId, activeUserCount.get(), activeSessionCount.get());
         }
@@ -203,72 +264,206 @@ public class LocalSession implements SessionStorage {
         // 移除用户所有会话
         ConcurrentHashMap<Long, SessionMeta> userSessionMap = contentMap.remove(userId);
         if (userSessionMap != null) {
-            // 批量释放缓冲区
-            userSessionMap.values().forEach(SessionMeta::releaseBuffer);
+            // 批量释放缓冲区（逐个持有会话锁，已被其他操作移除的会话不重复计数）
+            int removed = 0;
+            for (Long sessionId : userSessionMap.keySet()) {
+                SessionMeta meta = userSessionMap.get(sessionId);
+                if (meta != null && removeSession(userSessionMap, sessionId, meta)) {
+                    expiryIndex.cancel(meta);
+                    removed++;
+                }
+            }
             // 更新计数
-            cleanTimeoutCounter.increment(userSessionMap.size());
-            activeSessionCount.addAndGet(-userSessionMap.size());
+            cleanTimeoutCounter.increment(removed);
+            activeSessionCount.addAndGet(-removed);
             activeUserCount.decrementAndGet();
 
             log.debug("批量清除用户[{}]的{}个会话，当前活跃用户：{}，活跃会话：{}",
-                    userId, userSessionMap.size(), activeUserCount.get(), activeSessionCount.get());
+                    userId, removed, activeUserCount.get(), activeSessionCount.get());
         }
     }
 
+    /**
+     * 清理超时会话：只从到期索引中取出已到期的条目
+     * 期间活跃过的会话按新的到期时间重新入队，已取出/清除的会话直接丢弃条目
+     */
     @Override
     public void cleanTimeoutSessions() {
         long currentTime = System.currentTimeMillis();
-        int batchCount = 0;
         long cleanedCount = 0;
 
-        // 分批遍历用户（避免全量遍历阻塞）
-        Iterator<Map.Entry<Long, ConcurrentHashMap<Long, SessionMeta>>> userIterator = contentMap.entrySet().iterator();
-        while (userIterator.hasNext() && batchCount < properties.getCleanBatchSize()) {
-            Map.Entry<Long, ConcurrentHashMap<Long, SessionMeta>> userEntry = userIterator.next();
-            Long userId = userEntry.getKey();
-            ConcurrentHashMap<Long, SessionMeta> userSessionMap = userEntry.getValue();
-
-            // 遍历用户下的会话
-            Iterator<Map.Entry<Long, SessionMeta>> sessionIterator = userSessionMap.entrySet().iterator();
-            while (sessionIterator.hasNext()) {
-                Map.Entry<Long, SessionMeta> sessionEntry = sessionIterator.next();
-                Long sessionId = sessionEntry.getKey();
-                SessionMeta sessionMeta = sessionEntry.getValue();
-
-                // 按最后活跃时间判断超时
-                if (currentTime - sessionMeta.getLastActiveTime().get() > sessionMeta.getTimeout()) {
-                    // 释放缓冲区 + 移除会话
-                    sessionMeta.releaseBuffer();
-                    sessionIterator.remove();
-                    activeSessionCount.decrementAndGet();
-                    cleanedCount++;
-                    log.trace("清理超时会话：用户[{}]会话[{}]（最后活跃：{}）",
-                            userId, sessionId, sessionMeta.getLastActiveTime().get());
-                }
+        SessionExpiryIndex.Entry entry;
+        while ((entry = expiryIndex.pollExpired(currentTime)) != null) {
+            Long userId = entry.userId;
+            Long sessionId = entry.sessionId;
+            SessionMeta sessionMeta = entry.meta;
+            ConcurrentHashMap<Long, SessionMeta> userSessionMap = contentMap.get(userId);
+            if (userSessionMap == null || userSessionMap.get(sessionId) != sessionMeta) {
+                continue;
             }
 
-            // 清理空用户 Map
-            if (userSessionMap.isEmpty()) {
-                userIterator.remove();
-                activeUserCount.decrementAndGet();
+            // 按最后活跃时间判断超时
+            long lastActiveTime = sessionMeta.getLastActiveTime().get();
+            if (currentTime - lastActiveTime <= sessionMeta.getTimeout()) {
+                expiryIndex.schedule(userId, sessionId, sessionMeta);
+                continue;
+            }
+
+            // 释放缓冲区 + 移除会话
+            if (!removeSession(userSessionMap, sessionId, sessionMeta)) {
+                continue;
             }
-            batchCount++;
+            activeSessionCount.decrementAndGet();
+            cleanedCount++;
+            log.trace("清理超时会话：用户[{}]会话[{}]（最后活跃：{}）", userId, sessionId, lastActiveTime);
+
+            // 清理空用户 Map
+            removeUserIfEmpty(userId, userSessionMap);
         }
 
         // 更新监控指标 + 日志
         if (cleanedCount > 0) {
             cleanTimeoutCounter.increment(cleanedCount);
-            log.info("定时清理超时会话完成：本次清理{}个，当前活跃用户：{}，活跃会话：{}",
+            log.info("清理超时会话完成：本次清理{}个，当前活跃用户：{}，活跃会话：{}",
                     cleanedCount, activeUserCount.get(), activeSessionCount.get());
         }
     }
 
+    /**
+     * 回收空闲会话（按到期索引从早到晚），直到释放bytesNeeded字节或没有可回收的会话
+     * 在写者线程上调用：只遍历索引头部最后活跃时间早于空闲阈值的条目，不扫描全部会话；
+     * 期间活跃过的会话按新的到期时间重新入队，下次不再遍历到
+     */
+    private long evictIdleSessions(long bytesNeeded) {
+        long idleBefore = System.currentTimeMillis() - properties.getEvictIdleMs();
+        long freed = 0;
+        Iterator<SessionExpiryIndex.Entry> iterator = expiryIndex.iterator();
+        while (freed < bytesNeeded && iterator.hasNext()) {
+            SessionExpiryIndex.Entry entry = iterator.next();
+            SessionMeta meta = entry.meta;
+            // 条目登记时的最后活跃时间（会话的最后活跃时间只会更晚），之后的条目都不会空闲
+            if (entry.deadline - meta.getTimeout() >= idleBefore) {
+                break;
+            }
+            if (meta.getLastActiveTime().get() >= idleBefore) {
+                expiryIndex.reschedule(entry);
+                continue;
+            }
+            if (meta.getReservedBytes() > 0) {
+                freed += evictSession(entry);
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * 回收一个空闲会话
+     *
+     * @return 释放的字节数（会话已被移除或正被读取/清除时为0）
+     */
+    private long evictSession(SessionExpiryIndex.Entry entry) {
+        Long userId = entry.userId;
+        Long sessionId = entry.sessionId;
+        SessionMeta meta = entry.meta;
+        ConcurrentHashMap<Long, SessionMeta> userSessionMap = contentMap.get(userId);
+        if (userSessionMap == null) {
+            return 0;
+        }
+        // 正在被读取/清除的会话跳过（不在写者线程上等待会话锁）
+        if (!meta.getSessionLock().tryLock()) {
+            return 0;
+        }
+        long bytes;
+        try {
+            if (!userSessionMap.remove(sessionId, meta)) {
+                return 0;
+            }
+            bytes = meta.getReservedBytes();
+            meta.releaseBuffer();
+        } finally {
+            meta.getSessionLock().unlock();
+        }
+        expiryIndex.cancel(meta);
+        activeSessionCount.decrementAndGet();
+        removeUserIfEmpty(userId, userSessionMap);
+        evictCounter.increment();
+        log.warn("暂存内存预算不足，回收空闲会话：用户[{}]会话[{}]（{}字节）", userId, sessionId, bytes);
+        return bytes;
+    }
+
+    /**
+     * 持有会话锁移除会话并释放缓冲区，与getContent读取完整内容互斥
+     *
+     * @return 会话仍在Map中且由本次调用移除时返回true
+     */
+    private boolean removeSession(ConcurrentHashMap<Long, SessionMeta> userSessionMap, Long sessionId, SessionMeta meta) {
+        meta.getSessionLock().lock();
+        try {
+            if (!userSessionMap.remove(sessionId, meta)) {
+                return false;
+            }
+            meta.releaseBuffer();
+            return true;
+        } finally {
+            meta.getSessionLock().unlock();
+        }
+    }
+
+    /**
+     * 用户已无会话时移除用户维度 Map（与init在同一key上互斥，判断与移除是原子的）
+     */
+    private void removeUserIfEmpty(Long userId, ConcurrentHashMap<Long, SessionMeta> userSessionMap) {
+        contentMap.computeIfPresent(userId, (k, current) -> {
+            if (current == userSessionMap && current.isEmpty()) {
+                activeUserCount.decrementAndGet();
+                return null;
+            }
+            return current;
+        });
+    }
+
+    /**
+     * 占用最多的会话（按已分配字节数降序）
+     */
+    @Override
+    public List<SessionUsage> getTopSessions(int limit) {
+        long now = System.currentTimeMillis();
+        int size = Math.max(1, limit);
+        // 小顶堆保留前N个
+        PriorityQueue<SessionUsage> heap = new PriorityQueue<>(Comparator.comparingLong(SessionUsage::getReservedBytes));
+        contentMap.forEach((userId, userSessionMap) -> userSessionMap.forEach((sessionId, meta) -> {
+            long bytes = meta.getReservedBytes();
+            if (heap.size() < size || bytes > heap.peek().getReservedBytes()) {
+                heap.add(new SessionUsage(userId, sessionId, bytes, meta.getContentLength(),
+                        now - meta.getLastActiveTime().get()));
+                if (heap.size() > size) {
+                    heap.poll();
+                }
+            }
+        }));
+        List<SessionUsage> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingLong(SessionUsage::getReservedBytes).reversed());
+        return result;
+    }
+
     // ======== 监控指标暴露 ========
+    @Override
     public int getActiveUserCount() {
         return activeUserCount.get();
     }
 
+    @Override
     public int getActiveSessionCount() {
         return activeSessionCount.get();
     }
-}
\ No newline at end of file
+
+    @Override
+    public long getUsedBytes() {
+        return budget.getUsedBytes();
+    }
+
+    @Override
+    public long getLimitBytes() {
+        return budget.getLimitBytes();
+    }
+}
@@ -0,0 +1,87 @@
+package com.xjtu.springboot.component.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 暂存内容的全局内存预算（按已分配分段的字节数记账，不依赖GC）
+ * 预留失败时先调用回收策略释放空间，再重试一次；仍不足则拒绝
+ */
+public class MemoryBudget {
+    /**
+     * 预算不足时的回收策略
+     */
+    @FunctionalInterface
+    public interface Reclaimer {
+        /**
+         * 尝试释放至少bytesNeeded字节
+         *
+         * @return 实际释放的字节数
+         */
+        long reclaim(long bytesNeeded);
+    }
+
+    private final long limitBytes;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private volatile Reclaimer reclaimer;
+
+    public MemoryBudget(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    public void setReclaimer(Reclaimer reclaimer) {
+        this.reclaimer = reclaimer;
+    }
+
+    /**
+     * 预留字节（成功后必须由release归还）
+     */
+    public boolean tryReserve(long bytes) {
+        if (reserve(bytes)) {
+            return true;
+        }
+        Reclaimer current = reclaimer;
+        if (current == null) {
+            return false;
+        }
+        current.reclaim(bytes);
+        return reserve(bytes);
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            long used = usedBytes.get();
+            if (limitBytes > 0 && used + bytes > limitBytes) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 只使用剩余预算预留（不调用回收策略）
+     */
+    public boolean tryReserveWithoutReclaim(long bytes) {
+        return reserve(bytes);
+    }
+
+    /**
+     * 不检查上限直接记账（必须保留的少量数据，成功后同样由release归还）
+     */
+    public void forceReserve(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+}
@@ -1,10 +1,12 @@
 package com.xjtu.springboot.component.storage;
 
+import com.xjtu.springboot.component.journal.GenerationJournal;
 import com.xjtu.springboot.config.MessageHolderConfig;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -12,17 +14,21 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 @Component
 public class MessageHolder {
-    // 存储策略（本地实现）
+    // 存储策略（local/tiered/pgsql）
     private final SessionStorage sessionStorage;
     // 配置项
     private final MessageHolderConfig properties;
+    // 生成日志（未启用时为空操作）
+    private final GenerationJournal journal;
     // 定时任务专用线程池（隔离核心业务）
     private final ScheduledExecutorService scheduledExecutor;
 
     public MessageHolder(SessionStorage sessionStorage,
-                         MessageHolderConfig properties) {
+                         MessageHolderConfig properties,
+                         GenerationJournal journal) {
         this.sessionStorage = sessionStorage;
         this.properties = properties;
+        this.journal = journal;
 
         // 初始化定时任务线程池（守护线程 + 低优先级）
         this.scheduledExecutor = Executors.newScheduledThreadPool(2, r -> {
@@ -53,20 +59,31 @@ public class MessageHolder {
      */
     public void initHolder(Long userId, Long sessionId) {
         sessionStorage.init(userId, sessionId);
+        journal.init(userId, sessionId);
     }
 
     /**
-     * 累加流式内容（线程安全）
+     * 累加流式内容（同一会话只允许一个写者，追加不加锁）
      */
     public boolean appendContent(Long userId, Long sessionId, String content, Boolean isThinking) {
-        return sessionStorage.appendContent(userId, sessionId, content, isThinking);
+        boolean appended = sessionStorage.appendContent(userId, sessionId, content, isThinking);
+        // 只记录实际写入的内容
+        if (appended) {
+            journal.append(userId, sessionId, content, Boolean.TRUE.equals(isThinking));
+        }
+        return appended;
     }
 
     /**
      * 获取完整内容并按需清除
      */
     public String getCompleteContent(Long userId, Long sessionId, Boolean isThinking) {
-        return sessionStorage.getContent(userId, sessionId, isThinking);
+        String content = sessionStorage.getContent(userId, sessionId, isThinking);
+        // 取出回复（非思考内容）后会话已清除，日志记录随之失效
+        if (Boolean.FALSE.equals(isThinking)) {
+            journal.clear(userId, sessionId);
+        }
+        return content;
     }
 
     /**
@@ -74,6 +91,7 @@ public class MessageHolder {
      */
     public void clearContent(Long userId, Long sessionId) {
         sessionStorage.clear(userId, sessionId);
+        journal.clear(userId, sessionId);
     }
 
     /**
@@ -81,20 +99,27 @@ public class MessageHolder {
      */
     public void clearAllByUserId(Long userId) {
         sessionStorage.clearAll(userId);
+        journal.clearAll(userId);
     }
 
     // ======== 监控指标暴露（供外部接口/监控调用） ========
     public int getActiveUserCount() {
-        if (sessionStorage instanceof LocalSession) {
-            return ((LocalSession) sessionStorage).getActiveUserCount();
-        }
-        return 0;
+        return sessionStorage.getActiveUserCount();
     }
 
     public int getActiveSessionCount() {
-        if (sessionStorage instanceof LocalSession) {
-            return ((LocalSession) sessionStorage).getActiveSessionCount();
-        }
-        return 0;
+        return sessionStorage.getActiveSessionCount();
+    }
+
+    public long getUsedBytes() {
+        return sessionStorage.getUsedBytes();
+    }
+
+    public long getLimitBytes() {
+        return sessionStorage.getLimitBytes();
+    }
+
+    public List<SessionUsage> getTopSessions(int limit) {
+        return sessionStorage.getTopSessions(limit);
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.xjtu.springboot.component.storage;
+
+import com.xjtu.springboot.config.MessageHolderConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 消息暂存器内存视图（/actuator/messageholder?top=N）
+ */
+@Component
+@Endpoint(id = "messageholder")
+@RequiredArgsConstructor
+public class MessageHolderEndpoint {
+    private final MessageHolder messageHolder;
+    private final MessageHolderConfig properties;
+
+    @ReadOperation
+    public Map<String, Object> memory(@Nullable Integer top) {
+        int limit = top == null || top <= 0 ? properties.getTopSessions() : Math.min(top, 1000);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("usedBytes", messageHolder.getUsedBytes());
+        result.put("limitBytes", messageHolder.getLimitBytes());
+        result.put("activeUsers", messageHolder.getActiveUserCount());
+        result.put("activeSessions", messageHolder.getActiveSessionCount());
+        result.put("topSessions", messageHolder.getTopSessions(limit));
+        return result;
+    }
+}
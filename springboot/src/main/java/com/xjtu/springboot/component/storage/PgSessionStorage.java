@@ -0,0 +1,433 @@
+package com.xjtu.springboot.component.storage;
+
+import com.xjtu.springboot.component.cluster.ClusterBus;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import com.xjtu.springboot.config.PgStorageConfig;
+import com.xjtu.springboot.mapper.MessageHolderMapper;
+import com.xjtu.springboot.pojo.MessageHolderChunk;
+import com.xjtu.springboot.pojo.MessageHolderSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PostgreSQL会话存储（message.holder.storage=pgsql，多节点部署时共享生成中的暂存内容）
+ * 1. 暂存表为unlogged表：不写WAL，崩溃后清空（暂存内容本就可丢弃）
+ * 2. 追加先写入本节点的待写入缓冲区，按间隔或字符数批量写入（所有会话一条语句），逐token写库的频率降为每批一次
+ * 3. 取出内容前先写入本会话的待写入内容，按分块顺序拼接；取出回复后删除会话
+ * 4. 清除通过LISTEN/NOTIFY广播：其他节点丢弃该会话的待写入内容，之后的追加返回失败（与本地存储的"已清除"一致）
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "message.holder", name = "storage", havingValue = "pgsql")
+public class PgSessionStorage implements SessionStorage {
+    private static final byte THINKING = 1;
+    private static final byte REPLY = 0;
+    private static final String ALL_SESSIONS = "*";
+
+    private final MessageHolderMapper mapper;
+    private final MessageHolderConfig properties;
+    private final PgStorageConfig config;
+    private final ClusterBus clusterBus;
+    // 本节点写入中的会话（key：userId:sessionId）
+    private final Map<String, PendingSession> writers = new ConcurrentHashMap<>();
+    // 批量写入与取出内容互斥，保证取出时已写入的批次都已落库
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    // 批量写入线程（守护线程）
+    private final ScheduledExecutorService flusher;
+    // 监控指标
+    private final Counter appendSuccessCounter;
+    private final Counter appendFailCounter;
+    private final Counter cleanTimeoutCounter;
+    private final Counter flushFailCounter;
+    private final Timer flushTimer;
+
+    public PgSessionStorage(MessageHolderMapper mapper,
+                            MessageHolderConfig properties,
+                            PgStorageConfig config,
+                            ClusterBus clusterBus,
+                            MeterRegistry meterRegistry) {
+        this.mapper = mapper;
+        this.properties = properties;
+        this.config = config;
+        this.clusterBus = clusterBus;
+        this.appendSuccessCounter = meterRegistry.counter("message.holder.append.success");
+        this.appendFailCounter = meterRegistry.counter("message.holder.append.fail");
+        this.cleanTimeoutCounter = meterRegistry.counter("message.holder.clean.timeout");
+        this.flushFailCounter = meterRegistry.counter("message.holder.flush.fail");
+        this.flushTimer = meterRegistry.timer("message.holder.flush.duration");
+        meterRegistry.gauge("message.holder.pgsql.writers", writers, Map::size);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-holder-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(10L, config.getFlushIntervalMs());
+        flusher.scheduleWithFixedDelay(this::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+
+        // 其他节点清除会话：丢弃本节点的待写入内容
+        clusterBus.subscribe(ClusterBus.TOPIC_CLEAR, this::onRemoteClear);
+    }
+
+    @Override
+    public void init(Long userId, Long sessionId) {
+        if (userId == null || sessionId == null) {
+            log.warn("初始化会话失败：userId/sessionId 为空");
+            return;
+        }
+        MessageHolderSession row = new MessageHolderSession();
+        row.setUserId(userId);
+        row.setSessionId(sessionId);
+        row.setNodeId(String.valueOf(clusterBus.getNodeId()));
+        row.setTimeoutMs(properties.getDefaultSessionTimeout());
+        try {
+            mapper.insertSession(row);
+        } catch (Exception e) {
+            // 未登记的会话追加会失败，生成随之终止
+            log.error("初始化会话失败：用户[{}]会话[{}]", userId, sessionId, e);
+            return;
+        }
+        writers.computeIfAbsent(sessionKey(userId, sessionId),
+                k -> new PendingSession(userId, sessionId, properties.getDefaultSessionTimeout()));
+        log.debug("初始化用户[{}]会话[{}]（超时时间：{}ms）", userId, sessionId, properties.getDefaultSessionTimeout());
+    }
+
+    @Override
+    public boolean appendContent(Long userId, Long sessionId, String content, Boolean isThinking) {
+        if (userId == null || sessionId == null || content == null || isThinking == null) {
+            appendFailCounter.increment();
+            log.warn("累加内容失败：参数为空（userId={}, sessionId={}, content={}, isThinking={})",
+                    userId, sessionId, content, isThinking);
+            return false;
+        }
+        PendingSession pending = writers.get(sessionKey(userId, sessionId));
+        if (pending == null) {
+            appendFailCounter.increment();
+            log.warn("累加内容失败：用户[{}]会话[{}]未初始化或已清除", userId, sessionId);
+            return false;
+        }
+        boolean flushNow;
+        synchronized (pending) {
+            if (pending.closed) {
+                appendFailCounter.increment();
+                log.warn("累加内容失败：用户[{}]会话[{}]已清除或写入失败", userId, sessionId);
+                return false;
+            }
+            // 单会话长度限制校验（思考与回复合计，按UTF-16字节计算）
+            long newBytes = (pending.contentLength + content.length()) * 2;
+            if (newBytes > properties.getMaxContentLength()) {
+                appendFailCounter.increment();
+                log.warn("用户[{}]会话[{}]内容超限（当前：{}字节，最大：{}字节）",
+                        userId, sessionId, newBytes, properties.getMaxContentLength());
+                return false;
+            }
+            (isThinking ? pending.thinking : pending.reply).append(content);
+            pending.contentLength += content.length();
+            pending.lastActiveTime = System.currentTimeMillis();
+            flushNow = pending.thinking.length() + pending.reply.length() >= config.getFlushMaxChars();
+        }
+        appendSuccessCounter.increment();
+        if (flushNow && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushAll);
+        }
+        return true;
+    }
+
+    @Override
+    public String getContent(Long userId, Long sessionId, Boolean isThinking) {
+        if (userId == null || sessionId == null || isThinking == null) {
+            return "";
+        }
+        String key = sessionKey(userId, sessionId);
+        PendingSession pending = writers.get(key);
+        if (pending != null) {
+            flush(Collections.singletonList(pending));
+        }
+        String result = mapper.selectContent(userId, sessionId, isThinking ? THINKING : REPLY);
+        if (!isThinking) {
+            // 取出回复后清除会话
+            removeSession(userId, sessionId, true);
+            log.debug("用户[{}]会话[{}]获取回复内容并清除，长度：{}", userId, sessionId, result.length());
+        } else {
+            log.debug("用户[{}]会话[{}]获取思考内容，长度：{}", userId, sessionId, result.length());
+        }
+        return result;
+    }
+
+    @Override
+    public void clear(Long userId, Long sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        removeSession(userId, sessionId, true);
+        cleanTimeoutCounter.increment();
+        log.debug("清除用户[{}]会话[{}]", userId, sessionId);
+    }
+
+    @Override
+    public void clearAll(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        closeLocal(userId, null);
+        try {
+            int count = mapper.deleteByUserId(userId);
+            cleanTimeoutCounter.increment(count);
+            log.debug("批量清除用户[{}]的{}个会话", userId, count);
+        } catch (Exception e) {
+            log.error("批量清除会话失败：用户[{}]", userId, e);
+        }
+        clusterBus.publish(ClusterBus.TOPIC_CLEAR, userId + ":" + ALL_SESSIONS);
+    }
+
+    /**
+     * 清理超时会话：按到期时间索引删除（所有节点都会执行，同一会话只会被删除一次）；
+     * 本节点空闲超时的写入状态一并丢弃
+     */
+    @Override
+    public void cleanTimeoutSessions() {
+        long cleanedCount = 0;
+        try {
+            List<MessageHolderSession> expired = mapper.deleteExpired();
+            for (MessageHolderSession session : expired) {
+                closeLocal(session.getUserId(), session.getSessionId());
+                log.trace("清理超时会话：用户[{}]会话[{}]（最后活跃：{}）",
+                        session.getUserId(), session.getSessionId(), session.getLastActiveTime());
+            }
+            cleanedCount += expired.size();
+        } catch (Exception e) {
+            log.error("清理超时会话失败", e);
+        }
+        long now = System.currentTimeMillis();
+        for (PendingSession pending : writers.values()) {
+            if (now - pending.lastActiveTime > pending.timeout) {
+                closeLocal(pending.userId, pending.sessionId);
+            }
+        }
+        if (cleanedCount > 0) {
+            cleanTimeoutCounter.increment(cleanedCount);
+            log.info("清理超时会话完成：本次清理{}个，本节点写入中会话：{}", cleanedCount, writers.size());
+        }
+    }
+
+    // ======== 批量写入 ========
+
+    private void flushAll() {
+        flushRequested.set(false);
+        try {
+            flush(writers.values());
+        } catch (Exception e) {
+            // 已在flush中记录
+        }
+    }
+
+    /**
+     * 写入会话的待写入内容（所有会话一条插入语句）；写入失败的会话关闭，之后的追加返回失败
+     */
+    private void flush(Collection<PendingSession> sessions) {
+        flushLock.lock();
+        try {
+            List<MessageHolderChunk> chunks = new ArrayList<>();
+            List<MessageHolderSession> touched = new ArrayList<>();
+            List<PendingSession> drained = new ArrayList<>();
+            for (PendingSession pending : sessions) {
+                synchronized (pending) {
+                    if (pending.closed || (pending.thinking.length() == 0 && pending.reply.length() == 0)) {
+                        continue;
+                    }
+                    if (pending.thinking.length() > 0) {
+                        chunks.add(new MessageHolderChunk(pending.userId, pending.sessionId, THINKING,
+                                pending.thinking.toString()));
+                        pending.thinking.setLength(0);
+                    }
+                    if (pending.reply.length() > 0) {
+                        chunks.add(new MessageHolderChunk(pending.userId, pending.sessionId, REPLY,
+                                pending.reply.toString()));
+                        pending.reply.setLength(0);
+                    }
+                }
+                MessageHolderSession key = new MessageHolderSession();
+                key.setUserId(pending.userId);
+                key.setSessionId(pending.sessionId);
+                touched.add(key);
+                drained.add(pending);
+            }
+            if (chunks.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                mapper.insertChunks(chunks);
+                mapper.touchSessions(touched);
+            } catch (Exception e) {
+                flushFailCounter.increment();
+                log.error("暂存内容批量写入失败，{}个会话停止写入", drained.size(), e);
+                for (PendingSession pending : drained) {
+                    close(pending);
+                }
+                throw e;
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // ======== 清除 ========
+
+    private void removeSession(Long userId, Long sessionId, boolean broadcast) {
+        closeLocal(userId, sessionId);
+        try {
+            mapper.deleteSession(userId, sessionId);
+        } catch (Exception e) {
+            log.error("清除会话失败：用户[{}]会话[{}]", userId, sessionId, e);
+        }
+        if (broadcast) {
+            clusterBus.publish(ClusterBus.TOPIC_CLEAR, userId + ":" + sessionId);
+        }
+    }
+
+    private void onRemoteClear(String payload) {
+        int split = payload.indexOf(':');
+        if (split <= 0) {
+            return;
+        }
+        try {
+            Long userId = Long.valueOf(payload.substring(0, split));
+            String session = payload.substring(split + 1);
+            closeLocal(userId, ALL_SESSIONS.equals(session) ? null : Long.valueOf(session));
+        } catch (NumberFormatException e) {
+            log.warn("忽略格式错误的清除通知：{}", payload);
+        }
+    }
+
+    /**
+     * 丢弃本节点的写入状态（sessionId为null时丢弃该用户的全部会话）
+     */
+    private void closeLocal(Long userId, Long sessionId) {
+        if (sessionId != null) {
+            PendingSession pending = writers.remove(sessionKey(userId, sessionId));
+            if (pending != null) {
+                close(pending);
+            }
+            return;
+        }
+        writers.values().removeIf(pending -> {
+            if (!pending.userId.equals(userId)) {
+                return false;
+            }
+            close(pending);
+            return true;
+        });
+    }
+
+    private static void close(PendingSession pending) {
+        synchronized (pending) {
+            pending.closed = true;
+            pending.thinking.setLength(0);
+            pending.reply.setLength(0);
+        }
+    }
+
+    private static String sessionKey(Long userId, Long sessionId) {
+        return userId + ":" + sessionId;
+    }
+
+    // ======== 监控指标暴露 ========
+    @Override
+    public int getActiveUserCount() {
+        try {
+            return mapper.countUsers();
+        } catch (Exception e) {
+            log.warn("统计活跃用户失败：{}", e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public int getActiveSessionCount() {
+        try {
+            return mapper.countSessions();
+        } catch (Exception e) {
+            log.warn("统计活跃会话失败：{}", e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public long getUsedBytes() {
+        try {
+            return mapper.sumContentBytes();
+        } catch (Exception e) {
+            log.warn("统计暂存内容大小失败：{}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 暂存内容在数据库中，不设内存上限（单会话长度仍受maxContentLength限制）
+     */
+    @Override
+    public long getLimitBytes() {
+        return 0;
+    }
+
+    @Override
+    public List<SessionUsage> getTopSessions(int limit) {
+        try {
+            return mapper.selectTopSessions(Math.max(1, limit));
+        } catch (Exception e) {
+            log.warn("查询占用最多的会话失败：{}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flush(writers.values());
+        } catch (Exception e) {
+            log.warn("关闭前写入暂存内容失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 本节点写入中的会话（待写入内容与长度由对象锁保护）
+     */
+    private static final class PendingSession {
+        final Long userId;
+        final Long sessionId;
+        final long timeout;
+        final StringBuilder thinking = new StringBuilder();
+        final StringBuilder reply = new StringBuilder();
+        long contentLength = 0;
+        volatile long lastActiveTime = System.currentTimeMillis();
+        boolean closed = false;
+
+        PendingSession(Long userId, Long sessionId, long timeout) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.xjtu.springboot.component.storage;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话到期索引（按到期时间排序，无锁）
+ * 追加内容只更新最后活跃时间，不调整索引；到期时若会话期间活跃过，再按新的到期时间重新入队（惰性更新）
+ * 每次检查只取出已到期的条目，不扫描全部会话
+ */
+class SessionExpiryIndex {
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+    // 到期时间相同时保证条目唯一
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    /**
+     * 按会话当前的最后活跃时间登记到期时间（替换会话原有的条目）
+     */
+    void schedule(Long userId, Long sessionId, SessionMeta meta) {
+        long deadline = meta.getLastActiveTime().get() + meta.getTimeout();
+        Entry entry = new Entry(userId, sessionId, meta, deadline, sequence.incrementAndGet());
+        meta.setExpiry(entry);
+        entries.add(entry);
+    }
+
+    /**
+     * 移除会话的到期条目（会话被取出/清除时调用）
+     */
+    void cancel(SessionMeta meta) {
+        Entry entry = meta.getExpiry();
+        if (entry != null) {
+            entries.remove(entry);
+        }
+    }
+
+    /**
+     * 取出一个到期时间不晚于now的条目
+     *
+     * @return 没有到期条目时返回null
+     */
+    Entry pollExpired(long now) {
+        while (true) {
+            Entry first;
+            try {
+                first = entries.first();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+            if (first.deadline > now) {
+                return null;
+            }
+            // 并发取出/取消时重试
+            if (entries.remove(first)) {
+                return first;
+            }
+        }
+    }
+
+    /**
+     * 按到期时间从早到晚遍历条目（弱一致，不阻塞并发修改）
+     */
+    Iterator<Entry> iterator() {
+        return entries.iterator();
+    }
+
+    /**
+     * 按会话当前的最后活跃时间重新登记条目（条目已被其他线程取出/取消时不处理）
+     */
+    void reschedule(Entry entry) {
+        if (entries.remove(entry)) {
+            schedule(entry.userId, entry.sessionId, entry.meta);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 到期条目（不可变）
+     */
+    static final class Entry implements Comparable<Entry> {
+        final Long userId;
+        final Long sessionId;
+        final SessionMeta meta;
+        final long deadline;
+        final long seq;
+
+        Entry(Long userId, Long sessionId, SessionMeta meta, long deadline, long seq) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.meta = meta;
+            this.deadline = deadline;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = Long.compare(deadline, other.deadline);
+            return cmp != 0 ? cmp : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -4,91 +4,81 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.lang.ref.SoftReference;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import com.xjtu.springboot.component.pool.StringBufferPool;
+import java.util.function.Supplier;
 
 /**
- * 会话元数据（封装内容、时间、锁、池化缓冲区）
+ * 会话元数据（封装内容、时间、锁）
+ * 内容为单写者只追加的分段缓冲区：追加不加锁，会话锁只用于取出/清除等生命周期操作
  */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class SessionMeta {
-    /** 思考内容（软引用，内存紧张时回收） */
-    private SoftReference<StringBuffer> thinkingContent;
-    /** 回复内容（软引用，内存紧张时回收） */
-    private SoftReference<StringBuffer> replyContent;
+    /** 思考内容 */
+    private ContentBuffer thinkingContent;
+    /** 回复内容 */
+    private ContentBuffer replyContent;
     /** 会话创建时间（毫秒） */
     private long createTime;
     /** 最后活跃时间（毫秒，原子类保证线程安全） */
     private AtomicLong lastActiveTime;
     /** 会话超时时间（毫秒） */
     private long timeout;
-    /** 会话专属锁（细粒度锁，避免全局阻塞） */
+    /** 会话专属锁（取出/清除时使用，追加不加锁） */
     private ReentrantLock sessionLock;
-    /** 缓冲区池（复用缓冲区） */
-    private transient StringBufferPool bufferPool;
+    /** 到期索引中的当前条目 */
+    private volatile SessionExpiryIndex.Entry expiry;
 
     /**
      * 初始化会话元数据
      */
-    public static SessionMeta init(long defaultTimeout, StringBufferPool bufferPool) {
+    public static SessionMeta init(long defaultTimeout, Supplier<ContentBuffer> bufferFactory) {
         SessionMeta meta = new SessionMeta();
-        // 从池获取缓冲区
-        meta.setThinkingContent(new SoftReference<>(bufferPool.borrow()));
-        meta.setReplyContent(new SoftReference<>(bufferPool.borrow()));
+        // 存储空间在首次写入时才分配
+        meta.setThinkingContent(bufferFactory.get());
+        meta.setReplyContent(bufferFactory.get());
         meta.setCreateTime(System.currentTimeMillis());
         meta.setLastActiveTime(new AtomicLong(System.currentTimeMillis()));
         meta.setTimeout(defaultTimeout);
         meta.setSessionLock(new ReentrantLock());
-        meta.setBufferPool(bufferPool);
         return meta;
     }
 
     /**
-     * 获取思考内容缓冲区（空则从池重新获取）
+     * 获取内容缓冲区
      */
-    public StringBuffer getThinkingContent() {
-        StringBuffer sb = thinkingContent.get();
-        if (sb == null) {
-            sb = bufferPool.borrow();
-            thinkingContent = new SoftReference<>(sb);
-        }
-        return sb;
+    public ContentBuffer getContent(boolean isThinking) {
+        return isThinking ? thinkingContent : replyContent;
     }
 
     /**
-     * 获取回复内容缓冲区（空则从池重新获取）
+     * 会话内容总长度（字符数）
      */
-    public StringBuffer getReplyContent() {
-        StringBuffer sb = replyContent.get();
-        if (sb == null) {
-            sb = bufferPool.borrow();
-            replyContent = new SoftReference<>(sb);
-        }
-        return sb;
+    public long getContentLength() {
+        return (long) thinkingContent.length() + replyContent.length();
     }
 
     /**
-     * 更新最后活跃时间
+     * 会话占用的字节数（已分配的分段）
+     */
+    public long getReservedBytes() {
+        return thinkingContent.getReservedBytes() + replyContent.getReservedBytes();
+    }
+
+    /**
+     * 更新最后活跃时间（到期索引在到期检查时按新的活跃时间惰性调整）
      */
     public void updateLastActiveTime() {
         lastActiveTime.set(System.currentTimeMillis());
     }
 
     /**
-     * 释放缓冲区（归还到池）
+     * 释放缓冲区（分段归还到池）
      */
     public void releaseBuffer() {
-        if (thinkingContent.get() != null) {
-            bufferPool.recycle(thinkingContent.get());
-            thinkingContent.clear();
-        }
-        if (replyContent.get() != null) {
-            bufferPool.recycle(replyContent.get());
-            replyContent.clear();
-        }
+        thinkingContent.release();
+        replyContent.release();
     }
-}
\ No newline at end of file
+}
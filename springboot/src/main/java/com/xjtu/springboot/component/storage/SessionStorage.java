@@ -1,7 +1,10 @@
 package com.xjtu.springboot.component.storage;
 
+import java.util.List;
+
 /**
- * 会话存储策略接口（仅本地实现，便于后续扩展）
+ * 会话存储策略接口
+ * 实现：local（堆上，默认）/tiered（堆上+堆外+映射文件）/pgsql（PostgreSQL，多节点共享）
  */
 public interface SessionStorage {
     /**
@@ -33,4 +36,25 @@ public interface SessionStorage {
      * 清理超时会话
      */
     void cleanTimeoutSessions();
+
+    // ======== 监控指标 ========
+
+    int getActiveUserCount();
+
+    int getActiveSessionCount();
+
+    /**
+     * 暂存内容占用的字节数
+     */
+    long getUsedBytes();
+
+    /**
+     * 暂存内容的字节上限（<=0表示不限制）
+     */
+    long getLimitBytes();
+
+    /**
+     * 占用最多的会话（按字节数降序）
+     */
+    List<SessionUsage> getTopSessions(int limit);
 }
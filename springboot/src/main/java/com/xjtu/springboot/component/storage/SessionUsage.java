@@ -0,0 +1,22 @@
+package com.xjtu.springboot.component.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单个会话的暂存内容占用（监控视图）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionUsage {
+    private Long userId;
+    private Long sessionId;
+    /** 已分配的字节数 */
+    private long reservedBytes;
+    /** 内容长度（字符数） */
+    private long contentLength;
+    /** 空闲时长（毫秒） */
+    private long idleMs;
+}
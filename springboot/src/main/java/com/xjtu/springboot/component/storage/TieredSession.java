@@ -0,0 +1,66 @@
+package com.xjtu.springboot.component.storage;
+
+import com.xjtu.springboot.component.pool.StringBufferPool;
+import com.xjtu.springboot.component.storage.tier.BlockStore;
+import com.xjtu.springboot.component.storage.tier.MappedSpillStore;
+import com.xjtu.springboot.component.storage.tier.OffHeapBlockStore;
+import com.xjtu.springboot.component.storage.tier.TieredBuffer;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import com.xjtu.springboot.config.TieredStorageConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+
+/**
+ * 分层会话存储（message.holder.storage=tiered）
+ * 短内容留在堆上（计入全局内存预算），长内容超过阈值后依次写入直接内存、内存映射溢出文件，
+ * 各层都有容量上限，全部写满时拒绝追加；会话管理与清理沿用本地存储
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "message.holder", name = "storage", havingValue = "tiered")
+public class TieredSession extends LocalSession {
+    private final OffHeapBlockStore offHeapStore;
+    private final MappedSpillStore spillStore;
+
+    @Autowired
+    public TieredSession(MessageHolderConfig properties,
+                         TieredStorageConfig tieredConfig,
+                         StringBufferPool bufferPool,
+                         MeterRegistry meterRegistry) {
+        this(properties, tieredConfig, bufferPool, meterRegistry,
+                new OffHeapBlockStore(tieredConfig.getBlockSize(), tieredConfig.getOffHeapMaxBytes()),
+                new MappedSpillStore(Paths.get(tieredConfig.getSpillDir()), tieredConfig.getBlockSize(),
+                        tieredConfig.getSpillChunkBytes(), tieredConfig.getSpillMaxBytes()));
+    }
+
+    private TieredSession(MessageHolderConfig properties,
+                          TieredStorageConfig tieredConfig,
+                          StringBufferPool bufferPool,
+                          MeterRegistry meterRegistry,
+                          OffHeapBlockStore offHeapStore,
+                          MappedSpillStore spillStore) {
+        super(properties, bufferPool, meterRegistry, (pool, budget) -> new TieredBuffer(
+                new TokenRope(pool, budget), tieredConfig.getHeapThresholdChars(), offHeapStore, spillStore));
+        this.offHeapStore = offHeapStore;
+        this.spillStore = spillStore;
+        meterRegistry.gauge("message.holder.offheap.used", offHeapStore, BlockStore::getUsedBytes);
+        meterRegistry.gauge("message.holder.offheap.limit", offHeapStore, BlockStore::getCapacityBytes);
+        meterRegistry.gauge("message.holder.spill.used", spillStore, BlockStore::getUsedBytes);
+        meterRegistry.gauge("message.holder.spill.limit", spillStore, BlockStore::getCapacityBytes);
+        log.info("会话内容分层存储：堆上阈值={}字符，直接内存上限={}字节，溢出文件上限={}字节（{}）",
+                tieredConfig.getHeapThresholdChars(), offHeapStore.getCapacityBytes(),
+                spillStore.getCapacityBytes(), tieredConfig.getSpillDir());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        offHeapStore.close();
+        spillStore.close();
+    }
+}
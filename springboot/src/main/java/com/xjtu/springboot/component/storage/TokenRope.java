@@ -0,0 +1,174 @@
+package com.xjtu.springboot.component.storage;
+
+import com.xjtu.springboot.component.pool.StringBufferPool;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单写者、只追加的分段字符缓冲区（rope）
+ * 1. 追加不加锁：写者只写入已发布长度之后的位置，写完再发布长度（volatile），读者按发布的长度读取
+ * 2. 分段来自缓冲区池，长度按级别几何增长（布局由池决定），扩容只新增分段，不拷贝已有内容
+ * 3. 只在最终保存时调用toString组装一次
+ * 4. 分段占用的字节在追加前向全局预算预留（预留失败不写入任何内容），释放时归还
+ * 分段归还到池后内容会被复用：toString与release由调用方通过会话锁互斥，释放后不能再读取
+ */
+public class TokenRope implements ContentBuffer {
+    private static final int OPEN = 0;
+    private static final int WRITING = 1;
+    private static final int RELEASED = 2;
+    private static final int RELEASE_PENDING = 3;
+
+    private final StringBufferPool pool;
+    private final MemoryBudget budget;
+    // 分段数组（扩容时整体替换后发布，读者看到的总是覆盖已发布长度的数组）
+    private volatile char[][] segments;
+    private int segmentCount = 0;
+    // 已分配分段的总长度（字符数）
+    private long capacity = 0;
+    // 已发布长度
+    private volatile int length = 0;
+    // 已预留的字节数（所有分段）
+    private volatile long reservedBytes = 0;
+    // 写入/释放状态（写入中请求释放时由写者归还分段）
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+
+    public TokenRope(StringBufferPool pool, MemoryBudget budget) {
+        this.pool = pool;
+        this.budget = budget;
+        this.segments = new char[4][];
+    }
+
+    /**
+     * 追加内容（只允许一个写者）
+     *
+     * @return 已释放或内存预算不足时返回false（不写入任何内容）
+     */
+    @Override
+    public boolean append(CharSequence text) {
+        if (!state.compareAndSet(OPEN, WRITING)) {
+            return false;
+        }
+        try {
+            int written = length;
+            int total = text.length();
+            // 先按需要新增的分段预留预算（UTF-16，每字符2字节）
+            long bytes = 0;
+            long newCapacity = capacity;
+            for (int index = segmentCount; newCapacity < (long) written + total; index++) {
+                int segmentLength = pool.segmentLength(index);
+                newCapacity += segmentLength;
+                bytes += segmentLength * 2L;
+            }
+            if (bytes > 0) {
+                if (!budget.tryReserve(bytes)) {
+                    return false;
+                }
+                reservedBytes += bytes;
+            }
+            int offset = 0;
+            while (offset < total) {
+                int segIndex = pool.segmentIndex(written);
+                int segOffset = written - pool.segmentStart(segIndex);
+                if (segIndex == segmentCount) {
+                    addSegment();
+                }
+                char[] segment = segments[segIndex];
+                int count = Math.min(segment.length - segOffset, total - offset);
+                if (text instanceof String) {
+                    ((String) text).getChars(offset, offset + count, segment, segOffset);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        segment[segOffset + i] = text.charAt(offset + i);
+                    }
+                }
+                offset += count;
+                written += count;
+            }
+            // 内容写完后再发布长度
+            length = written;
+            return true;
+        } finally {
+            if (!state.compareAndSet(WRITING, OPEN)) {
+                // 写入期间被请求释放
+                state.set(RELEASED);
+                recycleSegments();
+            }
+        }
+    }
+
+    private void addSegment() {
+        char[][] current = segments;
+        if (segmentCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        char[] segment = pool.borrowSegment(segmentCount);
+        current[segmentCount++] = segment;
+        capacity += segment.length;
+        // 先发布分段数组，再发布长度
+        segments = current;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 已预留的字节数（分段占用）
+     */
+    @Override
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    @Override
+    public String toString() {
+        int len = length;
+        char[][] segs = segments;
+        char[] chars = new char[len];
+        int copied = 0;
+        for (int i = 0; copied < len; i++) {
+            int count = Math.min(segs[i].length, len - copied);
+            System.arraycopy(segs[i], 0, chars, copied, count);
+            copied += count;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 释放（分段归还到池）；写入中时由写者在写完后归还
+     */
+    @Override
+    public void release() {
+        while (true) {
+            int current = state.get();
+            if (current == OPEN) {
+                if (state.compareAndSet(OPEN, RELEASED)) {
+                    recycleSegments();
+                    return;
+                }
+            } else if (current == WRITING) {
+                if (state.compareAndSet(WRITING, RELEASE_PENDING)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void recycleSegments() {
+        // 先撤销已发布长度，再归还预算（预留了但未分配的部分也一并归还），最后把分段放回池（池按剩余预算接收）
+        length = 0;
+        budget.release(reservedBytes);
+        reservedBytes = 0;
+        char[][] segs = segments;
+        for (int i = 0; i < segmentCount; i++) {
+            pool.recycleSegment(segs[i]);
+            segs[i] = null;
+        }
+        segmentCount = 0;
+        capacity = 0;
+    }
+}
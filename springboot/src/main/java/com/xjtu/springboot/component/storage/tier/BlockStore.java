@@ -0,0 +1,36 @@
+package com.xjtu.springboot.component.storage.tier;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * 固定大小数据块存储（分层缓冲区的堆外存储层）
+ */
+public interface BlockStore extends Closeable {
+    /**
+     * 分配一个数据块
+     *
+     * @return 容量已满时返回null
+     */
+    ByteBuffer allocate();
+
+    /**
+     * 归还数据块（之后可被重新分配）
+     */
+    void free(ByteBuffer block);
+
+    int getBlockSize();
+
+    /**
+     * 已分配出去的字节数
+     */
+    long getUsedBytes();
+
+    /**
+     * 容量上限（字节）
+     */
+    long getCapacityBytes();
+
+    @Override
+    void close();
+}
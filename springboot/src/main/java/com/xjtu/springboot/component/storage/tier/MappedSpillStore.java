@@ -0,0 +1,137 @@
+package com.xjtu.springboot.component.storage.tier;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存映射溢出文件数据块存储
+ * 溢出文件在首次分配时创建，按chunk分段映射后切分为数据块；文件大小不超过容量上限，关闭时删除
+ * 溢出内容只是生成过程中的暂存，进程重启后无需恢复
+ */
+@Slf4j
+public class MappedSpillStore implements BlockStore {
+    private final Path spillDir;
+    private final int blockSize;
+    private final int chunkBytes;
+    private final long capacityBytes;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    // 已归还的数据块
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+
+    // 以下状态由this保护
+    private Path spillFile;
+    private FileChannel channel;
+    private MappedByteBuffer currentChunk;
+    // 下一个未切分数据块在文件中的偏移
+    private long nextOffset = 0;
+    private boolean closed = false;
+
+    /**
+     * @param chunkBytes 单次映射的大小（向下取整为blockSize的整数倍）
+     */
+    public MappedSpillStore(Path spillDir, int blockSize, int chunkBytes, long capacityBytes) {
+        this.spillDir = spillDir;
+        this.blockSize = blockSize;
+        this.chunkBytes = Math.max(blockSize, chunkBytes / blockSize * blockSize);
+        this.capacityBytes = Math.max(0, capacityBytes) / blockSize * blockSize;
+    }
+
+    @Override
+    public ByteBuffer allocate() {
+        while (true) {
+            long used = usedBytes.get();
+            if (used + blockSize > capacityBytes) {
+                return null;
+            }
+            if (usedBytes.compareAndSet(used, used + blockSize)) {
+                break;
+            }
+        }
+        ByteBuffer block = freeBlocks.poll();
+        if (block == null) {
+            try {
+                block = sliceNewBlock();
+            } catch (IOException | UncheckedIOException e) {
+                log.error("溢出文件分配失败：{}", e.getMessage());
+                block = null;
+            }
+        }
+        if (block == null) {
+            usedBytes.addAndGet(-blockSize);
+        }
+        return block;
+    }
+
+    private synchronized ByteBuffer sliceNewBlock() throws IOException {
+        if (closed || nextOffset + blockSize > capacityBytes) {
+            return null;
+        }
+        int offsetInChunk = (int) (nextOffset % chunkBytes);
+        if (offsetInChunk == 0) {
+            long size = Math.min(chunkBytes, capacityBytes - nextOffset);
+            currentChunk = openChannel().map(FileChannel.MapMode.READ_WRITE, nextOffset, size);
+        }
+        nextOffset += blockSize;
+        return currentChunk.slice(offsetInChunk, blockSize);
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(spillDir);
+            spillFile = Files.createTempFile(spillDir, "message-holder-", ".spill");
+            spillFile.toFile().deleteOnExit();
+            channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            log.info("创建会话内容溢出文件：{}（上限：{}字节）", spillFile, capacityBytes);
+        }
+        return channel;
+    }
+
+    @Override
+    public void free(ByteBuffer block) {
+        block.clear();
+        freeBlocks.offer(block);
+        usedBytes.addAndGet(-blockSize);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @Override
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        freeBlocks.clear();
+        currentChunk = null;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+            // 映射区域在GC回收前仍有效，Linux下可直接删除文件
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            log.warn("删除溢出文件失败：{}", spillFile, e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.xjtu.springboot.component.storage.tier;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直接内存数据块存储
+ * 数据块按需分配（allocateDirect），归还后留在空闲队列中复用，总量不超过容量上限
+ */
+public class OffHeapBlockStore implements BlockStore {
+    private final int blockSize;
+    private final long capacityBytes;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    // 已归还的数据块
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBlocks = new ConcurrentLinkedQueue<>();
+
+    public OffHeapBlockStore(int blockSize, long capacityBytes) {
+        this.blockSize = blockSize;
+        this.capacityBytes = Math.max(0, capacityBytes);
+    }
+
+    @Override
+    public ByteBuffer allocate() {
+        while (true) {
+            long used = usedBytes.get();
+            if (used + blockSize > capacityBytes) {
+                return null;
+            }
+            if (usedBytes.compareAndSet(used, used + blockSize)) {
+                break;
+            }
+        }
+        ByteBuffer block = freeBlocks.poll();
+        return block != null ? block : ByteBuffer.allocateDirect(blockSize);
+    }
+
+    @Override
+    public void free(ByteBuffer block) {
+        block.clear();
+        freeBlocks.offer(block);
+        usedBytes.addAndGet(-blockSize);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @Override
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    @Override
+    public void close() {
+        // 直接内存随ByteBuffer回收释放
+        freeBlocks.clear();
+    }
+}
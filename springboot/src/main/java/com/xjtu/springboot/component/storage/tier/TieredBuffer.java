@@ -0,0 +1,283 @@
+package com.xjtu.springboot.component.storage.tier;
+
+import com.xjtu.springboot.component.storage.ContentBuffer;
+import com.xjtu.springboot.component.storage.TokenRope;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分层内容缓冲区（单写者只追加）
+ * 1. 前heapThresholdChars个字符写入堆上的TokenRope（计入全局内存预算）
+ * 2. 超出部分按UTF-8编码写入堆外数据块，依次使用各存储层（直接内存 → 映射文件），全部写满则拒绝追加
+ * 3. 追加不加锁：写者写完数据块后整体发布不可变的Cold状态，读者按发布的字节数读取
+ * 4. 流式增量可能在代理对中间断开：末尾的高代理项暂存在Cold状态中，下次追加时与低代理项一起编码
+ */
+public class TieredBuffer implements ContentBuffer {
+    private static final int OPEN = 0;
+    private static final int WRITING = 1;
+    private static final int RELEASED = 2;
+    private static final int RELEASE_PENDING = 3;
+    // 孤立代理项的替换字符
+    private static final byte REPLACEMENT = '?';
+
+    private final TokenRope heap;
+    private final int heapThresholdChars;
+    private final BlockStore[] tiers;
+    private final int blockSize;
+    // 已发布的堆外内容
+    private volatile Cold cold = Cold.EMPTY;
+    // 以下由写者持有：数据块及其所属存储层
+    private ByteBuffer[] blocks = new ByteBuffer[4];
+    private BlockStore[] owners = new BlockStore[4];
+    private int blockCount = 0;
+    // 写入/释放状态（写入中请求释放时由写者归还数据块）
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+
+    /**
+     * @param tiers 堆外存储层（按使用顺序，数据块大小必须一致）
+     */
+    public TieredBuffer(TokenRope heap, int heapThresholdChars, BlockStore... tiers) {
+        this.heap = heap;
+        this.heapThresholdChars = Math.max(0, heapThresholdChars);
+        this.tiers = tiers;
+        this.blockSize = tiers[0].getBlockSize();
+    }
+
+    @Override
+    public boolean append(CharSequence text) {
+        if (!state.compareAndSet(OPEN, WRITING)) {
+            return false;
+        }
+        try {
+            Cold current = cold;
+            int total = text.length();
+            int heapChars = 0;
+            if (current.chars == 0) {
+                heapChars = Math.max(0, Math.min(heapThresholdChars - heap.length(), total));
+                // 不在代理对中间切分
+                if (heapChars > 0 && heapChars < total && Character.isHighSurrogate(text.charAt(heapChars - 1))) {
+                    heapChars--;
+                }
+            }
+            if (heapChars == total) {
+                return heap.append(text);
+            }
+
+            CharSequence rest = text.subSequence(heapChars, total);
+            CharSequence encoded = current.pendingHigh != 0 ? current.pendingHigh + rest.toString() : rest;
+            // 先分配所需的数据块（失败时不写入任何内容）
+            int byteLength = current.byteLength + encode(encoded, -1);
+            int firstNewBlock = blockCount;
+            if (!ensureBlocks(byteLength)) {
+                freeBlocks(firstNewBlock);
+                return false;
+            }
+            if (heapChars > 0 && !heap.append(text.subSequence(0, heapChars))) {
+                freeBlocks(firstNewBlock);
+                return false;
+            }
+            encode(encoded, current.byteLength);
+            char last = encoded.charAt(encoded.length() - 1);
+            char pendingHigh = Character.isHighSurrogate(last) ? last : 0;
+            // 内容写完后再发布
+            cold = new Cold(blocks, blockCount, byteLength, current.chars + rest.length(), pendingHigh);
+            return true;
+        } finally {
+            if (!state.compareAndSet(WRITING, OPEN)) {
+                // 写入期间被请求释放
+                state.set(RELEASED);
+                recycle();
+            }
+        }
+    }
+
+    /**
+     * UTF-8编码（末尾的高代理项不编码，孤立代理项替换为'?'）
+     *
+     * @param byteOffset 写入位置，小于0时只计算字节数
+     * @return 编码后的字节数
+     */
+    private int encode(CharSequence text, int byteOffset) {
+        boolean write = byteOffset >= 0;
+        int pos = byteOffset;
+        int bytes = 0;
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (write) {
+                    put(pos++, (byte) c);
+                }
+                bytes += 1;
+            } else if (c < 0x800) {
+                if (write) {
+                    put(pos++, (byte) (0xC0 | (c >> 6)));
+                    put(pos++, (byte) (0x80 | (c & 0x3F)));
+                }
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 == n) {
+                    // 等待下次追加的低代理项
+                    break;
+                }
+                char low = text.charAt(i + 1);
+                if (Character.isLowSurrogate(low)) {
+                    if (write) {
+                        int cp = Character.toCodePoint(c, low);
+                        put(pos++, (byte) (0xF0 | (cp >> 18)));
+                        put(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                        put(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                        put(pos++, (byte) (0x80 | (cp & 0x3F)));
+                    }
+                    bytes += 4;
+                    i++;
+                } else {
+                    if (write) {
+                        put(pos++, REPLACEMENT);
+                    }
+                    bytes += 1;
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                if (write) {
+                    put(pos++, REPLACEMENT);
+                }
+                bytes += 1;
+            } else {
+                if (write) {
+                    put(pos++, (byte) (0xE0 | (c >> 12)));
+                    put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                    put(pos++, (byte) (0x80 | (c & 0x3F)));
+                }
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void put(int pos, byte b) {
+        blocks[pos / blockSize].put(pos % blockSize, b);
+    }
+
+    /**
+     * 按存储层顺序分配数据块，直到容量覆盖byteLength
+     */
+    private boolean ensureBlocks(int byteLength) {
+        while ((long) blockCount * blockSize < byteLength) {
+            ByteBuffer block = null;
+            BlockStore owner = null;
+            for (BlockStore tier : tiers) {
+                block = tier.allocate();
+                if (block != null) {
+                    owner = tier;
+                    break;
+                }
+            }
+            if (block == null) {
+                return false;
+            }
+            if (blockCount == blocks.length) {
+                // 替换数组：已发布的Cold仍引用旧数组
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                owners = Arrays.copyOf(owners, owners.length * 2);
+            }
+            blocks[blockCount] = block;
+            owners[blockCount] = owner;
+            blockCount++;
+        }
+        return true;
+    }
+
+    private void freeBlocks(int from) {
+        for (int i = from; i < blockCount; i++) {
+            owners[i].free(blocks[i]);
+            blocks[i] = null;
+            owners[i] = null;
+        }
+        blockCount = Math.min(blockCount, from);
+    }
+
+    @Override
+    public int length() {
+        Cold current = cold;
+        return heap.length() + current.chars;
+    }
+
+    @Override
+    public long getReservedBytes() {
+        Cold current = cold;
+        return heap.getReservedBytes() + (long) current.blockCount * blockSize;
+    }
+
+    @Override
+    public String toString() {
+        Cold current = cold;
+        if (current.chars == 0) {
+            return heap.toString();
+        }
+        return heap.toString() + decode(current);
+    }
+
+    private String decode(Cold current) {
+        byte[] bytes = new byte[current.byteLength];
+        int copied = 0;
+        for (int i = 0; copied < bytes.length; i++) {
+            int count = Math.min(blockSize, bytes.length - copied);
+            // 绝对位置读取，不修改数据块的position
+            current.blocks[i].get(0, bytes, copied, count);
+            copied += count;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return current.pendingHigh != 0 ? text + current.pendingHigh : text;
+    }
+
+    @Override
+    public void release() {
+        while (true) {
+            int current = state.get();
+            if (current == OPEN) {
+                if (state.compareAndSet(OPEN, RELEASED)) {
+                    recycle();
+                    return;
+                }
+            } else if (current == WRITING) {
+                if (state.compareAndSet(WRITING, RELEASE_PENDING)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void recycle() {
+        heap.release();
+        cold = Cold.EMPTY;
+        freeBlocks(0);
+    }
+
+    /**
+     * 已发布的堆外内容（不可变）
+     */
+    private static final class Cold {
+        static final Cold EMPTY = new Cold(new ByteBuffer[0], 0, 0, 0, (char) 0);
+
+        final ByteBuffer[] blocks;
+        final int blockCount;
+        final int byteLength;
+        // 字符数（含暂存的高代理项）
+        final int chars;
+        // 末尾暂存的高代理项（0表示没有）
+        final char pendingHigh;
+
+        Cold(ByteBuffer[] blocks, int blockCount, int byteLength, int chars, char pendingHigh) {
+            this.blocks = blocks;
+            this.blockCount = blockCount;
+            this.byteLength = byteLength;
+            this.chars = chars;
+            this.pendingHigh = pendingHigh;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.context")
+public class ChatContextConfig {
+    /** 历史消息的token预算（超出时裁剪较早的轮次） */
+    private int promptBudgetTokens = 6144;
+    /** 为回复预留的token数（同时作为num_predict） */
+    private int numPredict = 4096;
+    /** num_ctx下限/上限 */
+    private int minNumCtx = 2048;
+    private int maxNumCtx = 16384;
+    /** num_ctx按此粒度向上取整（减少Ollama因num_ctx变化而重新加载模型） */
+    private int numCtxStep = 2048;
+    /** 被裁剪轮次的摘要token上限（<=0表示直接丢弃，不生成摘要） */
+    private int summaryBudgetTokens = 256;
+    /** 摘要中每条被裁剪的用户提问最多保留的字符数 */
+    private int summaryItemChars = 60;
+}
@@ -0,0 +1,27 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.scheduler")
+public class ChatSchedulerConfig {
+    /** 是否启用按用户公平调度（关闭时直接发起AI请求） */
+    private boolean enabled = true;
+    /** 同时进行的AI请求总数（<=0表示取各后端maxConcurrency之和，存在不限并发的后端时不限制） */
+    private int maxConcurrency = 0;
+    /** 登录用户权重（每轮可发起的请求数） */
+    private int userWeight = 4;
+    /** 单个登录用户同时进行的生成数上限 */
+    private int userMaxConcurrent = 2;
+    /** 单个登录用户排队请求数上限（超出返回429） */
+    private int userMaxQueued = 8;
+    /** 未登录用户（共用一个队列）权重 */
+    private int anonymousWeight = 1;
+    /** 未登录用户同时进行的生成数上限 */
+    private int anonymousMaxConcurrent = 4;
+    /** 未登录用户排队请求数上限（超出返回429） */
+    private int anonymousMaxQueued = 32;
+}
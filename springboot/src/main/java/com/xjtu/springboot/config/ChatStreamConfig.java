@@ -0,0 +1,19 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.stream")
+public class ChatStreamConfig {
+    /** 分块合并时间窗口（毫秒，<=0表示不合并） */
+    private long coalesceWindowMs = 50L;
+    /** 分块合并最大字符数（达到后立即发送） */
+    private int coalesceMaxChars = 256;
+    /** 合并窗口定时线程数（只取出到期内容，不执行发送） */
+    private int coalesceSchedulerThreads = 2;
+    /** 窗口到期发送的最大并发数 */
+    private int coalesceFlushConcurrency = 256;
+}
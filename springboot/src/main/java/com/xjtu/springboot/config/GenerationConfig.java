@@ -0,0 +1,23 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.generation")
+public class GenerationConfig {
+    /** 单个SSE连接超时时间（毫秒，超时只断开连接，生成继续，客户端可重新接入） */
+    private long emitterTimeoutMs = 1800000L;
+    /** 生成结束后保留日志的时长（毫秒，期间仍可重新接入获取完整内容） */
+    private long retentionMs = 300000L;
+    /** 生成的所有连接断开后等待重新接入的时长（毫秒，期满仍无连接则取消上游请求，<0表示不取消） */
+    private long abandonGraceMs = 15000L;
+    /** 过期生成清理间隔（毫秒） */
+    private long cleanIntervalMs = 60000L;
+    /** 所有生成的事件日志合计上限（字节，不足时先清理已结束的生成，仍不足则按超限取消生成，<=0表示不限制） */
+    private long maxLogBytes = 64L * 1024 * 1024;
+    /** 推送最大并发数（每个连接同时最多占用一个） */
+    private int sendConcurrency = 1000;
+}
@@ -0,0 +1,17 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.history-cache")
+public class HistoryCacheConfig {
+    /** 是否启用会话消息缓存 */
+    private boolean enabled = true;
+    /** 缓存总大小上限（按消息内容字节估算） */
+    private long maxWeightBytes = 64L * 1024 * 1024;
+    /** 会话多久未访问后过期（分钟） */
+    private long expireAfterAccessMinutes = 30L;
+}
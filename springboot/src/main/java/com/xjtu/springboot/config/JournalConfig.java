@@ -0,0 +1,26 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 生成日志配置（进行中回复的追加日志，重启后恢复未完成的回复）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "message.holder.journal")
+public class JournalConfig {
+    /** 是否启用 */
+    private boolean enabled = false;
+    /** 日志目录 */
+    private String dir = "./data/journal";
+    /** 单个分段文件大小（字节） */
+    private int segmentBytes = 64 * 1024 * 1024;
+    /** 组提交间隔（毫秒，每个间隔最多刷盘一次） */
+    private long flushIntervalMs = 5L;
+    /** 启动时是否把未完成的回复保存为消息 */
+    private boolean recoverOnStartup = true;
+    /** 恢复的回复末尾追加的提示 */
+    private String recoveredSuffix = "\n\n> 回复因服务重启中断";
+}
@@ -10,15 +10,21 @@ import org.springframework.stereotype.Component;
 public class MessageHolderConfig {
     /** 全局默认会话超时时间（毫秒） */
     private long defaultSessionTimeout = 3600000L;
-    /** 单会话最大内容长度（字节） */
+    /** 单会话最大内容长度（字节，按UTF-16计算，思考与回复合计） */
     private int maxContentLength = 1024 * 1024 * 5;
-    /** 定时清理频率（毫秒） */
-    private long cleanFixedRate = 1800000L;
-    /** 定时清理分批大小 */
-    private int cleanBatchSize = 100;
-    /** 是否启用软引用回收 */
-    private boolean enableSoftReference = true;
-    /** StringBuffer 池配置 */
+    /** 所有会话暂存内容的内存预算（字节，按已分配的分段计算，<=0表示不限制） */
+    private long globalMaxContentBytes = 256L * 1024 * 1024;
+    /** 预算不足时的策略：evict-idle（回收空闲会话后重试）/reject（直接拒绝） */
+    private String budgetPolicy = "evict-idle";
+    /** evict-idle策略下可被回收的会话最短空闲时间（毫秒） */
+    private long evictIdleMs = 60000L;
+    /** 占用最多的会话视图默认条数 */
+    private int topSessions = 20;
+    /** 超时检查间隔（毫秒，每次只处理到期索引中已到期的会话） */
+    private long cleanFixedRate = 1000L;
+    /** 字符分段池配置：基础级别分段数与基础分段长度（字符数） */
     private int bufferPoolSize = 1000;
     private int bufferInitialCapacity = 1024;
+    /** 分段大小级别数（第k级分段长度为基础长度的2^k倍） */
+    private int bufferSizeClasses = 8;
 }
\ No newline at end of file
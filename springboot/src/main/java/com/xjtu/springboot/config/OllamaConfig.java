@@ -0,0 +1,51 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ollama")
+public class OllamaConfig {
+    /** 默认地址（未配置backends时使用） */
+    private String baseUrl = "http://localhost:11434";
+    /** 默认模型 */
+    private String modelName = "qwen3:8b";
+    /** 后端列表（多台Ollama） */
+    private List<Backend> backends = new ArrayList<>();
+    /** 连接超时（毫秒） */
+    private long connectTimeoutMs = 10000L;
+    /** 连接失败后摘除时长（毫秒） */
+    private long unhealthyCooldownMs = 30000L;
+    /** 会话亲和：亲和后端的在途请求数最多比最空闲后端多几个时仍然使用亲和后端 */
+    private int affinitySlack = 2;
+    /** 后端全部满载时排队等待名额的最长时间（毫秒，0表示不等待直接返回503） */
+    private long acquireTimeoutMs = 3000L;
+    /** 排队等待名额的请求数上限 */
+    private int acquireMaxQueued = 256;
+
+    @Data
+    public static class Backend {
+        /** 地址，如 http://10.0.0.2:11434 */
+        private String url;
+        /** 最大并发请求数（<=0表示不限制） */
+        private int maxConcurrency = 0;
+    }
+
+    /**
+     * 生效的后端列表（未配置时只有baseUrl一台）
+     */
+    public List<Backend> resolveBackends() {
+        if (backends != null && !backends.isEmpty()) {
+            return backends;
+        }
+        Backend backend = new Backend();
+        backend.setUrl(baseUrl);
+        return Collections.singletonList(backend);
+    }
+}
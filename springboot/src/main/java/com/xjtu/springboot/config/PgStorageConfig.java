@@ -0,0 +1,34 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * PostgreSQL会话存储与集群通信配置（message.holder.storage=pgsql时生效）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "message.holder.pgsql")
+public class PgStorageConfig {
+    /** 节点ID（为空时取主机名+端口，只保留字母、数字、-、_） */
+    private String nodeId = "";
+    /** 节点对外地址（其他节点转发重新接入请求时使用，为空时取本机地址+server.port） */
+    private String advertiseUrl = "";
+    /** 追加内容批量写入间隔（毫秒） */
+    private long flushIntervalMs = 200L;
+    /** 单个会话待写入内容达到该字符数时立即写入 */
+    private int flushMaxChars = 4096;
+    /** 跨节点通知通道（LISTEN/NOTIFY） */
+    private String notifyChannel = "lmp_message_holder";
+    /** 等待通知的轮询超时（毫秒） */
+    private int listenPollMs = 500;
+    /** 监听连接断开后的重连间隔（毫秒） */
+    private long reconnectDelayMs = 3000L;
+    /** 节点心跳间隔（毫秒） */
+    private long heartbeatMs = 10000L;
+    /** 节点心跳超时（毫秒，超时的节点不再转发） */
+    private long nodeTtlMs = 30000L;
+    /** 转发重新接入请求的连接超时（毫秒） */
+    private long relayConnectTimeoutMs = 3000L;
+}
@@ -0,0 +1,21 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 文档入库流水线配置（分割 → 向量化 → 存储，各阶段之间为有界队列）
+ * 向量化/存储的并行度由common.thread.pool.configs中的rag-embed/rag-store线程池配置决定
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.ingest")
+public class RagIngestConfig {
+    /** 每个向量化微批次的片段数 */
+    private int batchSize = 16;
+    /** 阶段之间排队的批次数上限（超过时上游阻塞等待，限制同时驻留内存的片段与向量） */
+    private int queueCapacity = 8;
+    /** 单个文档入库的最长等待时间（毫秒） */
+    private long timeoutMs = 600000L;
+}
@@ -18,7 +18,10 @@ public class ThreadPoolConfig {
      */
     private Map<String, PoolConfig> configs = new HashMap<>();
 
-    // 默认配置（未配置时使用）
+    // 未单独配置的业务使用configs中的default项
+    private static final String DEFAULT_BIZ = "default";
+
+    // 默认配置（configs中也没有default项时使用）
     private static final PoolConfig DEFAULT_CONFIG = new PoolConfig(
             10,          // 默认核心线程数
             5,           // 默认关闭超时时间（秒）
@@ -26,10 +29,14 @@ public class ThreadPoolConfig {
     );
 
     /**
-     * 获取指定业务的线程池配置，无配置则返回默认
+     * 获取指定业务的线程池配置，无配置则返回default项，再没有则返回内置默认
      */
     public PoolConfig getConfig(String bizName) {
-        return configs.getOrDefault(bizName, DEFAULT_CONFIG);
+        PoolConfig config = configs.get(bizName);
+        if (config == null) {
+            config = configs.getOrDefault(DEFAULT_BIZ, DEFAULT_CONFIG);
+        }
+        return config;
     }
 
     // 内部类：单线程池配置项
@@ -37,6 +44,11 @@ public class ThreadPoolConfig {
         private int coreSize;        // 核心线程数
         private int shutdownTimeout; // 关闭超时时间（秒）
         private String threadNamePrefix; // 线程名前缀
+        private boolean virtual = false; // 是否使用虚拟线程（每任务一线程）
+        private int maxConcurrency = 0;  // 虚拟线程模式下的最大并发数（<=0时取核心线程数）
+        private int queueCapacity = 1000; // 等待队列容量（<=0表示不限制）
+        private String rejectPolicy = "abort"; // 拒绝策略：abort/caller-runs/discard/discard-oldest
+        private long maxQueueWaitMs = 0; // 任务最大排队时间（毫秒，<=0表示不限制）
 
         // 空构造（Spring配置绑定需要）
         public PoolConfig() {
@@ -73,6 +85,53 @@ public class ThreadPoolConfig {
         public void setThreadNamePrefix(String threadNamePrefix) {
             this.threadNamePrefix = threadNamePrefix;
         }
+
+        public boolean isVirtual() {
+            return virtual;
+        }
+
+        public void setVirtual(boolean virtual) {
+            this.virtual = virtual;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public String getRejectPolicy() {
+            return rejectPolicy;
+        }
+
+        public void setRejectPolicy(String rejectPolicy) {
+            this.rejectPolicy = rejectPolicy;
+        }
+
+        public long getMaxQueueWaitMs() {
+            return maxQueueWaitMs;
+        }
+
+        public void setMaxQueueWaitMs(long maxQueueWaitMs) {
+            this.maxQueueWaitMs = maxQueueWaitMs;
+        }
+
+        /**
+         * 实际生效的最大并发数
+         */
+        public int resolveMaxConcurrency() {
+            return maxConcurrency > 0 ? maxConcurrency : coreSize;
+        }
     }
 
     // getter/setter
@@ -0,0 +1,26 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 分层会话存储配置（message.holder.storage=tiered时生效）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "message.holder.tiered")
+public class TieredStorageConfig {
+    /** 单个缓冲区保留在堆上的最大字符数，超出部分写入堆外 */
+    private int heapThresholdChars = 16384;
+    /** 堆外数据块大小（字节） */
+    private int blockSize = 65536;
+    /** 直接内存上限（字节，所有会话合计） */
+    private long offHeapMaxBytes = 512L * 1024 * 1024;
+    /** 溢出文件目录 */
+    private String spillDir = "./data/spill";
+    /** 溢出文件上限（字节，<=0表示不使用溢出文件） */
+    private long spillMaxBytes = 2L * 1024 * 1024 * 1024;
+    /** 溢出文件单次映射大小（字节） */
+    private int spillChunkBytes = 64 * 1024 * 1024;
+}
@@ -0,0 +1,27 @@
+package com.xjtu.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.persist")
+public class WriteBehindConfig {
+    /** 是否启用延迟批量写入（关闭时每次提交立即写库） */
+    private boolean writeBehind = true;
+    /** 批量写入间隔（毫秒） */
+    private long flushIntervalMs = 200L;
+    /** 单条insert语句最多包含的消息数 */
+    private int batchSize = 200;
+    /** 待写入消息上限（达到后提交方同步写库，形成背压） */
+    private int maxPending = 10000;
+    /** 每次从序列预取的消息ID数量（消息入队时即分配ID） */
+    private int idBlockSize = 64;
+    /** 单个会话连续写库失败的次数上限（超过后转入死信文件，不再重试） */
+    private int maxRetries = 5;
+    /** 关闭时写库失败的重试次数 */
+    private int shutdownFlushRetries = 3;
+    /** 关闭时仍无法写库的数据落盘目录（下次启动时重新写入） */
+    private String fallbackDir = "./data/write-behind";
+}
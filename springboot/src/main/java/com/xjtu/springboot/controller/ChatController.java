@@ -1,11 +1,24 @@
 package com.xjtu.springboot.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xjtu.springboot.common.Result;
 import com.xjtu.springboot.component.storage.MessageHolder;
 import com.xjtu.springboot.component.ThreadPoolManager;
+import com.xjtu.springboot.component.cluster.GenerationRelay;
+import com.xjtu.springboot.component.generation.Generation;
+import com.xjtu.springboot.component.generation.GenerationRegistry;
+import com.xjtu.springboot.component.ollama.ChatStreamListener;
+import com.xjtu.springboot.component.sse.SseChunkCoalescer;
+import com.xjtu.springboot.component.sse.SseChunkCoalescerFactory;
+import com.xjtu.springboot.component.sse.SseFrameEncoder;
+import com.xjtu.springboot.config.GenerationConfig;
 import com.xjtu.springboot.dto.chat.ChatDto;
+import com.xjtu.springboot.dto.chat.CursorPageDto;
 import com.xjtu.springboot.dto.chat.MsgDto;
 import com.xjtu.springboot.dto.chat.SessionDto;
+import com.xjtu.springboot.dto.model.ResponseDto;
+import com.xjtu.springboot.exception.CustomException;
 import com.xjtu.springboot.pojo.Message;
 import com.xjtu.springboot.pojo.Session;
 import com.xjtu.springboot.pojo.common.MsgType;
@@ -16,15 +29,20 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @RestController
@@ -33,14 +51,36 @@ public class ChatController {
     private final ChatService chatService;
     private final MessageHolder messageHolder;
     private final ThreadPoolManager threadPoolManager;
+    private final SseChunkCoalescerFactory chunkCoalescerFactory;
+    private final GenerationRegistry generationRegistry;
+    private final GenerationRelay generationRelay;
+    private final GenerationConfig generationConfig;
+    private final ObjectMapper objectMapper;
 
     private static final String ERROR_EVENT = "error";
-    private static final String CHUNK_EVENT = "chunk";
     private static final String FINISHED_EVENT = "finished";
-
+    private static final String GENERATION_EVENT = "generation";
+    private static final String CHAT_POOL = "chat";
+    // 分页条数上限
+    private static final int MAX_PAGE_LIMIT = 100;
+
+    /**
+     * 对话历史列表：传limit时按游标分页（cursor为上一页返回的nextCursor），
+     * 内容未变化（If-None-Match命中）时返回304；不传limit时返回全部（兼容旧客户端）
+     */
     @RequestMapping(method = RequestMethod.GET, path = "session/history/{userId}")
-    public Result getSessionByUserId(@PathVariable("userId") Long userId) {
+    public Result getSessionByUserId(@PathVariable("userId") Long userId,
+                                     @RequestParam(value = "limit", required = false) Integer limit,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     WebRequest webRequest) {
         if (userId != null && userId > 0) {
+            if (limit != null) {
+                CursorPageDto<Session> page = chatService.getSessionPage(userId, cursor, normalizeLimit(limit));
+                if (webRequest.checkNotModified(page.getEtag())) {
+                    return null;
+                }
+                return Result.success(page);
+            }
             List<Session> sessionList = chatService.getSessionList(userId);
             if (Objects.nonNull(sessionList)) {
                 return Result.success(sessionList);
@@ -49,11 +89,29 @@ public class ChatController {
         return Result.error("获取对话历史异常");
     }
 
+    /**
+     * 对话详情：传limit时消息按游标由新到旧分页（每页内按时间升序），支持If-None-Match返回304
+     */
     @RequestMapping(method = RequestMethod.GET, path = "session/{userId}")
     public Result getSessionById(@PathVariable("userId") Long userId,
-                                 @RequestParam("sessionId") Long sessionId) {
+                                 @RequestParam("sessionId") Long sessionId,
+                                 @RequestParam(value = "limit", required = false) Integer limit,
+                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                 WebRequest webRequest) {
         if (userId != null && userId > 0 && sessionId != null && sessionId > 0) {
             Session session = chatService.getSession(userId, sessionId);
+            if (Objects.nonNull(session) && limit != null) {
+                CursorPageDto<Message> page = chatService.getMessagePage(session, cursor, normalizeLimit(limit));
+                if (webRequest.checkNotModified(page.getEtag())) {
+                    return null;
+                }
+                SessionDto sessionDto = new SessionDto();
+                sessionDto.setSession(session);
+                sessionDto.setMessageList(page.getItems());
+                sessionDto.setNextCursor(page.getNextCursor());
+                sessionDto.setHasMore(page.getHasMore());
+                return Result.success(sessionDto);
+            }
             if (Objects.nonNull(session)) {
                 List<Message> messageList =
                         chatService.getMessageList(session.getUserId(), session.getId());
@@ -72,6 +130,10 @@ public class ChatController {
         return Result.error("获取对话请求参数异常");
     }
 
+    private static int normalizeLimit(int limit) {
+        return Math.max(1, Math.min(MAX_PAGE_LIMIT, limit));
+    }
+
     @RequestMapping(method = RequestMethod.PATCH, path = "/session/{userId}/rename")
     public Result renameSession(@PathVariable("userId") Long userId,
                                 @RequestParam("sessionId") Long sessionId,
@@ -94,6 +156,8 @@ public class ChatController {
     public Result deleteSession(@PathVariable("userId") Long userId,
                                 @RequestParam("sessionId") Long sessionId) {
         if (userId != null && userId > 0 && sessionId != null && sessionId > 0) {
+            // 先取消进行中的生成，避免删除后回复再被写入
+            generationRegistry.cancel(userId, sessionId, GenerationRegistry.REASON_DELETE);
             if (chatService.deleteSession(userId, sessionId)) {
                 messageHolder.clearContent(userId, sessionId);
                 return Result.success();
@@ -125,6 +189,8 @@ public class ChatController {
     public Result pauseSessionMsg(@PathVariable("userId") Long userId,
                                   @RequestParam("sessionId") Long sessionId) {
         if (userId != null && userId > 0 && sessionId != null && sessionId > 0) {
+            // 中断上游请求，Ollama停止解码并释放后端并发额度
+            generationRegistry.cancel(userId, sessionId, GenerationRegistry.REASON_PAUSE);
             if (chatService.pauseMsg(userId, sessionId)) {
                 messageHolder.clearContent(userId, sessionId);
                 return Result.success();
@@ -162,30 +228,76 @@ public class ChatController {
             return emptyErrorEmitter("对话消息列表为空");
         }
 
-        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(30));
+        SseEmitter emitter = new SseEmitter(generationConfig.getEmitterTimeoutMs());
         AtomicBoolean isSseCompleted = new AtomicBoolean(false);
-        registerSseCallbacks(emitter, chatDto, isSseCompleted);
+        // 生成创建后连接改为接入生成，断开时只摘除连接
+        AtomicReference<Generation> generationRef = new AtomicReference<>();
+        registerSseCallbacks(emitter, chatDto, isSseCompleted, generationRef);
 
         try {
-            if (chatDto.getIsLogin()) {
-                handleLoginChat(emitter, chatDto, isSseCompleted);
-            } else {
-                handleNonLoginChat(emitter, chatDto, isSseCompleted);
-            }
+            // 对话准备（保存用户输入、发起AI请求）交给chat线程池，线程池饱和时快速失败
+            threadPoolManager.runAsync(CHAT_POOL, () -> {
+                if (chatDto.getIsLogin()) {
+                    handleLoginChat(emitter, chatDto, isSseCompleted, generationRef);
+                } else {
+                    handleNonLoginChat(emitter, chatDto, isSseCompleted, generationRef);
+                }
+            }).exceptionally(ex -> {
+                handleSyncException(emitter, chatDto, isSseCompleted, generationRef, ex);
+                return null;
+            });
         } catch (Exception e) {
-            handleSyncException(emitter, chatDto, isSseCompleted, e);
+            handleSyncException(emitter, chatDto, isSseCompleted, generationRef, e);
         }
 
         return emitter;
     }
 
+    /**
+     * 重新接入进行中（或刚结束）的生成：补发Last-Event-ID之后的事件，再接收后续实时事件
+     * 生成ID为随机UUID，只返回给发起对话的连接，持有生成ID即可接入（接口没有用户认证，不按用户ID校验）
+     * 集群部署时生成在其他节点则转发到所属节点
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/session/chat/stream/{generationId}")
+    public SseEmitter resumeChat(@PathVariable("generationId") String generationId,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                 @RequestHeader(value = GenerationRelay.RELAY_HEADER, required = false) String relayedFrom) {
+        Generation generation = generationRegistry.get(generationId);
+        if (generation == null) {
+            // 已转发过的请求不再转发
+            String ownerNode = relayedFrom == null ? generationRegistry.getOwnerNode(generationId) : null;
+            SseEmitter relayed = ownerNode == null ? null : generationRelay.relay(
+                    ownerNode, generationId, lastEventId, generationConfig.getEmitterTimeoutMs());
+            return relayed != null ? relayed : emptyErrorEmitter(404, "生成不存在或已过期");
+        }
+        long lastId = 0;
+        if (StringUtils.isNumeric(lastEventId)) {
+            lastId = Long.parseLong(lastEventId);
+        }
+
+        SseEmitter emitter = new SseEmitter(generationConfig.getEmitterTimeoutMs());
+        emitter.onCompletion(() -> generationRegistry.detach(generation, emitter));
+        emitter.onTimeout(() -> {
+            generationRegistry.detach(generation, emitter);
+            emitter.complete();
+        });
+        emitter.onError(e -> generationRegistry.detach(generation, emitter));
+        log.debug("重新接入生成, generationId: {}, lastEventId: {}", generationId, lastId);
+        generation.attach(emitter, buildGenerationFrame(generation), lastId);
+        return emitter;
+    }
+
     // ========== 初始化空错误Emitter ==========
     private SseEmitter emptyErrorEmitter(String errorMsg) {
+        return emptyErrorEmitter(500, errorMsg);
+    }
+
+    private SseEmitter emptyErrorEmitter(int code, String errorMsg) {
         SseEmitter emptyEmitter = new SseEmitter(0L);
         try {
             emptyEmitter.send(SseEmitter.event()
                     .name(ERROR_EVENT)
-                    .data(Result.error(errorMsg)));
+                    .data(Result.error(code, errorMsg)));
         } catch (IOException e) {
             log.warn("发送空Emitter错误消息失败: {}", errorMsg, e);
         } finally {
@@ -195,120 +307,201 @@ public class ChatController {
     }
 
     // ========== 注册Emitter回调 ==========
+    // 连接完成/超时/异常只断开连接，不清理暂存内容：生成与连接解耦，客户端可凭生成ID重新接入；
+    // 宽限期内无人重新接入时由注册表取消上游请求
     private void registerSseCallbacks(SseEmitter emitter, ChatDto chatDto,
-                                      AtomicBoolean isSseCompleted) {
+                                      AtomicBoolean isSseCompleted,
+                                      AtomicReference<Generation> generationRef) {
         Long userId = chatDto.getUserId();
         Long sessionId = chatDto.getSessionId();
         // 完成回调
         emitter.onCompletion(() -> {
             isSseCompleted.set(true);
             log.debug("SSE连接完成, userId: {}, sessionId: {}", userId, sessionId);
-            cleanupResources(chatDto, "连接完成");
+            detachGeneration(emitter, generationRef);
         });
 
         // 超时回调
         emitter.onTimeout(() -> {
             isSseCompleted.set(true);
-            log.warn("SSE连接超时, userId: {}, sessionId: {}", userId, sessionId);
-            try {
-                emitter.send(SseEmitter.event()
-                        .name(ERROR_EVENT)
-                        .data(Result.error(408, "请求超时, 请重试")));
-            } catch (IOException e) {
-                log.error("发送超时事件失败", e);
-            } finally {
-                cleanupResources(chatDto, "超时");
-                emitter.complete();
-            }
+            log.warn("SSE连接超时, 生成继续, userId: {}, sessionId: {}", userId, sessionId);
+            detachGeneration(emitter, generationRef);
+            emitter.complete();
         });
 
         // 错误回调
         emitter.onError(e -> {
             isSseCompleted.set(true);
-            log.error("SSE连接异常, userId: {}, sessionId: {}", userId, sessionId, e);
-            cleanupResources(chatDto, "连接异常");
-            emitter.completeWithError(e);
+            log.warn("SSE连接异常, 生成继续, userId: {}, sessionId: {}", userId, sessionId, e);
+            detachGeneration(emitter, generationRef);
         });
     }
 
+    private void detachGeneration(SseEmitter emitter, AtomicReference<Generation> generationRef) {
+        Generation generation = generationRef.get();
+        if (generation != null) {
+            generationRegistry.detach(generation, emitter);
+        }
+    }
+
     // ========== 处理登录用户对话逻辑 ==========
     private void handleLoginChat(SseEmitter emitter, ChatDto chatDto,
-                                 AtomicBoolean isSseCompleted) {
+                                 AtomicBoolean isSseCompleted,
+                                 AtomicReference<Generation> generationRef) {
         // 保存用户输入
         chatDto.setRole((byte) 1);
         ChatDto updateData = chatService.updateSession(chatDto, true);
         Long userId = updateData.getUserId();
         Long sessionId = updateData.getSessionId();
         updateData.setIsLogin(true);
-        messageHolder.initHolder(userId, sessionId);
         log.debug("登录用户SSE初始化完成, userId: {}, sessionId: {}", userId, sessionId);
 
-        executeAiChatAsync(chatDto, emitter, isSseCompleted, updateData);
+        executeAiChatAsync(chatDto, emitter, isSseCompleted, generationRef, updateData);
     }
 
     // ========== 处理未登录用户对话逻辑 ==========
     private void handleNonLoginChat(SseEmitter emitter, ChatDto chatDto,
-                                    AtomicBoolean isSseCompleted) {
+                                    AtomicBoolean isSseCompleted,
+                                    AtomicReference<Generation> generationRef) {
         chatDto.setIsLogin(false);
         chatDto.setSessionId(0L);
-        executeAiChatAsync(chatDto, emitter, isSseCompleted, chatDto);
+        executeAiChatAsync(chatDto, emitter, isSseCompleted, generationRef, chatDto);
     }
 
     // ========== 通用AI异步处理逻辑 ==========
     private void executeAiChatAsync(ChatDto chatDto,
                                     SseEmitter emitter,
                                     AtomicBoolean isSseCompleted,
+                                    AtomicReference<Generation> generationRef,
                                     ChatDto updateData) {
         Boolean isLogin = chatDto.getIsLogin();
         Long userId = chatDto.getUserId();
         Long sessionId = updateData.getSessionId();
-        CompletableFuture.runAsync(() -> {
-            try {
-                // 调用AI服务处理流式响应
-                chatService.chat(updateData, responseData -> {
-                    // Emitter已完成则直接返回
-                    if (isSseCompleted.get()) {
-                        log.debug("Emitter已完成, 跳过CHUNK事件发送, userId: {}, sessionId: {}", userId, sessionId);
-                        return;
-                    }
-                    if (responseData == null || responseData.getMessage() == null) {
-                        log.warn("AI回调数据为空, userId: {}, sessionId: {}", userId, sessionId);
-                        return;
-                    }
+        // 精简帧编码器（合并器的发送回调是串行的，单流复用）
+        SseFrameEncoder frameEncoder;
+        try {
+            frameEncoder = new SseFrameEncoder();
+        } catch (IOException e) {
+            throw new CustomException(500, "创建SSE帧编码器异常");
+        }
+        // 生成与连接解耦：事件先写入生成日志，再推送给接入的连接
+        Generation generation = generationRegistry.create(userId, sessionId);
+        generationRef.set(generation);
+        if (isLogin) {
+            // 同一会话的旧生成已在create中取消（不会再写入）：丢弃其残留内容后重新初始化暂存
+            messageHolder.clearContent(userId, sessionId);
+            messageHolder.initHolder(userId, sessionId);
+        }
+        if (!isSseCompleted.get()) {
+            generation.attach(emitter, buildGenerationFrame(generation), 0);
+        }
+        // 分块合并：同类增量在时间窗口/字符上限内合并为一个chunk事件，减少flush次数
+        SseChunkCoalescer coalescer = chunkCoalescerFactory.create((text, thinking) -> {
+            if (isLogin && Boolean.FALSE.equals(generation.accessHolder(
+                    () -> messageHolder.appendContent(userId, sessionId, text, thinking)))) {
+                // 暂存失败（超出单会话上限/内存预算）：停止生成，不保存不完整的回复
+                generationRegistry.cancel(generation, GenerationRegistry.REASON_OVERFLOW);
+            }
+            // 写入分块消息（精简帧：仅增量文本与类型）
+            publishChunkFrame(generation, frameEncoder, text, thinking);
+        });
 
-                    // 发送分块消息
-                    String thinking = responseData.getMessage().getThinking();
-                    String content = responseData.getMessage().getContent();
-                    if (StringUtils.isNotEmpty(content) || StringUtils.isNotEmpty(thinking)) {
-                        if (isLogin) {
-                            if (StringUtils.isNotEmpty(thinking)) {
-                                messageHolder.appendContent(userId, sessionId, thinking, true);
-                            } else if (StringUtils.isNotEmpty(content)) {
-                                messageHolder.appendContent(userId, sessionId, content, false);
-                            }
-                        }
-                        sendSseEvent(emitter, isSseCompleted, CHUNK_EVENT, responseData);
-                    }
-                });
+        // 调用AI服务处理流式响应
+        CompletableFuture<Void> upstream;
+        try {
+            upstream = startUpstream(updateData, coalescer, userId, sessionId);
+        } catch (RuntimeException e) {
+            // 发起请求失败：先摘除连接（错误事件由同步异常处理发送），再结束生成
+            generation.detach(emitter);
+            finishGeneration(generation, isLogin);
+            throw e;
+        }
+        generation.setUpstream(upstream);
 
-                // 发送完成事件
-                if (!isSseCompleted.get()) {
-                    ChatDto finishData = buildFinishChatData(chatDto, updateData);
-                    sendSseEvent(emitter, isSseCompleted, FINISHED_EVENT, Result.success(finishData));
+        // 流结束后的收尾（涉及数据库写入）切回业务线程池，避免占用HttpClient的IO线程
+        upstream.whenCompleteAsync((ignored, ex) -> {
+            try {
+                // 结束时立即发送合并器中剩余的内容
+                coalescer.close();
+                if (generation.isCancelled()) {
+                    // 已取消（暂停/删除会话/断线无人接入/暂存超限）：不保存回复
+                    log.debug("AI回复已取消, userId: {}, sessionId: {}, 原因: {}",
+                            userId, sessionId, generation.getCancelReason());
+                    publishEvent(generation, ERROR_EVENT, buildCancelResult(generation));
+                } else if (ex != null) {
+                    // 异步异常处理
+                    log.error("AI服务执行异常, userId: {}, sessionId: {}", userId, sessionId, ex);
+                    publishEvent(generation, ERROR_EVENT, buildErrorResult(ex));
+                } else {
+                    // 完成事件（无论连接是否还在，都需要保存回复并写入日志）
+                    ChatDto finishData = buildFinishChatData(generation, chatDto, updateData);
+                    if (finishData == null) {
+                        // 读取回复前被同一会话的新生成取代
+                        publishEvent(generation, ERROR_EVENT, buildCancelResult(generation));
+                    } else {
+                        publishEvent(generation, FINISHED_EVENT, Result.success(finishData));
+                    }
                 }
             } catch (Exception e) {
-                // 异步异常处理
-                log.error("AI服务执行异常, userId: {}, sessionId: {}", userId, sessionId, e);
-                sendSseEvent(emitter, isSseCompleted, ERROR_EVENT, Result.error(e.getMessage()));
+                log.error("AI回复收尾异常, userId: {}, sessionId: {}", userId, sessionId, e);
+                publishEvent(generation, ERROR_EVENT, Result.error(e.getMessage()));
             } finally {
-                // 最终确保Emitter完成, 清理资源
-                completeSseFinally(emitter, updateData, isSseCompleted);
+                // 结束生成（完成所有接入的连接）, 清理资源
+                finishGeneration(generation, isLogin);
+            }
+        }, threadPoolManager.getThreadPool(CHAT_POOL));
+    }
+
+    // ========== 发起AI流式请求（非阻塞，分块由HttpClient的IO线程回调） ==========
+    private CompletableFuture<Void> startUpstream(ChatDto updateData,
+                                                  SseChunkCoalescer coalescer,
+                                                  Long userId,
+                                                  Long sessionId) {
+        return chatService.chat(updateData, new ChatStreamListener() {
+            @Override
+            public void onToken(String text, boolean thinking) {
+                // 连接断开不影响生成，内容继续写入日志
+                coalescer.append(text, thinking);
             }
-        }, threadPoolManager.getThreadPool("chat"));
+
+            @Override
+            public void onDone(ResponseDto doneFrame) {
+                // 结束帧到达即发送剩余内容，不等待收尾任务调度
+                coalescer.flush();
+                log.debug("AI回复生成完成, userId: {}, sessionId: {}, 模型: {}, 生成token数: {}, 总耗时: {}ns",
+                        userId, sessionId, doneFrame.getModel(), doneFrame.getEvalCount(), doneFrame.getTotalDuration());
+            }
+        });
+    }
+
+    // ========== 取消原因转换为错误结果 ==========
+    private Result buildCancelResult(Generation generation) {
+        if (GenerationRegistry.REASON_OVERFLOW.equals(generation.getCancelReason())) {
+            return Result.error(507, "回复内容超出暂存上限，请精简问题后重试");
+        }
+        return Result.error(499, "生成已取消");
+    }
+
+    // ========== 异步异常转换为错误结果 ==========
+    private Result buildErrorResult(Throwable ex) {
+        Throwable cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof CustomException) {
+            CustomException customException = (CustomException) cause;
+            return Result.error(customException.getCode(), customException.getMsg());
+        }
+        if (cause instanceof RejectedExecutionException) {
+            // 线程池饱和/排队超时：快速失败，提示稍后重试
+            return Result.error(503, "当前对话请求过多，请稍后重试");
+        }
+        return Result.error(cause.getMessage());
     }
 
     // ========== 构建完成事件的ChatData ==========
-    private ChatDto buildFinishChatData(ChatDto chatDto,
+    private ChatDto buildFinishChatData(Generation generation,
+                                        ChatDto chatDto,
                                         ChatDto updateData) {
         Boolean isLogin = updateData.getIsLogin();
         Long userId = updateData.getUserId();
@@ -319,12 +512,16 @@ public class ChatController {
         result.setRole((byte) 2);
         result.setNewSession(false);
 
-        // 登录用户需要组装完整回复保存
+        // 登录用户需要组装完整回复保存（已被新生成取代时返回null）
         if (isLogin && userId > 0 && sessionId > 0) {
-            String thinking = messageHolder.getCompleteContent(userId, sessionId, true);
-            String content = messageHolder.getCompleteContent(userId, sessionId, false);
-            MsgDto msg = MsgDto.builder().thinking(thinking)
-                    .content(content)
+            String[] reply = generation.accessHolder(() -> new String[]{
+                    messageHolder.getCompleteContent(userId, sessionId, true),
+                    messageHolder.getCompleteContent(userId, sessionId, false)});
+            if (reply == null) {
+                return null;
+            }
+            MsgDto msg = MsgDto.builder().thinking(reply[0])
+                    .content(reply[1])
                     .type(MsgType.TEXT.getType())
                     .role(2)
                     .build();
@@ -332,7 +529,8 @@ public class ChatController {
             updateData.setRole((byte) 2);
             updateData.setNewSession(false);
             try {
-                result = chatService.updateSession(updateData, false);
+                // 延迟批量写入，不等待数据库
+                result = chatService.saveReply(updateData);
                 result.setRole((byte) 2);
                 result.setNewSession(false);
             } catch (Exception e) {
@@ -342,35 +540,72 @@ public class ChatController {
         return result;
     }
 
-    // ========== 最终完成Emitter并清理资源 ==========
-    private void completeSseFinally(SseEmitter emitter,
-                                    ChatDto updateData,
-                                    AtomicBoolean isSseCompleted) {
-        if (!isSseCompleted.get()) {
-            isSseCompleted.set(true);
-            emitter.complete();
-        }
-        // 登录用户清理MessageHolder
-        Long userId = updateData.getUserId();
-        Long sessionId = updateData.getSessionId();
-        if (updateData.getIsLogin() && userId > 0 && sessionId > 0) {
+    // ========== 结束生成并清理资源 ==========
+    private void finishGeneration(Generation generation, boolean isLogin) {
+        boolean stillActive = generationRegistry.finish(generation);
+        // 登录用户清理MessageHolder（完整内容已在生成日志与数据库中）；
+        // 已结束或已被同一会话的新生成取代时暂存归新生成所有，不能清理
+        Long userId = generation.getUserId();
+        Long sessionId = generation.getSessionId();
+        if (stillActive && isLogin && userId > 0 && sessionId > 0) {
             messageHolder.clearContent(userId, sessionId);
         }
     }
 
+    // ========== 生成信息帧（接入时首先发送，客户端据此重新接入） ==========
+    private byte[] buildGenerationFrame(Generation generation) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("generationId", generation.getId());
+        data.put("userId", generation.getUserId());
+        data.put("sessionId", generation.getSessionId());
+        data.put("lastEventId", generation.getLastEventId());
+        return SseFrameEncoder.encodeEvent(GENERATION_EVENT, toJson(data));
+    }
+
+    // ========== 写入结束事件到生成日志（不受日志预算限制） ==========
+    private void publishEvent(Generation generation, String eventName, Object data) {
+        generation.publishFinal(SseFrameEncoder.encodeEvent(eventName, toJson(data)));
+    }
+
+    // ========== 写入精简chunk帧（预编码字节，绕过消息转换器的对象序列化） ==========
+    private void publishChunkFrame(Generation generation,
+                                   SseFrameEncoder frameEncoder,
+                                   String text,
+                                   boolean thinking) {
+        try {
+            if (!generation.publish(frameEncoder.encodeChunk(text, thinking))) {
+                // 生成日志内存预算不足：停止生成
+                generationRegistry.cancel(generation, GenerationRegistry.REASON_OVERFLOW);
+            }
+        } catch (IOException e) {
+            log.error("编码chunk帧失败, generationId: {}", generation.getId(), e);
+        }
+    }
+
+    private String toJson(Object data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new CustomException(500, "序列化SSE事件异常");
+        }
+    }
+
     // ========== 处理同步异常 ==========
     private void handleSyncException(SseEmitter emitter, ChatDto chatDto,
-                                     AtomicBoolean isSseCompleted, Exception e) {
+                                     AtomicBoolean isSseCompleted,
+                                     AtomicReference<Generation> generationRef,
+                                     Throwable e) {
         log.error("SSE同步初始化异常, userId: {}, sessionId: {}",
                 chatDto.getUserId(), chatDto.getSessionId(), e);
-        isSseCompleted.set(true);
         try {
-            sendSseEvent(emitter, isSseCompleted, ERROR_EVENT, Result.error(e.getMessage()));
+            // 先发送错误事件，再标记完成（否则错误事件会被跳过）
+            sendSseEvent(emitter, isSseCompleted, ERROR_EVENT, buildErrorResult(e));
         } catch (Exception ex) {
             log.error("发送同步异常事件失败", ex);
         } finally {
+            isSseCompleted.set(true);
             emitter.complete();
-            cleanupResources(chatDto, "同步初始化异常");
+            cleanupResources(generationRef, chatDto, "同步初始化异常");
         }
     }
 
@@ -394,14 +629,16 @@ public class ChatController {
         }
     }
 
-    // 资源清理通用方法
-    private void cleanupResources(ChatDto chatDto, String reason) {
-        log.debug("清理资源, 原因：{}", reason);
-        Long userId = chatDto.getUserId();
-        Long sessionId = chatDto.getSessionId();
-        if (chatDto.getIsLogin() && userId > 0 && sessionId > 0) {
-            messageHolder.clearContent(userId, sessionId);
+    // 资源清理通用方法：只清理本次请求创建的生成（及其初始化的暂存）
+    // 生成创建前失败（线程池拒绝、lastMsgId不匹配、排队超限等）时暂存可能属于同一会话进行中的生成，不能清理
+    private void cleanupResources(AtomicReference<Generation> generationRef, ChatDto chatDto, String reason) {
+        Generation generation = generationRef.get();
+        if (generation == null) {
+            return;
         }
+        log.debug("清理资源, 原因：{}", reason);
+        // 已结束（发起失败时已收尾）或已被新生成取代时不会清理
+        finishGeneration(generation, Boolean.TRUE.equals(chatDto.getIsLogin()));
     }
 
 }
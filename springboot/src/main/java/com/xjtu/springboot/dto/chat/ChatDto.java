@@ -1,5 +1,6 @@
 package com.xjtu.springboot.dto.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.xjtu.springboot.util.DateUtil;
 import lombok.Data;
@@ -36,6 +37,13 @@ public class ChatDto implements Serializable {
     private Integer tokenCount = 0;
     private Byte isDeepThink = 0;
     private Byte isNetworkSearch = 0;
+    // 增量协议：客户端已知的最后一条消息ID（与服务端不一致时需要完整重发）
+    private Long lastMsgId;
+    // 完整重发：messageList为完整对话，以客户端的对话构建prompt
+    private Boolean fullResend = false;
+    // messageList的token累计值（服务端按会话维护，构建上下文时使用，不接收也不返回给客户端）
+    @JsonIgnore
+    private Long historyTokenCount;
 
     public void copyFrom(ChatDto chatDto) {
         this.isLogin = chatDto.getIsLogin();
@@ -55,5 +63,7 @@ public class ChatDto implements Serializable {
         this.tokenCount = chatDto.getTokenCount();
         this.isDeepThink = chatDto.getIsDeepThink();
         this.isNetworkSearch = chatDto.getIsNetworkSearch();
+        this.lastMsgId = chatDto.getLastMsgId();
+        this.fullResend = chatDto.getFullResend();
     }
 }
@@ -0,0 +1,22 @@
+package com.xjtu.springboot.dto.chat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+public class CursorPageDto<T> implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private List<T> items;
+    // 下一页游标（没有更多数据时为空）
+    private String nextCursor;
+    private Boolean hasMore = false;
+    // 当前页内容的指纹（用于ETag，不返回给客户端）
+    @JsonIgnore
+    private String etag;
+}
@@ -1,6 +1,7 @@
 package com.xjtu.springboot.dto.chat;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -21,6 +22,9 @@ public class MsgDto implements Serializable {
     // 1:用户 2:AI
     private Integer role;
     private String fileIds;
+    // 内容的token估算值（服务端计算，不接收客户端传入的值）
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer tokenCount;
 
     private MsgDto(Builder builder) {
         this.thinking = builder.thinking;
@@ -28,6 +32,7 @@ public class MsgDto implements Serializable {
         this.type = builder.type;
         this.role = builder.role;
         this.fileIds = builder.fileIds;
+        this.tokenCount = builder.tokenCount;
     }
 
     public static class Builder {
@@ -36,6 +41,7 @@ public class MsgDto implements Serializable {
         private Integer type;
         private Integer role;
         private String fileIds;
+        private Integer tokenCount;
 
         public Builder thinking(String thinking) {
             this.thinking = thinking;
@@ -62,6 +68,11 @@ public class MsgDto implements Serializable {
             return this;
         }
 
+        public Builder tokenCount(Integer tokenCount) {
+            this.tokenCount = tokenCount;
+            return this;
+        }
+
         public MsgDto build() {
             return new MsgDto(this);
         }
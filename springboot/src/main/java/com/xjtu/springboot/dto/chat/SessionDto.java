@@ -15,4 +15,7 @@ public class SessionDto implements Serializable {
 
     private Session session;
     private List<Message> messageList;
+    // 分页查询时返回：更早消息的游标、是否还有更早的消息
+    private String nextCursor;
+    private Boolean hasMore;
 }
@@ -0,0 +1,42 @@
+package com.xjtu.springboot.mapper;
+
+import com.xjtu.springboot.component.storage.SessionUsage;
+import com.xjtu.springboot.pojo.MessageHolderChunk;
+import com.xjtu.springboot.pojo.MessageHolderSession;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface MessageHolderMapper {
+    int insertSession(MessageHolderSession row);
+
+    int insertChunks(@Param("list") List<MessageHolderChunk> rows);
+
+    int touchSessions(@Param("list") List<MessageHolderSession> rows);
+
+    String selectContent(@Param("userId") Long userId,
+                         @Param("sessionId") Long sessionId,
+                         @Param("isThinking") Byte isThinking);
+
+    int deleteSession(@Param("userId") Long userId, @Param("sessionId") Long sessionId);
+
+    int deleteByUserId(@Param("userId") Long userId);
+
+    List<MessageHolderSession> deleteExpired();
+
+    int countUsers();
+
+    int countSessions();
+
+    long sumContentBytes();
+
+    List<SessionUsage> selectTopSessions(@Param("limit") int limit);
+
+    int upsertNode(@Param("nodeId") String nodeId, @Param("baseUrl") String baseUrl);
+
+    String selectNodeUrl(@Param("nodeId") String nodeId, @Param("ttlMs") long ttlMs);
+
+    int deleteNode(@Param("nodeId") String nodeId);
+
+    int notify(@Param("channel") String channel, @Param("payload") String payload);
+}
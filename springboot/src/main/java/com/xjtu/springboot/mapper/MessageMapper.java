@@ -3,6 +3,7 @@ package com.xjtu.springboot.mapper;
 import com.xjtu.springboot.pojo.Message;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface MessageMapper {
@@ -10,9 +11,19 @@ public interface MessageMapper {
 
     int insert(Message row);
 
+    int insertBatch(@Param("list") List<Message> rows);
+
+    List<Long> nextIds(@Param("count") int count);
+
     int updateByPrimaryKey(Message row);
 
     int deleteByIds(@Param("userId") Long userId, @Param("sessionId") Long sessionId);
 
     List<Message> selectByIds(@Param("userId") Long userId, @Param("sessionId") Long sessionId);
+
+    List<Message> selectPage(@Param("userId") Long userId,
+                             @Param("sessionId") Long sessionId,
+                             @Param("cursorTime") LocalDateTime cursorTime,
+                             @Param("cursorId") Long cursorId,
+                             @Param("limit") int limit);
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.xjtu.springboot.mapper;
+
+import com.xjtu.springboot.pojo.RagSegmentHash;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface RagEmbeddingMapper {
+    List<RagSegmentHash> selectHashes(@Param("fileKey") String fileKey);
+}
@@ -3,6 +3,7 @@ package com.xjtu.springboot.mapper;
 import com.xjtu.springboot.pojo.Session;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface SessionMapper {
@@ -12,7 +13,14 @@ public interface SessionMapper {
 
     int updateByPrimaryKey(Session row);
 
+    int touchBatch(@Param("list") List<Session> rows);
+
     List<Session> selectSessionByUserId(Long userId);
 
+    List<Session> selectSessionPage(@Param("userId") Long userId,
+                                    @Param("cursorTime") LocalDateTime cursorTime,
+                                    @Param("cursorId") Long cursorId,
+                                    @Param("limit") int limit);
+
     Session selectSessionByIds(@Param("userId") Long userId, @Param("sessionId") Long sessionId);
 }
\ No newline at end of file
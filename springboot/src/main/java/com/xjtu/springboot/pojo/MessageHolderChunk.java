@@ -0,0 +1,21 @@
+package com.xjtu.springboot.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageHolderChunk implements Serializable {
+    private Long userId;
+    private Long sessionId;
+    private Byte isThinking;
+    private String content;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,21 @@
+package com.xjtu.springboot.pojo;
+
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Data
+public class MessageHolderSession implements Serializable {
+    private Long userId;
+    private Long sessionId;
+    private String nodeId;
+    private Long timeoutMs;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActiveTime;
+    private LocalDateTime expireAt;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
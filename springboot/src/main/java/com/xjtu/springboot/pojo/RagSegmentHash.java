@@ -0,0 +1,22 @@
+package com.xjtu.springboot.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 已入库的文档片段（ID + 内容哈希）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RagSegmentHash implements Serializable {
+    private String embeddingId;
+    private String contentHash;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
@@ -1,36 +1,54 @@
 package com.xjtu.springboot.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xjtu.springboot.component.cache.MessageHistoryCache;
+import com.xjtu.springboot.component.ollama.ChatStreamListener;
+import com.xjtu.springboot.component.ollama.ContextWindowBuilder;
+import com.xjtu.springboot.component.ollama.FairChatScheduler;
+import com.xjtu.springboot.component.ollama.OllamaBackend;
+import com.xjtu.springboot.component.ollama.OllamaBackendPool;
+import com.xjtu.springboot.component.ollama.OllamaMetrics;
+import com.xjtu.springboot.component.persist.MessageWriteBehind;
+import com.xjtu.springboot.component.ollama.OllamaStreamDecoder;
+import com.xjtu.springboot.component.ollama.OllamaStreamSubscriber;
+import com.xjtu.springboot.config.ChatContextConfig;
 import com.xjtu.springboot.dto.chat.ChatDto;
+import com.xjtu.springboot.dto.chat.CursorPageDto;
 import com.xjtu.springboot.dto.chat.MsgDto;
 import com.xjtu.springboot.dto.model.RequestDto;
-import com.xjtu.springboot.dto.model.ResponseDto;
 import com.xjtu.springboot.exception.CustomException;
 import com.xjtu.springboot.mapper.MessageMapper;
 import com.xjtu.springboot.mapper.SessionMapper;
 import com.xjtu.springboot.mapper.CollectionMapper;
 import com.xjtu.springboot.pojo.*;
-import com.xjtu.springboot.pojo.common.MsgType;
 import com.xjtu.springboot.pojo.common.Role;
 import com.xjtu.springboot.pojo.model.Options;
-import com.xjtu.springboot.pojo.model.RequestMessage;
+import com.xjtu.springboot.util.ChatUtil;
+import com.xjtu.springboot.util.CursorUtil;
 import com.xjtu.springboot.util.DateUtil;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.IOException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -39,63 +57,195 @@ public class ChatService {
     private final SessionMapper sessionMapper;
     private final MessageMapper messageMapper;
     private final CollectionMapper collectionMapper;
+    private final MessageWriteBehind messageWriteBehind;
+    private final MessageHistoryCache messageHistoryCache;
+
+    private final OllamaBackendPool ollamaBackendPool;
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final OllamaMetrics ollamaMetrics;
+    private final FairChatScheduler fairChatScheduler;
+    private final ChatContextConfig contextConfig;
 
-    private static final String OLLAMA_API_URL = "http://localhost:11434/api/chat";
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final HttpClient client = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofMinutes(10))
-            .build();
 
+    /**
+     * 延迟写入丢弃会话的待写消息（转入死信）时失效该会话的历史缓存：
+     * 缓存在入队时已追加这些消息，继续使用会读到数据库中不存在的消息
+     */
+    @PostConstruct
+    public void init() {
+        messageWriteBehind.setDiscardListener(messageHistoryCache::invalidate);
+    }
 
-    public void chat(ChatDto chatDto,
-                     Consumer<ResponseDto> contentConsumer) throws Exception {
+    /**
+     * 流式对话（非阻塞）：响应由HttpClient的IO线程解码后推送给回调，
+     * 返回的Future在流结束时完成，调用方无需占用线程等待；
+     * 请求先进入按用户的公平调度队列，轮到时才发起，cancel可取消排队或进行中的请求
+     */
+    public CompletableFuture<Void> chat(ChatDto chatDto,
+                                        ChatStreamListener listener) {
+        return fairChatScheduler.submit(chatDto.getUserId(), Boolean.TRUE.equals(chatDto.getIsLogin()),
+                () -> startChat(chatDto, listener));
+    }
+
+    private CompletableFuture<Void> startChat(ChatDto chatDto,
+                                              ChatStreamListener listener) {
         // 构建请求体
         // https://docs.ollama.com/api/chat#response-load-duration
         // https://github.com/ollama/ollama/blob/main/docs/api.md
         RequestDto requestDto = generateRequestDto(chatDto);
         // 转换为JSON
-        String requestJson = objectMapper.writeValueAsString(requestDto);
-        // 构建请求
+        String requestJson;
+        try {
+            requestJson = objectMapper.writeValueAsString(requestDto);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new CustomException(500, "构建AI请求异常：" + e.getOriginalMessage()));
+        }
+        // 处理流式响应（订阅者模式，不阻塞线程），回调外包一层指标观测
+        OllamaMetrics.StreamObservation observation = ollamaMetrics.observe(requestDto.getModel(), listener);
+        OllamaStreamSubscriber subscriber;
+        try {
+            subscriber = new OllamaStreamSubscriber(new OllamaStreamDecoder(objectMapper.getFactory(), observation));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new CustomException(500, "创建AI响应解析器异常：" + e.getMessage()));
+        }
+        // 会话亲和：同一会话尽量落在同一后端，复用模型的KV缓存
+        Long sessionId = chatDto.getSessionId();
+        Long affinityKey = Objects.nonNull(sessionId) && sessionId > 0 ? sessionId : null;
+
+        // 返回给调用方的结果：cancel时中断在途的HTTP交换（响应头未到达时取消请求，已在读取时关闭连接）
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>();
+        result.whenComplete((ignored, ex) -> {
+            if (result.isCancelled()) {
+                subscriber.cancel();
+                CompletableFuture<?> current = exchange.get();
+                if (current != null) {
+                    current.cancel(true);
+                }
+            }
+        });
+        sendChatRequest(requestJson, affinityKey, subscriber, observation, new ArrayList<>(), exchange, result)
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(null);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * 选择后端并发送请求；连接失败（请求未送达）时换一台后端重试
+     */
+    private CompletableFuture<Void> sendChatRequest(String requestJson,
+                                                    Long affinityKey,
+                                                    OllamaStreamSubscriber subscriber,
+                                                    OllamaMetrics.StreamObservation observation,
+                                                    List<OllamaBackend> failedBackends,
+                                                    AtomicReference<CompletableFuture<?>> exchange,
+                                                    CompletableFuture<Void> result) {
+        // 后端全部满载时排队等待名额，排队期间取消则出队
+        CompletableFuture<OllamaBackend> acquiring = ollamaBackendPool.acquire(affinityKey, failedBackends);
+        exchange.set(acquiring);
+        if (result.isCancelled()) {
+            acquiring.cancel(true);
+        }
+        return acquiring.thenCompose(backend -> sendToBackend(backend, requestJson, affinityKey, subscriber,
+                observation, failedBackends, exchange, result));
+    }
+
+    private CompletableFuture<Void> sendToBackend(OllamaBackend backend,
+                                                  String requestJson,
+                                                  Long affinityKey,
+                                                  OllamaStreamSubscriber subscriber,
+                                                  OllamaMetrics.StreamObservation observation,
+                                                  List<OllamaBackend> failedBackends,
+                                                  AtomicReference<CompletableFuture<?>> exchange,
+                                                  CompletableFuture<Void> result) {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(OLLAMA_API_URL))
+                .uri(backend.getChatUri())
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(requestJson))
                 .build();
-        // 处理流式响应
-        client.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
-                .thenApply(HttpResponse::body)
-                .thenAccept(lines -> lines.forEach(line -> {
-                    try {
-                        ResponseDto responseDto = objectMapper.readValue(line, ResponseDto.class);
-                        if (Objects.nonNull(responseDto) && responseDto.getMessage() != null
-                                && (responseDto.getMessage().getContent() != null || responseDto.getMessage().getThinking() != null)) {
-                            contentConsumer.accept(responseDto);
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException("解析响应异常", e);
+        observation.start(backend);
+        CompletableFuture<HttpResponse<CompletableFuture<Void>>> sending =
+                ollamaBackendPool.getHttpClient().sendAsync(request, responseInfo -> {
+                    if (responseInfo.statusCode() != 200) {
+                        return HttpResponse.BodySubscribers.mapping(
+                                HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                                body -> {
+                                    throw new CustomException(503, "AI服务响应异常（状态码：" + responseInfo.statusCode() + "）：" + body);
+                                });
                     }
-                })).exceptionally(ex -> {
-                    // 解析异常根源（ex是CompletionException，其cause才是真正的异常）
-                    Throwable rootCause = ex.getCause();
-                    String errorMsg;
-                    if (rootCause instanceof java.net.ConnectException) {
-                        errorMsg = "无法连接到AI服务，请检查Ollama是否已启动（地址：" + OLLAMA_API_URL + "）";
-                    } else if (rootCause instanceof java.net.SocketTimeoutException) {
-                        errorMsg = "连接AI服务超时，请稍后重试";
-                    } else if (rootCause instanceof java.io.IOException) {
-                        errorMsg = "与AI服务通信失败：" + rootCause.getMessage();
-                    } else {
-                        errorMsg = "AI请求处理异常：" + rootCause.getMessage();
+                    return HttpResponse.BodySubscribers.fromSubscriber(subscriber, OllamaStreamSubscriber::getCompletion);
+                });
+        // 记录在途交换，取消发生在切换后端期间时补充取消
+        exchange.set(sending);
+        if (result.isCancelled()) {
+            sending.cancel(true);
+        }
+        return sending
+                .thenCompose(HttpResponse::body)
+                .whenComplete((ignored, ex) -> ollamaBackendPool.release(backend, ex))
+                .exceptionallyCompose(ex -> {
+                    if (result.isCancelled() || isCancellation(ex)) {
+                        observation.cancelled();
+                        return CompletableFuture.failedFuture(ex);
+                    }
+                    observation.failed();
+                    // 连接失败时订阅者尚未收到任何数据，可以直接换后端重试
+                    if (ollamaBackendPool.isConnectFailure(ex)
+                            && failedBackends.size() + 1 < ollamaBackendPool.getBackends().size()) {
+                        failedBackends.add(backend);
+                        log.warn("Ollama后端{}连接失败，切换后端重试", backend.getBaseUrl());
+                        return sendChatRequest(requestJson, affinityKey, subscriber, observation, failedBackends,
+                                exchange, result);
                     }
-                    // 抛出自定义异常，由上层Controller捕获
-                    throw new CustomException(503, errorMsg);
-                })
-                .join();
+                    return CompletableFuture.failedFuture(translateException(ex, backend));
+                });
+    }
+
+    private static boolean isCancellation(Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof CancellationException;
+    }
+
+    /**
+     * 解析异常根源，转换为上层可直接展示的自定义异常
+     */
+    private CustomException translateException(Throwable ex, OllamaBackend backend) {
+        // ex通常是CompletionException，其cause才是真正的异常
+        Throwable rootCause = ex;
+        while ((rootCause instanceof CompletionException || rootCause instanceof ExecutionException)
+                && rootCause.getCause() != null) {
+            rootCause = rootCause.getCause();
+        }
+        if (rootCause instanceof CustomException) {
+            return (CustomException) rootCause;
+        }
+        String errorMsg;
+        if (rootCause instanceof java.net.ConnectException) {
+            errorMsg = "无法连接到AI服务，请检查Ollama是否已启动（地址：" + backend.getBaseUrl() + "）";
+        } else if (rootCause instanceof java.net.http.HttpTimeoutException
+                || rootCause instanceof java.net.SocketTimeoutException) {
+            errorMsg = "连接AI服务超时，请稍后重试";
+        } else if (rootCause instanceof java.io.IOException) {
+            errorMsg = "与AI服务通信失败：" + rootCause.getMessage();
+        } else {
+            errorMsg = "AI请求处理异常：" + rootCause.getMessage();
+        }
+        // 抛出自定义异常，由上层Controller捕获
+        return new CustomException(503, errorMsg);
     }
 
     private RequestDto generateRequestDto(ChatDto chatDto) {
         RequestDto requestDto = new RequestDto();
-        List<RequestMessage> requestMessageList = new ArrayList<>();
         Options options = new Options();
         if (chatDto.getIsDeepThink() == (byte) 1) {
             requestDto.setThink(true);
@@ -103,22 +253,15 @@ public class ChatService {
             options.setTemperature(0.55);
             options.setTopP(0.96);
         }
+        // 按token预算裁剪历史，num_ctx按实际prompt大小设置
+        ContextWindowBuilder.ContextWindow window = contextWindowBuilder.build(
+                chatDto.getMessageList(), chatDto.getHistoryTokenCount());
+        options.setNumCtx(window.getNumCtx());
+        options.setNumPredict(contextConfig.getNumPredict());
         requestDto.setOptions(options);
-        for (MsgDto message : chatDto.getMessageList()) {
-            // TODO 文件消息要单独处理
-            if (Objects.equals(message.getType(), MsgType.FILE.getType())) {
-                continue;
-            }
-            RequestMessage requestMessage = new RequestMessage();
-            if (message.getRole() == 1) {
-                requestMessage.setRole(Role.USER.getName());
-            } else if (message.getRole() == 2) {
-                requestMessage.setRole(Role.ASSISTANT.getName());
-            }
-            requestMessage.setContent(message.getContent());
-            requestMessageList.add(requestMessage);
-        }
-        requestDto.setMessages(requestMessageList);
+        requestDto.setMessages(window.getMessages());
+        log.debug("对话上下文：会话={}，prompt约{}token，num_ctx={}，裁剪{}条",
+                chatDto.getSessionId(), window.getPromptTokens(), window.getNumCtx(), window.getTrimmedCount());
         return requestDto;
     }
 
@@ -147,19 +290,51 @@ public class ChatService {
             Long sessionId = chatDto.getSessionId();
             Session session = getSession(userId, sessionId);
             if (Objects.nonNull(session)) {
+                // 登录用户使用服务端保存的历史消息（优先读缓存，在插入新消息之前读取）
+                MessageHistoryCache.SessionHistory history = selectAllMsg ? loadHistory(userId, sessionId) : null;
+                List<Message> historyList = selectAllMsg ? history.getMessages() : null;
+                List<Message> messageList = generateMessage(chatDto, session);
+                List<Message> promptList = null;
+                if (selectAllMsg && Boolean.TRUE.equals(chatDto.getFullResend())) {
+                    // 完整重发：以客户端的完整对话构建prompt，只保存最后一条用户消息（之前的消息服务端已保存）
+                    promptList = messageList;
+                    for (int i = 0; i < promptList.size(); i++) {
+                        Integer role = chatDto.getMessageList().get(i).getRole();
+                        if (!Objects.equals(role, Role.USER.getRole()) && !Objects.equals(role, Role.ASSISTANT.getRole())) {
+                            throw new CustomException(400, "完整重发的消息角色只能是用户或助手");
+                        }
+                        promptList.get(i).setRole(role.byteValue());
+                    }
+                    Message last = promptList.isEmpty() ? null : promptList.get(promptList.size() - 1);
+                    if (last == null || !Objects.equals(last.getRole(), Role.USER.getRole().byteValue())) {
+                        throw new CustomException(400, "完整重发的最后一条消息必须是用户消息");
+                    }
+                    messageList = new ArrayList<>(List.of(last));
+                } else if (selectAllMsg) {
+                    checkLastMsgId(chatDto.getLastMsgId(), historyList);
+                }
                 updateSession(chatDto, session);
                 if (sessionMapper.updateByPrimaryKey(session) >= 1) {
-                    List<Message> messageList = generateMessage(chatDto, session);
                     for (Message message : messageList) {
                         if (messageMapper.insert(message) < 1) {
                             throw new CustomException(500, "新增对话消息异常");
                         }
                     }
-                    if (selectAllMsg) {
-                        // 登录用户直接用数据库里面的数据
-                        messageList = messageMapper.selectByIds(userId, sessionId);
+                    messageHistoryCache.append(userId, sessionId, messageList);
+                    Long historyTokenCount = null;
+                    if (promptList != null) {
+                        messageList = promptList;
+                    } else if (selectAllMsg) {
+                        // 会话的token累计值 + 本轮新消息，构建上下文时不再逐条累加
+                        historyTokenCount = history.getTokenCount() + MessageHistoryCache.countTokens(messageList);
+                        List<Message> allMessageList = new ArrayList<>(historyList.size() + messageList.size());
+                        allMessageList.addAll(historyList);
+                        allMessageList.addAll(messageList);
+                        messageList = allMessageList;
                     }
-                    return generateChatData(chatDto, session, messageList, selectAllMsg);
+                    ChatDto result = generateChatData(chatDto, session, messageList, selectAllMsg);
+                    result.setHistoryTokenCount(historyTokenCount);
+                    return result;
                 } else {
                     throw new CustomException(500, "更新对话异常");
                 }
@@ -171,6 +346,93 @@ public class ChatService {
         }
     }
 
+    /**
+     * 保存AI回复（延迟批量写入）：消息与会话时间更新进入写入队列，不在请求路径上访问数据库
+     * 会话信息直接使用本轮对话开始时查询到的数据
+     */
+    public ChatDto saveReply(ChatDto chatDto) {
+        if (!chatDto.getNewSession() &&
+                (Objects.nonNull(chatDto.getSessionId()) && chatDto.getSessionId() > 0)) {
+            Session session = new Session();
+            session.setId(chatDto.getSessionId());
+            session.setUserId(chatDto.getUserId());
+            session.setCreatedAt(chatDto.getCreatedAt());
+            updateSession(chatDto, session);
+            List<Message> messageList = generateMessage(chatDto, session);
+            session.setLastMsgTime(messageList.get(messageList.size() - 1).getSendTime());
+
+            Session touch = new Session();
+            touch.setId(session.getId());
+            touch.setUserId(session.getUserId());
+            touch.setUpdatedAt(session.getUpdatedAt());
+            touch.setLastMsgTime(session.getLastMsgTime());
+            // 先分配ID，缓存与返回给客户端的数据都带有最终的消息ID
+            messageWriteBehind.assignIds(messageList);
+            messageHistoryCache.append(session.getUserId(), session.getId(), messageList);
+            messageWriteBehind.submit(messageList, touch);
+            return generateChatData(chatDto, session, messageList, false);
+        } else {
+            throw new CustomException(500, "当前对话是新对话，无法更新已有对话");
+        }
+    }
+
+    /**
+     * 保存服务重启前中断的回复（由生成日志恢复）
+     * 会话已删除、或最后一条消息不是用户消息（回复已保存过）时跳过
+     *
+     * @return 是否保存
+     */
+    public boolean saveRecoveredReply(Long userId, Long sessionId, String thinking, String content) {
+        Session session = sessionMapper.selectSessionByIds(userId, sessionId);
+        if (Objects.isNull(session) || Objects.equals(session.getIsDeleted(), (byte) 1)) {
+            return false;
+        }
+        messageWriteBehind.flushSession(sessionId);
+        List<Message> lastList = messageMapper.selectPage(userId, sessionId, null, null, 1);
+        if (lastList.isEmpty() || !Objects.equals(lastList.get(0).getRole(), (byte) 1)) {
+            return false;
+        }
+        Message question = lastList.get(0);
+        Message message = new Message();
+        message.setUserId(userId);
+        message.setSessionId(sessionId);
+        message.setRole((byte) 2);
+        message.setThinking(thinking);
+        message.setContent(content);
+        // 文本消息
+        message.setType((byte) 1);
+        message.setTokenCount(ChatUtil.estimateTokens(content));
+        message.setIsDeepThink(question.getIsDeepThink());
+        message.setIsNetworkSearch(question.getIsNetworkSearch());
+        message.setSendTime(DateUtil.now());
+        List<Message> messageList = new ArrayList<>();
+        messageList.add(message);
+
+        Session touch = new Session();
+        touch.setId(sessionId);
+        touch.setUserId(userId);
+        touch.setUpdatedAt(DateUtil.now());
+        touch.setLastMsgTime(message.getSendTime());
+        messageWriteBehind.assignIds(messageList);
+        messageHistoryCache.append(userId, sessionId, messageList);
+        messageWriteBehind.submit(messageList, touch);
+        return true;
+    }
+
+    /**
+     * 增量协议校验：客户端已知的最后一条消息必须是服务端的最后一条消息，否则要求完整重发
+     * 未携带ID（旧客户端、新对话）时直接以服务端历史为准
+     */
+    private void checkLastMsgId(Long lastMsgId, List<Message> historyList) {
+        if (Objects.isNull(lastMsgId)) {
+            return;
+        }
+        Long serverLastMsgId = historyList.isEmpty() ? null : historyList.get(historyList.size() - 1).getId();
+        if (!Objects.equals(serverLastMsgId, lastMsgId)) {
+            throw new CustomException(409, "对话记录已变化，请重新发送完整对话");
+        }
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public int updateSession(Session session) {
         return sessionMapper.updateByPrimaryKey(session);
@@ -211,7 +473,7 @@ public class ChatService {
             message.setContent(msg.getContent());
             message.setType(msg.getType().byteValue());
             message.setFileIds(msg.getFileIds());
-            message.setTokenCount(msg.getContent().length());
+            message.setTokenCount(ChatUtil.estimateTokens(msg.getContent()));
             message.setIsDeepThink(chatDto.getIsDeepThink());
             message.setIsNetworkSearch(chatDto.getIsNetworkSearch());
             message.setSendTime(DateUtil.now());
@@ -243,18 +505,18 @@ public class ChatService {
         result.setRole(message.getRole());
         result.setSendTime(message.getSendTime());
         result.setTokenCount(message.getTokenCount());
+        result.setLastMsgId(message.getId());
         if (updateMsgList) {
-            // 查询出的数据按照时间倒序了，需要从后往前遍历
-            result.setMessageList(new ArrayList<>());
-            int size = messageList.size();
-            for (int i = size - 1; i >= 0; i--) {
-                Message chatMsg = messageList.get(i);
+            // 消息列表按发送时间升序（历史按send_time升序查询，本轮新消息在末尾），保持该顺序构建上下文
+            result.setMessageList(new ArrayList<>(messageList.size()));
+            for (Message chatMsg : messageList) {
                 MsgDto msg = MsgDto.builder()
                         .thinking(chatMsg.getThinking())
                         .content(chatMsg.getContent())
                         .type((int) chatMsg.getType())
                         .role((int) chatMsg.getRole())
                         .fileIds(chatMsg.getFileIds())
+                        .tokenCount(chatMsg.getTokenCount())
                         .build();
                 result.getMessageList().add(msg);
             }
@@ -273,7 +535,7 @@ public class ChatService {
     }
 
     public List<Message> getMessageList(Long userId, Long sessionId) {
-        List<Message> messageList = messageMapper.selectByIds(userId, sessionId);
+        List<Message> messageList = loadMessageHistory(userId, sessionId);
         if (CollectionUtils.isNotEmpty(messageList)) {
             return messageList;
         } else {
@@ -281,6 +543,88 @@ public class ChatService {
         }
     }
 
+    /**
+     * 会话历史消息（按发送时间升序）：缓存未命中时先写入该会话尚在队列中的消息，再查库并缓存
+     */
+    private List<Message> loadMessageHistory(Long userId, Long sessionId) {
+        return loadHistory(userId, sessionId).getMessages();
+    }
+
+    private MessageHistoryCache.SessionHistory loadHistory(Long userId, Long sessionId) {
+        return messageHistoryCache.getHistory(userId, sessionId, () -> {
+            messageWriteBehind.flushSession(sessionId);
+            return messageMapper.selectByIds(userId, sessionId);
+        });
+    }
+
+    /**
+     * 会话游标分页（按最后消息时间倒序）
+     */
+    public CursorPageDto<Session> getSessionPage(Long userId, String cursor, int limit) {
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        // 多查一条判断是否还有下一页
+        List<Session> rows = sessionMapper.selectSessionPage(userId,
+                Objects.isNull(position) ? null : position.getTime(),
+                Objects.isNull(position) ? null : position.getId(),
+                limit + 1);
+        CursorPageDto<Session> page = new CursorPageDto<>();
+        boolean hasMore = rows.size() > limit;
+        List<Session> items = hasMore ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        page.setItems(items);
+        page.setHasMore(hasMore);
+        if (hasMore) {
+            Session last = items.get(items.size() - 1);
+            page.setNextCursor(CursorUtil.encode(last.getLastMsgTime(), last.getId()));
+        }
+        StringBuilder fingerprint = new StringBuilder(items.size() * 64);
+        for (Session session : items) {
+            appendSessionFingerprint(fingerprint, session);
+        }
+        page.setEtag(DigestUtils.md5DigestAsHex(fingerprint.toString().getBytes(StandardCharsets.UTF_8)));
+        return page;
+    }
+
+    /**
+     * 会话消息游标分页（由新到旧翻页，每页内按发送时间升序返回）
+     */
+    public CursorPageDto<Message> getMessagePage(Session session, String cursor, int limit) {
+        Long userId = session.getUserId();
+        Long sessionId = session.getId();
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+        messageWriteBehind.flushSession(sessionId);
+        List<Message> rows = messageMapper.selectPage(userId, sessionId,
+                Objects.isNull(position) ? null : position.getTime(),
+                Objects.isNull(position) ? null : position.getId(),
+                limit + 1);
+        CursorPageDto<Message> page = new CursorPageDto<>();
+        boolean hasMore = rows.size() > limit;
+        List<Message> items = new ArrayList<>(hasMore ? rows.subList(0, limit) : rows);
+        Collections.reverse(items);
+        page.setItems(items);
+        page.setHasMore(hasMore);
+        if (hasMore) {
+            Message oldest = items.get(0);
+            page.setNextCursor(CursorUtil.encode(oldest.getSendTime(), oldest.getId()));
+        }
+        // 消息写入后不再修改，指纹只需会话信息与消息ID
+        StringBuilder fingerprint = new StringBuilder(64 + items.size() * 12);
+        appendSessionFingerprint(fingerprint, session);
+        for (Message message : items) {
+            fingerprint.append(message.getId()).append(',');
+        }
+        page.setEtag(DigestUtils.md5DigestAsHex(fingerprint.toString().getBytes(StandardCharsets.UTF_8)));
+        return page;
+    }
+
+    private static void appendSessionFingerprint(StringBuilder fingerprint, Session session) {
+        fingerprint.append(session.getId()).append('|')
+                .append(session.getSessionTitle()).append('|')
+                .append(session.getIsPinned()).append('|')
+                .append(session.getIsCollected()).append('|')
+                .append(session.getUpdatedAt()).append('|')
+                .append(session.getLastMsgTime()).append('\n');
+    }
+
     public List<Session> getSessionList(Long userId) {
         List<Session> sessionList = sessionMapper.selectSessionByUserId(userId);
         if (Objects.nonNull(sessionList)) {
@@ -291,6 +635,9 @@ public class ChatService {
 
     @Transactional(rollbackFor = Exception.class)
     public boolean deleteSession(Long userId, Long sessionId) {
+        // 先写入队列中的消息，避免删除后再被写入
+        messageWriteBehind.flushSession(sessionId);
+        messageHistoryCache.invalidate(userId, sessionId);
         Session session = getSession(userId, sessionId);
         if (Objects.nonNull(session)) {
             if (sessionMapper.deleteByPrimaryKey(session) >= 1) {
@@ -337,6 +684,8 @@ public class ChatService {
 
     @Transactional(rollbackFor = Exception.class)
     public Boolean pauseMsg(Long userId, Long sessionId) {
+        messageWriteBehind.flushSession(sessionId);
+        messageHistoryCache.invalidate(userId, sessionId);
         List<Message> messageList = messageMapper.selectByIds(userId, sessionId);
         if (CollectionUtils.isNotEmpty(messageList)) {
             int size = messageList.size();
@@ -1,9 +1,19 @@
 package com.xjtu.springboot.service;
 
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.example.ragdemo.entity.FileEntity;
 import com.example.ragdemo.entity.RagEmbedding;
 import com.example.ragdemo.util.DocumentParseUtil;
+import com.xjtu.springboot.component.ThreadPoolManager;
+import com.xjtu.springboot.component.ollama.OllamaBackend;
+import com.xjtu.springboot.component.ollama.OllamaBackendPool;
+import com.xjtu.springboot.config.RagIngestConfig;
+import com.xjtu.springboot.config.ThreadPoolConfig;
+import com.xjtu.springboot.exception.CustomException;
+import com.xjtu.springboot.mapper.RagEmbeddingMapper;
+import com.xjtu.springboot.pojo.RagSegmentHash;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -12,20 +22,48 @@ import dev.langchain4j.model.language.LanguageModel;
 import dev.langchain4j.model.ollama.OllamaLanguageModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.pgvector.DefaultMetadataStorageConfig;
+import dev.langchain4j.store.embedding.pgvector.MetadataStorageMode;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * RAG核心服务：文档入库（解析→分割→向量化→存储）+ 检索增强生成
+ * 入库为流水线：分割后的片段按微批次并行向量化，每个批次完成后立即存储（后续批次仍在向量化）
+ * 阶段之间排队的批次数有上限，同时驻留内存的只有在途批次的向量
+ * 每个片段记录所属文档与内容哈希，重新上传时只向量化新增的片段，删除已消失的片段
+ * 文档标识由用户ID与文档ID（或路径）组成，不同用户的同名文件互不影响
  */
+@Slf4j
 @Service
 public class RagService {
+    // 片段元数据（按列存储在rag_embedding中）
+    private static final String META_FILE_KEY = "file_key";
+    private static final String META_CONTENT_HASH = "content_hash";
+    // 入库流水线线程池（ThreadPoolManager业务标识）
+    private static final String EMBED_POOL = "rag-embed";
+    private static final String STORE_POOL = "rag-store";
+
     // PGSQL配置
     @Value("${spring.datasource.url}")
     private String pgUrl;
@@ -43,18 +81,29 @@ public class RagService {
     private int chunkOverlap;
     @Value("${rag.top-k}")
     private int topK;
+    @Autowired
+    private RagIngestConfig ingestConfig;
+    @Autowired
+    private RagEmbeddingMapper ragEmbeddingMapper;
+    @Autowired
+    private ThreadPoolManager threadPoolManager;
+    @Autowired
+    private ThreadPoolConfig threadPoolConfig;
 
-    // Ollama配置
-    @Value("${ollama.base-url}")
-    private String ollamaBaseUrl;
+    // Ollama配置（与对话共用后端池）
+    @Autowired
+    private OllamaBackendPool ollamaBackendPool;
     @Value("${ollama.model-name}")
     private String ollamaModelName;
 
     // 核心组件
     private EmbeddingModel embeddingModel; // 嵌入模型（BGE中文）
-    private LanguageModel languageModel;   // LLM（Ollama部署的中文模型）
+    private final Map<String, LanguageModel> languageModels = new ConcurrentHashMap<>(); // LLM（按后端地址懒加载）
     private EmbeddingStore<TextSegment> embeddingStore; // 向量存储（PGVector）
 
+    // 入库流水线：在途批次数（排队 + 执行中）上限，向量化/存储在rag-embed/rag-store线程池上执行
+    private Semaphore inflightBatches;
+
     /**
      * 初始化核心组件
      */
@@ -65,12 +114,7 @@ public class RagService {
                 .modelName("bge-base-zh")
                 .build();
 
-        // 2. 初始化本地LLM（Ollama + 通义千问7B）
-        languageModel = OllamaLanguageModel.builder()
-                .baseUrl(ollamaBaseUrl)
-                .modelName(ollamaModelName)
-                .temperature(0.1) // 低温度，回答更精准
-                .build();
+        // 2. 本地LLM（Ollama）按调用时选中的后端懒加载，见languageModel()
 
         // 3. 初始化PGVector向量存储
         embeddingStore = PgVectorEmbeddingStore.builder()
@@ -79,14 +123,35 @@ public class RagService {
                 .password(pgPwd)
                 .tableName("rag_embedding") // 与实体表名一致
                 .dimension(embeddingDimension)
+                .metadataStorageConfig(DefaultMetadataStorageConfig.builder()
+                        .storageMode(MetadataStorageMode.COLUMN_PER_KEY)
+                        .columnDefinitions(List.of(META_FILE_KEY + " varchar(512) not null",
+                                META_CONTENT_HASH + " char(64) null"))
+                        .build())
                 .build();
+
+        // 4. 初始化入库流水线（在途批次受信号量约束，线程池队列容量不小于在途批次上限时不会触发拒绝）
+        int embedParallelism = parallelism(EMBED_POOL);
+        int maxInflight = embedParallelism + Math.max(1, ingestConfig.getQueueCapacity());
+        inflightBatches = new Semaphore(maxInflight);
+        log.info("文档入库流水线：向量化并行度={}，存储并行度={}，批次大小={}，在途批次上限={}",
+                embedParallelism, parallelism(STORE_POOL), ingestConfig.getBatchSize(), maxInflight);
+    }
+
+    private int parallelism(String bizName) {
+        ThreadPoolConfig.PoolConfig config = threadPoolConfig.getConfig(bizName);
+        return Math.max(1, config.isVirtual() ? config.resolveMaxConcurrency() : config.getCoreSize());
     }
 
     /**
      * 步骤1：文档入库（上传→解析→分割→向量化→存储）
+     *
+     * @param userId     文档所属用户
+     * @param documentId 文档ID或路径（同一用户内唯一，重新上传同一文档时保持不变）
      */
-    public String ingestDocument(MultipartFile file) throws Exception {
+    public String ingestDocument(Long userId, String documentId, MultipartFile file) throws Exception {
         // 1. 基础校验
+        String fileKey = fileKey(userId, documentId);
         String fileName = file.getOriginalFilename();
         String fileMd5 = DocumentParseUtil.getFileMd5(file);
         long fileSize = file.getSize();
@@ -103,13 +168,31 @@ public class RagService {
                 .recursiveCharacterSplitter(chunkSize, chunkOverlap)
                 .split(TextSegment.from(content));
 
-        // 4. 向量化（生成嵌入向量）
-        List<Embedding> embeddings = embeddingModel.embedAll(segments.stream()
-                .map(TextSegment::text)
-                .collect(Collectors.toList()));
+        // 4. 与该用户该文档已入库的片段按内容哈希比对（相同内容可能出现多次，按次数匹配）
+        Map<String, ArrayDeque<String>> storedIds = new HashMap<>();
+        for (RagSegmentHash stored : ragEmbeddingMapper.selectHashes(fileKey)) {
+            storedIds.computeIfAbsent(stored.getContentHash(), k -> new ArrayDeque<>()).add(stored.getEmbeddingId());
+        }
+        List<TextSegment> addedSegments = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            String hash = DigestUtil.sha256Hex(segment.text());
+            ArrayDeque<String> ids = storedIds.get(hash);
+            if (ids != null && ids.poll() != null) {
+                continue;
+            }
+            addedSegments.add(TextSegment.from(segment.text(),
+                    Metadata.from(META_FILE_KEY, fileKey).put(META_CONTENT_HASH, hash)));
+        }
+        List<String> vanishedIds = new ArrayList<>();
+        storedIds.values().forEach(vanishedIds::addAll);
 
-        // 5. 存储向量（关联file表）
-        embeddingStore.addAll(segments, embeddings);
+        // 5. 只向量化并存储新增片段（流水线），成功后再删除已消失的片段（失败时旧内容仍可检索）
+        embedAndStore(addedSegments);
+        if (!vanishedIds.isEmpty()) {
+            embeddingStore.removeAll(vanishedIds);
+        }
+        log.info("文档入库：{}（{}），片段数：{}，新增：{}，复用：{}，删除：{}", fileName, fileKey, segments.size(),
+                addedSegments.size(), segments.size() - addedSegments.size(), vanishedIds.size());
 
         // 6. 保存文件基础信息（可选）
         FileEntity fileEntity = new FileEntity();
@@ -119,8 +202,81 @@ public class RagService {
         fileEntity.setFileMd5(fileMd5);
         // fileRepository.save(fileEntity); // 若需要持久化文件信息，注入repository并保存
 
-        return String.format("文档入库成功！文件名：%s，解析内容长度：%d，分割片段数：%d",
-                fileName, content.length(), segments.size());
+        return String.format("文档入库成功！文件名：%s，解析内容长度：%d，分割片段数：%d，新增片段数：%d，删除片段数：%d",
+                fileName, content.length(), segments.size(), addedSegments.size(), vanishedIds.size());
+    }
+
+    /**
+     * 文档标识：用户ID/文档ID
+     */
+    private static String fileKey(Long userId, String documentId) {
+        if (userId == null || userId <= 0 || StrUtil.isBlank(documentId)) {
+            throw new CustomException(400, "文档所属用户或文档标识为空");
+        }
+        String fileKey = userId + "/" + documentId.strip();
+        if (fileKey.length() > 512) {
+            throw new CustomException(400, "文档标识过长");
+        }
+        return fileKey;
+    }
+
+    /**
+     * 按微批次并行向量化，每个批次完成后交给存储阶段
+     * 在途批次达到上限时分割阶段阻塞等待（背压）；任一批次失败后不再提交新批次，等待在途批次结束后抛出
+     */
+    private void embedAndStore(List<TextSegment> segments) throws Exception {
+        int batchSize = Math.max(1, ingestConfig.getBatchSize());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ingestConfig.getTimeoutMs());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < segments.size() && failure.get() == null; from += batchSize) {
+            List<TextSegment> batch = segments.subList(from, Math.min(segments.size(), from + batchSize));
+            if (!inflightBatches.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                failure.compareAndSet(null, new TimeoutException("文档入库超时"));
+                break;
+            }
+            CompletableFuture<Void> future;
+            try {
+                future = threadPoolManager
+                        .supplyAsync(EMBED_POOL, () -> {
+                            if (failure.get() != null) {
+                                throw new CancellationException("入库已失败，跳过剩余批次");
+                            }
+                            return embeddingModel.embedAll(batch).content();
+                        })
+                        .thenCompose(embeddings -> threadPoolManager.runAsync(STORE_POOL,
+                                () -> embeddingStore.addAll(embeddings, batch)));
+            } catch (RuntimeException e) {
+                inflightBatches.release();
+                throw e;
+            }
+            batches.add(future.whenComplete((ignored, ex) -> {
+                inflightBatches.release();
+                if (ex != null) {
+                    failure.compareAndSet(null, ex);
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                    .get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // 失败原因已记录在failure中
+        } catch (TimeoutException e) {
+            failure.compareAndSet(null, e);
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            log.error("文档入库失败，片段数：{}，批次数：{}", segments.size(), batches.size(), cause);
+            throw cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+        }
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
     }
 
     /**
@@ -144,7 +300,35 @@ public class RagService {
         prompt.append("### 问题：\n");
         prompt.append(question);
 
-        // 4. 调用LLM生成回答
-        return languageModel.generate(prompt.toString());
+        // 4. 调用LLM生成回答（每次调用从后端池选择，计入在途请求并参与健康检测）
+        OllamaBackend backend = acquireBackend();
+        Throwable failure = null;
+        try {
+            return languageModel(backend).generate(prompt.toString());
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            ollamaBackendPool.release(backend, failure);
+        }
+    }
+
+    private OllamaBackend acquireBackend() {
+        try {
+            return ollamaBackendPool.acquire(null, null).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CustomException customException) {
+                throw customException;
+            }
+            throw e;
+        }
+    }
+
+    private LanguageModel languageModel(OllamaBackend backend) {
+        return languageModels.computeIfAbsent(backend.getBaseUrl(), baseUrl -> OllamaLanguageModel.builder()
+                .baseUrl(baseUrl)
+                .modelName(ollamaModelName)
+                .temperature(0.1) // 低温度，回答更精准
+                .build());
     }
 }
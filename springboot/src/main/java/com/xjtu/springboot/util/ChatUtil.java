@@ -1,4 +1,59 @@
 package com.xjtu.springboot.util;
 
 public class ChatUtil {
+    // 每条消息的格式开销（角色标记、分隔符）
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    // 连续ASCII字母/数字平均每个token的字符数
+    private static final int ASCII_CHARS_PER_TOKEN = 4;
+
+    /**
+     * 估算文本的token数（按Qwen/Llama类BPE分词器的经验值，单次遍历不分配对象）
+     * 汉字、假名、韩文等每个字符约1个token；连续的英文/数字约4个字符1个token；
+     * 标点和其他符号各算1个token；空白不单独计数
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int asciiRun = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if (Character.isLetterOrDigit(c)) {
+                    asciiRun++;
+                    continue;
+                }
+                tokens += (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+                asciiRun = 0;
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            } else {
+                tokens += (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+                asciiRun = 0;
+                // 代理对（emoji等）只在高位计数一次
+                if (!Character.isLowSurrogate(c) && !Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            }
+        }
+        tokens += (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+        return tokens;
+    }
+
+    /**
+     * 估算一条消息（含格式开销）的token数
+     */
+    public static int estimateMessageTokens(String content) {
+        return estimateTokens(content) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * 一条消息（含格式开销）的token数：优先使用已保存的估算值，没有时再估算
+     */
+    public static int messageTokens(Integer tokenCount, String content) {
+        return (tokenCount != null && tokenCount > 0 ? tokenCount : estimateTokens(content)) + MESSAGE_OVERHEAD_TOKENS;
+    }
 }
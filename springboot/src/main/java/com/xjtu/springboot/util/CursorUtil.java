@@ -0,0 +1,60 @@
+package com.xjtu.springboot.util;
+
+import com.xjtu.springboot.exception.CustomException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 分页游标工具：游标由排序时间与ID组成，编码为URL安全的Base64，对客户端不透明
+ */
+public class CursorUtil {
+    private static final char SEPARATOR = '|';
+
+    /**
+     * 解码后的游标（上一页最后一条记录的排序时间与ID）
+     */
+    public static class Cursor {
+        private final LocalDateTime time;
+        private final Long id;
+
+        public Cursor(LocalDateTime time, Long id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+
+    public static String encode(LocalDateTime time, Long id) {
+        String raw = time.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标（为空返回null，格式错误抛出400）
+     */
+    public static Cursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = raw.lastIndexOf(SEPARATOR);
+            if (index <= 0) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, index)), Long.parseLong(raw.substring(index + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new CustomException(400, "分页游标无效");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.xjtu.springboot.component.generation;
+
+import com.xjtu.springboot.component.cluster.LocalClusterBus;
+import com.xjtu.springboot.config.GenerationConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerationRegistryTest {
+    private GenerationRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new GenerationRegistry(new GenerationConfig(), new SimpleMeterRegistry(), new LocalClusterBus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+    }
+
+    @Test
+    void supersededGenerationDoesNotOwnSessionOnFinish() {
+        Generation first = registry.create(1L, 10L);
+        Generation second = registry.create(1L, 10L);
+
+        assertTrue(first.isCancelled());
+        assertEquals(GenerationRegistry.REASON_SUPERSEDED, first.getCancelReason());
+        assertSame(second, registry.getActive(1L, 10L));
+        // 旧生成结束时会话已归新生成所有
+        assertFalse(registry.finish(first));
+        assertSame(second, registry.getActive(1L, 10L));
+        assertTrue(registry.finish(second));
+        assertNull(registry.getActive(1L, 10L));
+    }
+
+    @Test
+    void cancelledGenerationNoLongerAccessesHolder() {
+        Generation generation = registry.create(1L, 10L);
+        assertEquals("written", generation.accessHolder(() -> "written"));
+        registry.create(1L, 10L);
+        AtomicBoolean ran = new AtomicBoolean();
+        assertNull(generation.accessHolder(() -> {
+            ran.set(true);
+            return "late";
+        }));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void cancelWaitsForInFlightHolderAccess() throws Exception {
+        Generation generation = registry.create(1L, 10L);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> writer = CompletableFuture.supplyAsync(() -> generation.accessHolder(() -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Generation> superseding = CompletableFuture.supplyAsync(() -> registry.create(1L, 10L));
+        // 旧生成的暂存写入未结束前，新生成不能完成创建（之后才会重新初始化暂存）
+        Thread.sleep(100);
+        assertFalse(superseding.isDone());
+        release.countDown();
+        assertEquals("done", writer.get(5, TimeUnit.SECONDS));
+        assertNotNull(superseding.get(5, TimeUnit.SECONDS));
+        assertTrue(generation.isCancelled());
+    }
+
+    @Test
+    void stalledSubscriberDoesNotBlockPublish() throws Exception {
+        Generation generation = registry.create(1L, 10L);
+        CountDownLatch stall = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(stall);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        generation.attach(slow, frame("header"), 0);
+        generation.attach(fast, frame("header"), 0);
+
+        // 慢连接阻塞在发送上时，写入日志与其他连接不受影响
+        CompletableFuture<Void> publisher = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(generation.publish(frame("chunk-" + i)));
+            }
+            generation.finish();
+        });
+        publisher.get(5, TimeUnit.SECONDS);
+        assertTrue(fast.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(101, fast.frames.size());
+
+        stall.countDown();
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(101, slow.frames.size());
+        assertTrue(slow.frames.get(100).startsWith("id:100\n"));
+    }
+
+    @Test
+    void logBudgetReclaimsFinishedGenerationsFirst() {
+        GenerationConfig config = new GenerationConfig();
+        config.setMaxLogBytes(4096);
+        GenerationRegistry limited = new GenerationRegistry(config, new SimpleMeterRegistry(), new LocalClusterBus());
+        try {
+            byte[] chunk = new byte[1000];
+            Generation finished = limited.create(1L, 10L);
+            assertTrue(finished.publish(chunk));
+            assertTrue(finished.publish(chunk));
+            limited.finish(finished);
+
+            Generation running = limited.create(1L, 11L);
+            assertTrue(running.publish(chunk));
+            assertTrue(running.publish(chunk));
+            // 预算不足时清理已结束的生成
+            assertTrue(running.publish(chunk));
+            assertNull(limited.get(finished.getId()));
+            assertEquals(0, finished.getLogBytes());
+            assertTrue(running.publish(chunk));
+            // 进行中的生成本身超出预算时写入失败，结束事件仍可写入
+            assertFalse(running.publish(chunk));
+            running.publishFinal(chunk);
+            assertEquals(5, running.getLastEventId());
+        } finally {
+            limited.destroy();
+        }
+    }
+
+    private static byte[] frame(String text) {
+        return ("data:" + text + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录收到的帧；stall不为null时第一次发送阻塞到放行
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final CountDownLatch stall;
+        private final List<String> frames = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch stall) {
+            this.stall = stall;
+        }
+
+        @Override
+        public void send(Set<DataWithMediaType> items) {
+            if (stall != null) {
+                try {
+                    stall.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (DataWithMediaType item : items) {
+                frames.add(new String((byte[]) item.getData(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+}
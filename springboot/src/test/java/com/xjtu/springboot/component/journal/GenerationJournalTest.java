@@ -0,0 +1,138 @@
+package com.xjtu.springboot.component.journal;
+
+import com.xjtu.springboot.config.JournalConfig;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerationJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRecoversOnlyUnfinishedRepliesAcrossSegments() throws Exception {
+        GenerationJournal journal = journal(512);
+        journal.init(1L, 10L);
+        journal.init(1L, 11L);
+        journal.init(2L, 20L);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            String token = "token-" + i + ";";
+            journal.append(1L, 10L, token, false);
+            expected.append(token);
+            // 其他会话的记录穿插写入，分段多次滚动
+            journal.append(1L, 11L, "other", false);
+            journal.append(2L, 20L, "user2", false);
+        }
+        journal.append(1L, 10L, "思考", true);
+        journal.clear(1L, 11L);
+        journal.clearAll(2L);
+        journal.destroy();
+
+        GenerationJournal restarted = journal(512);
+        List<RecoveredReply> recovered = restarted.getRecovered();
+        assertEquals(1, recovered.size());
+        RecoveredReply reply = recovered.get(0);
+        assertEquals(1L, reply.getUserId());
+        assertEquals(10L, reply.getSessionId());
+        assertEquals(expected.toString(), reply.getContent().toString());
+        assertEquals("思考", reply.getThinking().toString());
+        assertTrue(reply.getLastActiveTime() > 0);
+
+        // 处理完后删除上次运行的分段，只剩本次运行的分段
+        restarted.completeRecovery();
+        assertTrue(restarted.getRecovered().isEmpty());
+        assertEquals(1, segmentCount());
+        restarted.destroy();
+        assertTrue(journal(512).getRecovered().isEmpty());
+    }
+
+    @Test
+    void unfinishedRecoveryKeepsSegmentsAndSkipsSavedReplies() throws Exception {
+        GenerationJournal journal = journal(512);
+        journal.init(1L, 10L);
+        journal.init(1L, 11L);
+        journal.append(1L, 10L, "saved", false);
+        journal.append(1L, 11L, "failed", false);
+        journal.destroy();
+
+        // 第一个回复已写库（记清除记录），第二个写库失败：不调用completeRecovery
+        GenerationJournal restarted = journal(512);
+        assertEquals(2, restarted.getRecovered().size());
+        restarted.clear(1L, 10L);
+        // 本次运行继续写入，分段多次滚动也不能删掉清除记录所在的分段
+        for (long i = 0; i < 40; i++) {
+            restarted.init(2L, 20L + i);
+            restarted.append(2L, 20L + i, "token-" + i, false);
+            restarted.clear(2L, 20L + i);
+        }
+        restarted.destroy();
+
+        List<RecoveredReply> recovered = journal(512).getRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals(11L, recovered.get(0).getSessionId());
+        assertEquals("failed", recovered.get(0).getContent().toString());
+    }
+
+    @Test
+    void replayStopsAtTornRecord() throws Exception {
+        GenerationJournal journal = journal(64 * 1024);
+        journal.init(1L, 10L);
+        journal.append(1L, 10L, "complete", false);
+        journal.append(1L, 10L, "TORN-TAIL", false);
+        journal.destroy();
+
+        // 模拟最后一条记录只写了一半：破坏其内容使校验失败
+        try (Stream<Path> files = Files.list(dir)) {
+            Path segment = files.findFirst().orElseThrow();
+            byte[] bytes = Files.readAllBytes(segment);
+            int index = indexOf(bytes, "TORN-TAIL".getBytes(StandardCharsets.UTF_8));
+            assertTrue(index > 0);
+            bytes[index] ^= 0x7F;
+            Files.write(segment, bytes);
+        }
+
+        List<RecoveredReply> recovered = journal(64 * 1024).getRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals("complete", recovered.get(0).getContent().toString());
+    }
+
+    private GenerationJournal journal(int segmentBytes) {
+        JournalConfig config = new JournalConfig();
+        config.setEnabled(true);
+        config.setDir(dir.toString());
+        config.setSegmentBytes(segmentBytes);
+        config.setFlushIntervalMs(1000);
+        GenerationJournal journal = new GenerationJournal(config, new MessageHolderConfig(), new SimpleMeterRegistry());
+        journal.init();
+        return journal;
+    }
+
+    private long segmentCount() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
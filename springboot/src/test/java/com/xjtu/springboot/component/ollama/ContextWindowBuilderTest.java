@@ -0,0 +1,105 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.config.ChatContextConfig;
+import com.xjtu.springboot.dto.chat.ChatDto;
+import com.xjtu.springboot.dto.chat.MsgDto;
+import com.xjtu.springboot.pojo.Message;
+import com.xjtu.springboot.pojo.Session;
+import com.xjtu.springboot.pojo.common.MsgType;
+import com.xjtu.springboot.pojo.common.Role;
+import com.xjtu.springboot.pojo.model.RequestMessage;
+import com.xjtu.springboot.service.ChatService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextWindowBuilderTest {
+    private ChatContextConfig config;
+    private ContextWindowBuilder builder;
+
+    @BeforeEach
+    void setUp() {
+        config = new ChatContextConfig();
+        config.setPromptBudgetTokens(200);
+        builder = new ContextWindowBuilder(config);
+    }
+
+    @Test
+    void keepsNewestTurnsAndSummarizesOldest() {
+        List<MsgDto> messageList = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            messageList.add(msg(Role.USER, "question-" + i + " " + "q".repeat(200)));
+            messageList.add(msg(Role.ASSISTANT, "answer-" + i + " " + "a".repeat(200)));
+        }
+        messageList.add(msg(Role.USER, "latest question"));
+
+        ContextWindowBuilder.ContextWindow window = builder.build(messageList);
+
+        List<RequestMessage> messages = window.getMessages();
+        assertTrue(window.getTrimmedCount() > 0);
+        assertEquals("latest question", messages.get(messages.size() - 1).getContent());
+        assertEquals(Role.SYSTEM.getName(), messages.get(0).getRole());
+        assertTrue(messages.get(0).getContent().contains("question-0"));
+        for (RequestMessage message : messages.subList(1, messages.size())) {
+            assertFalse(message.getContent().startsWith("question-0"));
+        }
+    }
+
+    @Test
+    void runningTokenCountWithinBudgetKeepsEveryMessage() {
+        List<MsgDto> messageList = new ArrayList<>();
+        messageList.add(msg(Role.USER, "q".repeat(2000)));
+        messageList.add(msg(Role.ASSISTANT, "answer"));
+        messageList.add(msg(Role.USER, "latest question"));
+
+        ContextWindowBuilder.ContextWindow window = builder.build(messageList, 120L);
+
+        assertEquals(0, window.getTrimmedCount());
+        assertEquals(3, window.getMessages().size());
+        assertEquals(120, window.getPromptTokens());
+        // 累计值超出预算时按条裁剪
+        assertTrue(builder.build(messageList, 5000L).getTrimmedCount() > 0);
+    }
+
+    @Test
+    void chatDataFromStoredHistoryKeepsLatestQuestion() {
+        // 历史按send_time升序查询，本轮新消息追加在末尾
+        List<Message> messageList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            messageList.add(message(Role.USER, "question-" + i + " " + "q".repeat(300)));
+            messageList.add(message(Role.ASSISTANT, "answer-" + i + " " + "a".repeat(300)));
+        }
+        messageList.add(message(Role.USER, "latest question"));
+        Session session = new Session();
+        session.setId(10L);
+        session.setUserId(1L);
+
+        ChatService chatService = new ChatService(null, null, null, null, null, null, null, null, null, null);
+        ChatDto chatData = chatService.generateChatData(new ChatDto(), session, messageList, true);
+
+        assertEquals("question-0", chatData.getMessageList().get(0).getContent().substring(0, 10));
+        List<RequestMessage> messages = builder.build(chatData.getMessageList()).getMessages();
+        assertEquals("latest question", messages.get(messages.size() - 1).getContent());
+        assertEquals(Role.USER.getName(), messages.get(messages.size() - 1).getRole());
+    }
+
+    private static MsgDto msg(Role role, String content) {
+        return MsgDto.builder()
+                .content(content)
+                .type(MsgType.TEXT.getType())
+                .role(role.getRole())
+                .build();
+    }
+
+    private static Message message(Role role, String content) {
+        Message message = new Message();
+        message.setRole(role.getRole().byteValue());
+        message.setType(MsgType.TEXT.getType().byteValue());
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,150 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.xjtu.springboot.config.ChatSchedulerConfig;
+import com.xjtu.springboot.config.OllamaConfig;
+import com.xjtu.springboot.exception.CustomException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairChatSchedulerTest {
+    private ChatSchedulerConfig config;
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, CompletableFuture<Void>> upstreams = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        config = new ChatSchedulerConfig();
+        config.setMaxConcurrency(1);
+        config.setUserWeight(1);
+        config.setUserMaxConcurrent(1);
+        config.setUserMaxQueued(4);
+    }
+
+    @Test
+    void drrInterleavesUsersInsteadOfDrainingOneQueue() {
+        FairChatScheduler scheduler = scheduler();
+        scheduler.submit(1L, true, starter("a1"));
+        scheduler.submit(1L, true, starter("a2"));
+        scheduler.submit(1L, true, starter("a3"));
+        scheduler.submit(2L, true, starter("b1"));
+        assertEquals(List.of("a1"), started);
+
+        finish("a1");
+        finish("a2");
+        finish("b1");
+        finish("a3");
+        // 用户1先排了三个请求，用户2的请求仍在用户1的第二个之后立即得到执行
+        assertEquals(List.of("a1", "a2", "b1", "a3"), started);
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void loginUsersGetWeightedShareOverAnonymous() {
+        config.setMaxConcurrency(1);
+        config.setUserWeight(2);
+        config.setUserMaxConcurrent(2);
+        config.setAnonymousWeight(1);
+        FairChatScheduler scheduler = scheduler();
+        scheduler.submit(null, false, starter("x0"));
+        for (int i = 1; i <= 3; i++) {
+            scheduler.submit(null, false, starter("x" + i));
+        }
+        for (int i = 1; i <= 3; i++) {
+            scheduler.submit(1L, true, starter("u" + i));
+        }
+        for (String name : List.of("x0", "x1", "u1", "u2", "x2", "u3", "x3")) {
+            finish(name);
+        }
+        // 每轮登录用户发起2个，未登录用户1个
+        assertEquals(List.of("x0", "x1", "u1", "u2", "x2", "u3", "x3"), started);
+    }
+
+    @Test
+    void overQueuedUserIsRejectedAndCancelledTicketLeavesQueue() {
+        config.setUserMaxQueued(1);
+        FairChatScheduler scheduler = scheduler();
+        CompletableFuture<Void> running = scheduler.submit(1L, true, starter("a1"));
+        CompletableFuture<Void> queued = scheduler.submit(1L, true, starter("a2"));
+        CompletableFuture<Void> rejected = scheduler.submit(1L, true, starter("a3"));
+        CompletionException ex = assertThrows(CompletionException.class, rejected::join);
+        assertEquals(429, ((CustomException) ex.getCause()).getCode().intValue());
+
+        // 排队中取消：不会再发起，名额留给后来的请求
+        queued.cancel(true);
+        scheduler.submit(1L, true, starter("a4"));
+        finish("a1");
+        assertTrue(running.isDone());
+        assertEquals(List.of("a1", "a4"), started);
+        finish("a4");
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void cancellingRunningRequestCancelsUpstreamAndStartsNext() {
+        FairChatScheduler scheduler = scheduler();
+        CompletableFuture<Void> running = scheduler.submit(1L, true, starter("a1"));
+        scheduler.submit(2L, true, starter("b1"));
+        assertEquals(List.of("a1"), started);
+
+        // 进行中取消：取消上游请求，名额立即交给排队的请求
+        running.cancel(true);
+        assertTrue(upstreams.get("a1").isCancelled());
+        assertEquals(List.of("a1", "b1"), started);
+        assertEquals(1, scheduler.getRunning());
+        finish("b1");
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void anonymousRequestsShareOneQueueLimit() {
+        config.setAnonymousMaxConcurrent(1);
+        config.setAnonymousMaxQueued(1);
+        FairChatScheduler scheduler = scheduler();
+        scheduler.submit(null, false, starter("x1"));
+        scheduler.submit(5L, false, starter("x2"));
+        // 未登录用户无论userId如何都计入同一个队列
+        CompletableFuture<Void> rejected = scheduler.submit(6L, false, starter("x3"));
+        CompletionException ex = assertThrows(CompletionException.class, rejected::join);
+        assertEquals(429, ((CustomException) ex.getCause()).getCode().intValue());
+
+        // 登录用户不受未登录队列上限影响
+        scheduler.submit(5L, true, starter("u1"));
+        finish("x1");
+        assertEquals(List.of("x1", "x2"), started);
+        finish("x2");
+        assertEquals(List.of("x1", "x2", "u1"), started);
+        finish("u1");
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    private FairChatScheduler scheduler() {
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        return new FairChatScheduler(config, new OllamaBackendPool(ollamaConfig), new SimpleMeterRegistry());
+    }
+
+    private Supplier<CompletableFuture<Void>> starter(String name) {
+        return () -> {
+            started.add(name);
+            CompletableFuture<Void> upstream = new CompletableFuture<>();
+            upstreams.put(name, upstream);
+            return upstream;
+        };
+    }
+
+    private void finish(String name) {
+        CompletableFuture<Void> upstream = upstreams.get(name);
+        assertNotNull(upstream);
+        upstream.complete(null);
+    }
+}
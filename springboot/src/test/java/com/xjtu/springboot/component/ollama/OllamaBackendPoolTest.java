@@ -0,0 +1,199 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xjtu.springboot.config.OllamaConfig;
+import com.xjtu.springboot.exception.CustomException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OllamaBackendPoolTest {
+    private static final String NDJSON = "{\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"done\":false}\n"
+            + "{\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true}\n";
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<AtomicInteger> hits = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    void routesToLeastOutstandingBackendAndStreamsNdjson() throws Exception {
+        OllamaBackendPool pool = new OllamaBackendPool(config(2, 2, startServer(), startServer()));
+        OllamaBackend first = pool.acquire(null, null).get();
+        OllamaBackend second = pool.acquire(null, null).get();
+        assertNotSame(first, second);
+
+        // 第三个请求落在在途请求最少的后端（先释放的那台）
+        pool.release(first, null);
+        OllamaBackend third = pool.acquire(null, null).get();
+        assertSame(first, third);
+
+        HttpResponse<String> response = send(pool, third);
+        pool.release(third, null);
+        assertEquals(200, response.statusCode());
+        assertEquals(NDJSON, response.body());
+        assertEquals(1, hits.get(pool.getBackends().indexOf(third)).get());
+        pool.release(second, null);
+        assertEquals(0, first.getOutstanding() + second.getOutstanding());
+    }
+
+    @Test
+    void affinityKeyStaysOnBackendUntilLoadGapExceedsSlack() throws Exception {
+        OllamaBackendPool pool = new OllamaBackendPool(config(4, 1, startServer(), startServer()));
+        OllamaBackend pinned = pool.acquire(42L, null).get();
+        pool.release(pinned, null);
+        for (int i = 0; i < 5; i++) {
+            OllamaBackend backend = pool.acquire(42L, null).get();
+            assertSame(pinned, backend);
+            pool.release(backend, null);
+        }
+
+        // 亲和后端比最空闲后端多出的在途请求超过slack后改选
+        OllamaBackend held1 = pool.acquire(42L, null).get();
+        OllamaBackend held2 = pool.acquire(42L, null).get();
+        assertSame(pinned, held1);
+        assertSame(pinned, held2);
+        OllamaBackend moved = pool.acquire(42L, null).get();
+        assertNotSame(pinned, moved);
+        pool.release(held1, null);
+        pool.release(held2, null);
+        pool.release(moved, null);
+    }
+
+    @Test
+    void connectFailureEjectsBackendUntilCooldown() throws Exception {
+        String down = startServer();
+        String up = startServer();
+        // 停掉第一台，请求会连接失败
+        servers.get(0).stop(0);
+        OllamaConfig config = config(4, 0, down, up);
+        config.setUnhealthyCooldownMs(300);
+        OllamaBackendPool pool = new OllamaBackendPool(config);
+        OllamaBackend downBackend = pool.getBackends().get(0);
+        OllamaBackend upBackend = pool.getBackends().get(1);
+
+        assertTrue(downBackend.tryAcquire());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> sendAsync(pool, downBackend).get());
+        assertTrue(pool.isConnectFailure(failure));
+        pool.release(downBackend, failure);
+
+        // 摘除期间即使另一台更忙也不会选中
+        List<OllamaBackend> held = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OllamaBackend backend = pool.acquire(null, null).get();
+            assertSame(upBackend, backend);
+            held.add(backend);
+        }
+        assertEquals(200, send(pool, held.get(0)).statusCode());
+
+        // 冷却结束后重新参与路由
+        Thread.sleep(400);
+        OllamaBackend recovered = pool.acquire(null, null).get();
+        assertSame(downBackend, recovered);
+        pool.release(recovered, null);
+        held.forEach(backend -> pool.release(backend, null));
+    }
+
+    @Test
+    void fullBackendsQueueUntilReleaseOrTimeout() throws Exception {
+        OllamaConfig config = config(1, 0, startServer());
+        config.setAcquireTimeoutMs(200);
+        OllamaBackendPool pool = new OllamaBackendPool(config);
+        OllamaBackend backend = pool.acquire(null, null).get();
+
+        // 满载时排队而不是立即503，释放后按顺序分配
+        CompletableFuture<OllamaBackend> waiting = pool.acquire(null, null);
+        assertFalse(waiting.isDone());
+        assertEquals(1, pool.getWaiting());
+        pool.release(backend, null);
+        assertSame(backend, waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(0, pool.getWaiting());
+
+        // 取消的请求出队，不占用名额
+        CompletableFuture<OllamaBackend> cancelled = pool.acquire(null, null);
+        cancelled.cancel(true);
+        assertEquals(0, pool.getWaiting());
+
+        // 超时后以503失败
+        CompletableFuture<OllamaBackend> timedOut = pool.acquire(null, null);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> timedOut.get(2, TimeUnit.SECONDS));
+        assertEquals(503, ((CustomException) ex.getCause()).getCode().intValue());
+        assertEquals(0, pool.getWaiting());
+
+        pool.release(backend, null);
+        assertEquals(0, backend.getOutstanding());
+    }
+
+    @Test
+    void allBackendsExcludedFailsWithoutQueueing() {
+        OllamaBackendPool pool = new OllamaBackendPool(config(1, 0, "http://127.0.0.1:1"));
+        CompletableFuture<OllamaBackend> future = pool.acquire(null, pool.getBackends());
+        CompletionException ex = assertThrows(CompletionException.class, future::join);
+        assertEquals(503, ((CustomException) ex.getCause()).getCode().intValue());
+        assertEquals(0, pool.getWaiting());
+    }
+
+    private String startServer() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        AtomicInteger count = new AtomicInteger();
+        server.createContext("/api/chat", exchange -> {
+            count.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = NDJSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        hits.add(count);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static OllamaConfig config(int maxConcurrency, int affinitySlack, String... urls) {
+        OllamaConfig config = new OllamaConfig();
+        List<OllamaConfig.Backend> backends = new ArrayList<>();
+        for (String url : urls) {
+            OllamaConfig.Backend backend = new OllamaConfig.Backend();
+            backend.setUrl(url);
+            backend.setMaxConcurrency(maxConcurrency);
+            backends.add(backend);
+        }
+        config.setBackends(backends);
+        config.setConnectTimeoutMs(1000);
+        config.setAffinitySlack(affinitySlack);
+        return config;
+    }
+
+    private static HttpResponse<String> send(OllamaBackendPool pool, OllamaBackend backend) throws Exception {
+        return sendAsync(pool, backend).get(5, TimeUnit.SECONDS);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> sendAsync(OllamaBackendPool pool, OllamaBackend backend) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(backend.getChatUri())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"model\":\"qwen3:8b\",\"stream\":true}"))
+                .build();
+        return pool.getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,111 @@
+package com.xjtu.springboot.component.ollama;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.xjtu.springboot.dto.model.ResponseDto;
+import com.xjtu.springboot.exception.CustomException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OllamaStreamDecoderTest {
+    private static final String DONE_FRAME = "{\"model\":\"qwen3:8b\",\"created_at\":\"2025-01-01T00:00:02Z\","
+            + "\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true,\"done_reason\":\"stop\","
+            + "\"total_duration\":5000000000,\"load_duration\":1000,\"prompt_eval_count\":26,"
+            + "\"prompt_eval_duration\":2000,\"eval_count\":298,\"eval_duration\":4000000000}";
+
+    private final List<String> tokens = new ArrayList<>();
+    private final List<ResponseDto> doneFrames = new ArrayList<>();
+    private final ChatStreamListener listener = new ChatStreamListener() {
+        @Override
+        public void onToken(String text, boolean thinking) {
+            tokens.add((thinking ? "T:" : "C:") + text);
+        }
+
+        @Override
+        public void onDone(ResponseDto doneFrame) {
+            doneFrames.add(doneFrame);
+        }
+    };
+
+    @Test
+    void tokensSplitAcrossBuffersMidFieldAndMidCharacter() throws Exception {
+        String ndjson = "{\"model\":\"qwen3:8b\",\"message\":{\"role\":\"assistant\",\"content\":\"\",\"thinking\":\"思考中\"},\"done\":false}\n"
+                + "{\"model\":\"qwen3:8b\",\"message\":{\"role\":\"assistant\",\"content\":\"你好😀\"},\"done\":false}\n"
+                + DONE_FRAME + "\n";
+        byte[] bytes = ndjson.getBytes(StandardCharsets.UTF_8);
+        // 逐字节投递：每个字段名、数值和多字节UTF-8字符（含4字节的表情）都会被切开
+        OllamaStreamDecoder decoder = decoder();
+        for (byte b : bytes) {
+            decoder.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+        decoder.endOfInput();
+        assertEquals(List.of("T:思考中", "C:你好😀"), tokens);
+        assertEquals(1, doneFrames.size());
+
+        // 在“你”的第二个字节处切成两段
+        tokens.clear();
+        doneFrames.clear();
+        int split = ndjson.substring(0, ndjson.indexOf("你好")).getBytes(StandardCharsets.UTF_8).length + 1;
+        decoder = decoder();
+        decoder.feed(ByteBuffer.wrap(bytes, 0, split));
+        decoder.feed(ByteBuffer.wrap(bytes, split, bytes.length - split));
+        decoder.endOfInput();
+        assertEquals(List.of("T:思考中", "C:你好😀"), tokens);
+        assertEquals(1, doneFrames.size());
+    }
+
+    @Test
+    void lastFrameWithoutTrailingNewlineIsDelivered() throws Exception {
+        OllamaStreamDecoder decoder = decoder();
+        decoder.feed(utf8("{\"message\":{\"role\":\"assistant\",\"content\":\"最后\"},\"done\":false}\n" + DONE_FRAME));
+        decoder.endOfInput();
+        assertEquals(List.of("C:最后"), tokens);
+        assertEquals(1, doneFrames.size());
+    }
+
+    @Test
+    void doneFrameCarriesCounters() throws Exception {
+        OllamaStreamDecoder decoder = decoder();
+        decoder.feed(utf8(DONE_FRAME + "\n"));
+        decoder.endOfInput();
+        assertTrue(tokens.isEmpty());
+        assertEquals(1, doneFrames.size());
+        ResponseDto done = doneFrames.get(0);
+        assertEquals("qwen3:8b", done.getModel());
+        assertEquals("2025-01-01T00:00:02Z", done.getCreatedAt());
+        assertTrue(done.getDone());
+        assertEquals("stop", done.getDoneReason());
+        assertEquals("", done.getMessage().getContent());
+        assertEquals(5000000000L, done.getTotalDuration().longValue());
+        assertEquals(1000L, done.getLoadDuration().longValue());
+        assertEquals(26L, done.getPromptEvalCount().longValue());
+        assertEquals(2000L, done.getPromptEvalDuration().longValue());
+        assertEquals(298L, done.getEvalCount().longValue());
+        assertEquals(4000000000L, done.getEvalDuration().longValue());
+    }
+
+    @Test
+    void errorFrameFailsWithServiceUnavailable() throws Exception {
+        OllamaStreamDecoder decoder = decoder();
+        decoder.feed(utf8("{\"message\":{\"role\":\"assistant\",\"content\":\"部分\"},\"done\":false}\n"));
+        CustomException ex = assertThrows(CustomException.class,
+                () -> decoder.feed(utf8("{\"error\":\"model 'qwen3:8b' not found\"}\n")));
+        assertEquals(503, ex.getCode().intValue());
+        assertTrue(ex.getMsg().contains("not found"));
+        assertEquals(List.of("C:部分"), tokens);
+        assertTrue(doneFrames.isEmpty());
+    }
+
+    private OllamaStreamDecoder decoder() throws Exception {
+        return new OllamaStreamDecoder(new JsonFactory(), listener);
+    }
+
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
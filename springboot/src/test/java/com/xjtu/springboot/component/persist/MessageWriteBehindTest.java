@@ -0,0 +1,176 @@
+package com.xjtu.springboot.component.persist;
+
+import com.xjtu.springboot.config.WriteBehindConfig;
+import com.xjtu.springboot.mapper.MessageMapper;
+import com.xjtu.springboot.mapper.SessionMapper;
+import com.xjtu.springboot.pojo.Message;
+import com.xjtu.springboot.pojo.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageWriteBehindTest {
+    @TempDir
+    Path tempDir;
+
+    // 插入时抛出外键异常的会话
+    private final Set<Long> failingSessions = new HashSet<>();
+    // 数据库中存在的会话
+    private final Set<Long> existingSessions = new HashSet<>();
+    private int insertCalls = 0;
+    private MessageWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        WriteBehindConfig config = new WriteBehindConfig();
+        config.setMaxRetries(2);
+        config.setFallbackDir(tempDir.toString());
+        writeBehind = new MessageWriteBehind(messageMapper(), sessionMapper(), new NoopTransactionManager(), config);
+    }
+
+    @Test
+    void writesAllSessionsInOneBatch() {
+        submit(1L);
+        submit(2L);
+        writeBehind.flush();
+        assertEquals(1, insertCalls);
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void dropsRowsOfDeletedSessionWithoutBlockingOthers() throws Exception {
+        existingSessions.add(1L);
+        failingSessions.add(2L);
+        submit(1L);
+        submit(2L);
+
+        writeBehind.flush();
+        writeBehind.flushSession(1L);
+        writeBehind.flushSession(2L);
+        assertEquals(0, writeBehind.getPendingCount());
+        assertEquals(1, deadLetterFiles());
+
+        // 之后的写入不再受影响
+        submit(1L);
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void capsRetriesForFailingSession() throws Exception {
+        existingSessions.add(1L);
+        existingSessions.add(2L);
+        failingSessions.add(2L);
+        submit(1L);
+        submit(2L);
+
+        assertThrows(IllegalStateException.class, () -> writeBehind.flushSession(2L));
+        assertEquals(1, writeBehind.getPendingCount());
+        assertEquals(0, deadLetterFiles());
+
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getPendingCount());
+        assertEquals(1, deadLetterFiles());
+    }
+
+    @Test
+    void notifiesDiscardListenerForDroppedAndDeadLetteredSessions() {
+        List<Long> discarded = new ArrayList<>();
+        writeBehind.setDiscardListener((userId, sessionId) -> {
+            assertEquals(7L, userId.longValue());
+            discarded.add(sessionId);
+        });
+        existingSessions.add(1L);
+        existingSessions.add(3L);
+        failingSessions.add(2L);
+        failingSessions.add(3L);
+        submit(1L);
+        submit(2L);
+        submit(3L);
+
+        // 会话2已删除：立即丢弃；会话3存在：重试达到上限后转入死信
+        assertThrows(IllegalStateException.class, writeBehind::flush);
+        assertEquals(List.of(2L), discarded);
+        writeBehind.flush();
+        assertEquals(List.of(2L, 3L), discarded);
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    private void submit(Long sessionId) {
+        Message message = new Message();
+        message.setUserId(7L);
+        message.setSessionId(sessionId);
+        message.setContent("reply-" + sessionId);
+        List<Message> messages = new ArrayList<>();
+        messages.add(message);
+        Session touch = new Session();
+        touch.setId(sessionId);
+        touch.setUserId(7L);
+        // 未调用init（不启动定时写入），数据留在队列中
+        writeBehind.submit(messages, touch);
+    }
+
+    private long deadLetterFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("dead-")).count();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private MessageMapper messageMapper() {
+        return (MessageMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MessageMapper.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "nextIds" -> LongStream.rangeClosed(1, (int) args[0]).boxed().toList();
+                    case "insertBatch" -> {
+                        insertCalls++;
+                        List<Message> rows = (List<Message>) args[0];
+                        if (rows.stream().anyMatch(m -> failingSessions.contains(m.getSessionId()))) {
+                            throw new DataIntegrityViolationException("fk violation");
+                        }
+                        yield rows.size();
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private SessionMapper sessionMapper() {
+        return (SessionMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SessionMapper.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "touchBatch" -> ((List<?>) args[0]).size();
+                    case "selectSessionByIds" -> existingSessions.contains((Long) args[1]) ? new Session() : null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static class NoopTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
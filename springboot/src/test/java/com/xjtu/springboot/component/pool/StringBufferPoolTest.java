@@ -0,0 +1,70 @@
+package com.xjtu.springboot.component.pool;
+
+import com.xjtu.springboot.component.storage.MemoryBudget;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringBufferPoolTest {
+    private SimpleMeterRegistry meterRegistry;
+    private StringBufferPool pool;
+
+    @BeforeEach
+    void setUp() {
+        MessageHolderConfig config = new MessageHolderConfig();
+        config.setBufferPoolSize(0);
+        config.setBufferInitialCapacity(64);
+        config.setBufferSizeClasses(4);
+        meterRegistry = new SimpleMeterRegistry();
+        pool = new StringBufferPool(config, meterRegistry);
+        pool.initPool();
+    }
+
+    @Test
+    void segmentRecycledOnAnotherThreadIsReused() throws Exception {
+        char[] segment = CompletableFuture.supplyAsync(() -> pool.borrowSegment(2)).get();
+        CompletableFuture.runAsync(() -> pool.recycleSegment(segment)).get();
+        assertEquals(segment.length * 2L, pool.getResidentBytes());
+
+        assertSame(segment, pool.borrowSegment(2));
+        assertEquals(0, pool.getResidentBytes());
+        assertEquals(1.0, meterRegistry.counter("message.holder.pool.hit").count());
+    }
+
+    @Test
+    void residentSegmentsCountAgainstBudget() {
+        MemoryBudget budget = new MemoryBudget(1024);
+        pool.attachBudget(budget);
+        char[] small = pool.borrowSegment(0);
+        char[] large = pool.borrowSegment(3);
+
+        pool.recycleSegment(small);
+        assertEquals(128, budget.getUsedBytes());
+        // 剩余预算不足时直接丢弃
+        pool.recycleSegment(large);
+        assertEquals(128, pool.getResidentBytes());
+        assertEquals(1.0, meterRegistry.counter("message.holder.pool.drop").count());
+
+        pool.borrowSegment(0);
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void trimReleasesBudget() {
+        MemoryBudget budget = new MemoryBudget(0);
+        pool.attachBudget(budget);
+        pool.recycleSegment(new char[64]);
+        pool.recycleSegment(new char[512]);
+
+        assertEquals(1024, pool.trim(1));
+        assertEquals(128, budget.getUsedBytes());
+        assertEquals(128, pool.trim(Long.MAX_VALUE));
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, pool.getResidentBytes());
+    }
+}
@@ -0,0 +1,122 @@
+package com.xjtu.springboot.component.pool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadExecutorTest {
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 1, 2,
+            command -> rejected.incrementAndGet(), (t, e) -> { }, Executors.defaultThreadFactory());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waitingTasksBeyondCapacityAreRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(ran::incrementAndGet);
+        executor.execute(ran::incrementAndGet);
+        executor.execute(ran::incrementAndGet);
+        assertEquals(1, rejected.get());
+        assertEquals(2, executor.getWaitingCount());
+
+        release.countDown();
+        waitUntil(() -> ran.get() == 2);
+        assertEquals(0, executor.getWaitingCount());
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    void removedWaitingTaskNeverRunsAndFreesItsSlot() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        AtomicInteger ran = new AtomicInteger();
+        Runnable task = ran::incrementAndGet;
+        executor.execute(task);
+        waitUntil(() -> executor.remove(task));
+        waitUntil(() -> executor.getWaitingCount() == 0);
+
+        release.countDown();
+        executor.execute(ran::incrementAndGet);
+        waitUntil(() -> ran.get() == 1);
+        assertFalse(executor.remove(task));
+        assertEquals(0, rejected.get());
+    }
+
+    @Test
+    void burstWaitsWithoutOneThreadPerTask() throws Exception {
+        VirtualThreadExecutor unbounded = new VirtualThreadExecutor("burst", 2, 0,
+                command -> rejected.incrementAndGet(), (t, e) -> { }, Executors.defaultThreadFactory());
+        CountDownLatch release = new CountDownLatch(1);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger done = new AtomicInteger();
+        try {
+            for (int i = 0; i < 200; i++) {
+                unbounded.execute(() -> {
+                    threads.add(Thread.currentThread());
+                    await(release);
+                    done.incrementAndGet();
+                });
+            }
+            waitUntil(() -> unbounded.getActiveCount() == 2);
+            assertEquals(198, unbounded.getWaitingCount());
+            release.countDown();
+            waitUntil(() -> done.get() == 200);
+            assertEquals(0, rejected.get());
+            if (!unbounded.isVirtual()) {
+                // 平台线程模式：等待的任务在队列中，线程数不超过最大并发
+                assertTrue(threads.size() <= 2);
+            }
+        } finally {
+            unbounded.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectionAfterShutdownReturnsWaitingSlot() {
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(0, executor.getWaitingCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
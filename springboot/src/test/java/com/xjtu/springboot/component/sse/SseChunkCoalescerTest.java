@@ -0,0 +1,83 @@
+package com.xjtu.springboot.component.sse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseChunkCoalescerTest {
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flushExecutor;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+
+    @Test
+    void mergesWithinWindowAndKeepsOrder() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        SseChunkCoalescer coalescer = new SseChunkCoalescer(10_000, 8, scheduler, flushExecutor,
+                (text, thinking) -> sent.add((thinking ? "T:" : "R:") + text));
+
+        coalescer.append("a", true);
+        coalescer.append("b", true);
+        coalescer.append("c", true);
+        coalescer.append("d", false);
+        coalescer.append("123456789", false);
+        coalescer.append("e", false);
+        coalescer.close();
+        coalescer.append("late", false);
+
+        assertEquals(List.of("T:a", "T:bc", "R:d123456789", "R:e"), sent);
+    }
+
+    @Test
+    void slowSinkBlocksNeitherAppendNorSharedTimer() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        SseChunkCoalescer coalescer = new SseChunkCoalescer(20, 256, scheduler, flushExecutor, (text, thinking) -> {
+            if (sent.isEmpty()) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sent.add(text);
+        });
+
+        // 首个分块立即发送，发送阻塞
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> coalescer.append("first", false));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // 发送期间仍可追加（不持有合并状态锁）
+        CompletableFuture.runAsync(() -> coalescer.append("second", false)).get(1, TimeUnit.SECONDS);
+        // 窗口到期后共用的定时线程没有被阻塞
+        Thread.sleep(100);
+        scheduler.schedule(() -> { }, 0, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        coalescer.close();
+        assertEquals(List.of("first", "second"), sent);
+    }
+}
@@ -0,0 +1,120 @@
+package com.xjtu.springboot.component.storage;
+
+import com.xjtu.springboot.component.pool.StringBufferPool;
+import com.xjtu.springboot.config.MessageHolderConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalSessionTest {
+    private MessageHolderConfig config;
+    private StringBufferPool pool;
+    private LocalSession storage;
+
+    @BeforeEach
+    void setUp() {
+        config = new MessageHolderConfig();
+        config.setBufferInitialCapacity(64);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        pool = new StringBufferPool(config, meterRegistry);
+        pool.initPool();
+        storage = new LocalSession(config, pool, meterRegistry);
+    }
+
+    @Test
+    void ropeSpansSegmentsAndReturnsBudgetOnRelease() {
+        MemoryBudget budget = new MemoryBudget(0);
+        TokenRope rope = new TokenRope(pool, budget);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            String token = "token-" + i + ";";
+            assertTrue(rope.append(token));
+            expected.append(token);
+        }
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(expected.length(), rope.length());
+        assertEquals(rope.getReservedBytes(), budget.getUsedBytes());
+
+        rope.release();
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, rope.length());
+        assertFalse(rope.append("late"));
+    }
+
+    @Test
+    void clearedSessionIsNotReadAfterRelease() {
+        storage.init(1L, 10L);
+        assertTrue(storage.appendContent(1L, 10L, "reply", false));
+        storage.clear(1L, 10L);
+
+        assertEquals("", storage.getContent(1L, 10L, false));
+        // 只剩分段池中常驻的分段
+        assertEquals(pool.getResidentBytes(), storage.getUsedBytes());
+        assertEquals(0, storage.getActiveSessionCount());
+        assertEquals(0, storage.getActiveUserCount());
+    }
+
+    @Test
+    void concurrentClearNeverReleasesUnderReader() throws Exception {
+        String token = "0123456789".repeat(20);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Void> clearer = CompletableFuture.runAsync(() -> {
+            while (running.get()) {
+                storage.clear(1L, 10L);
+                storage.clearAll(1L);
+            }
+        });
+        for (int round = 0; round < 2000; round++) {
+            storage.init(1L, 10L);
+            for (int i = 0; i < 8; i++) {
+                storage.appendContent(1L, 10L, token, i % 2 == 0);
+            }
+            // 读取的内容要么完整要么为空，不会读到已归还到池的分段
+            String thinking = storage.getContent(1L, 10L, true);
+            String reply = storage.getContent(1L, 10L, false);
+            assertEquals(0, thinking.length() % token.length());
+            assertEquals(0, reply.length() % token.length());
+            assertTrue(thinking.replace(token, "").isEmpty());
+            assertTrue(reply.replace(token, "").isEmpty());
+        }
+        running.set(false);
+        clearer.get(10, TimeUnit.SECONDS);
+        storage.clearAll(1L);
+
+        assertEquals(pool.getResidentBytes(), storage.getUsedBytes());
+        assertEquals(0, storage.getActiveSessionCount());
+    }
+
+    @Test
+    void budgetEvictsIdleSessionsInExpiryOrderAndSkipsActiveOnes() throws Exception {
+        config.setBufferPoolSize(0);
+        config.setGlobalMaxContentBytes(3 * 128);
+        config.setEvictIdleMs(200);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        pool = new StringBufferPool(config, meterRegistry);
+        pool.initPool();
+        storage = new LocalSession(config, pool, meterRegistry);
+        // 每个会话占一个分段（64字符，128字节），预算正好三个
+        for (long sessionId = 1; sessionId <= 3; sessionId++) {
+            storage.init(1L, sessionId);
+            assertTrue(storage.appendContent(1L, sessionId, "reply-" + sessionId, false));
+        }
+        Thread.sleep(300);
+        // 会话1期间活跃过：到期索引中的条目已过时，回收时重新入队而不是被回收
+        assertTrue(storage.appendContent(1L, 1L, "+", false));
+
+        storage.init(1L, 4L);
+        assertTrue(storage.appendContent(1L, 4L, "reply-4", false));
+        assertEquals("reply-1+", storage.getContent(1L, 1L, false));
+        assertEquals("", storage.getContent(1L, 2L, false));
+        assertEquals("reply-3", storage.getContent(1L, 3L, false));
+        assertEquals("reply-4", storage.getContent(1L, 4L, false));
+        assertEquals(0, storage.getActiveSessionCount());
+    }
+}
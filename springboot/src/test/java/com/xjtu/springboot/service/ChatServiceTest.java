@@ -0,0 +1,116 @@
+package com.xjtu.springboot.service;
+
+import com.xjtu.springboot.component.cache.MessageHistoryCache;
+import com.xjtu.springboot.component.persist.MessageWriteBehind;
+import com.xjtu.springboot.config.HistoryCacheConfig;
+import com.xjtu.springboot.config.WriteBehindConfig;
+import com.xjtu.springboot.dto.chat.ChatDto;
+import com.xjtu.springboot.dto.chat.MsgDto;
+import com.xjtu.springboot.exception.CustomException;
+import com.xjtu.springboot.mapper.MessageMapper;
+import com.xjtu.springboot.mapper.SessionMapper;
+import com.xjtu.springboot.pojo.Message;
+import com.xjtu.springboot.pojo.Session;
+import com.xjtu.springboot.pojo.common.MsgType;
+import com.xjtu.springboot.pojo.common.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatServiceTest {
+    private final List<Message> inserted = new ArrayList<>();
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(null, null, null, new WriteBehindConfig());
+        MessageHistoryCache historyCache = new MessageHistoryCache(new HistoryCacheConfig(), new SimpleMeterRegistry());
+        chatService = new ChatService(sessionMapper(), messageMapper(), null, writeBehind, historyCache,
+                null, null, null, null, null);
+    }
+
+    @Test
+    void fullResendPersistsOnlyTheFinalUserMessage() {
+        ChatDto chatDto = fullResend(
+                msg(Role.USER, "question-1"),
+                msg(Role.ASSISTANT, "answer-1"),
+                msg(Role.USER, "question-2"),
+                msg(Role.USER, "question-3"));
+
+        ChatDto result = chatService.updateSession(chatDto, true);
+
+        // 之前的用户消息服务端已保存，不重复插入
+        assertEquals(1, inserted.size());
+        assertEquals("question-3", inserted.get(0).getContent());
+        assertEquals(Role.USER.getRole().byteValue(), inserted.get(0).getRole().byteValue());
+        // prompt仍使用客户端的完整对话
+        assertEquals(4, result.getMessageList().size());
+    }
+
+    @Test
+    void fullResendRejectsMissingOrUnsupportedRoles() {
+        MsgDto missingRole = msg(Role.USER, "question-2");
+        missingRole.setRole(null);
+        assertBadRequest(fullResend(msg(Role.USER, "question-1"), missingRole));
+        assertBadRequest(fullResend(msg(Role.SYSTEM, "system prompt"), msg(Role.USER, "question-1")));
+        assertBadRequest(fullResend(msg(Role.USER, "question-1"), msg(Role.ASSISTANT, "answer-1")));
+        assertTrue(inserted.isEmpty());
+    }
+
+    private void assertBadRequest(ChatDto chatDto) {
+        CustomException ex = assertThrows(CustomException.class, () -> chatService.updateSession(chatDto, true));
+        assertEquals(400, ex.getCode().intValue());
+    }
+
+    private static ChatDto fullResend(MsgDto... messages) {
+        ChatDto chatDto = new ChatDto();
+        chatDto.setIsLogin(true);
+        chatDto.setUserId(1L);
+        chatDto.setSessionId(10L);
+        chatDto.setRole(Role.USER.getRole().byteValue());
+        chatDto.setFullResend(true);
+        chatDto.setMessageList(new ArrayList<>(List.of(messages)));
+        return chatDto;
+    }
+
+    private static MsgDto msg(Role role, String content) {
+        return MsgDto.builder()
+                .role(role.getRole())
+                .type(MsgType.TEXT.getType())
+                .content(content)
+                .build();
+    }
+
+    private SessionMapper sessionMapper() {
+        return (SessionMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SessionMapper.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "selectSessionByIds" -> {
+                        Session session = new Session();
+                        session.setUserId((Long) args[0]);
+                        session.setId((Long) args[1]);
+                        yield session;
+                    }
+                    case "updateByPrimaryKey" -> 1;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private MessageMapper messageMapper() {
+        return (MessageMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MessageMapper.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "selectByIds" -> Collections.emptyList();
+                    case "insert" -> {
+                        inserted.add((Message) args[0]);
+                        yield 1;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
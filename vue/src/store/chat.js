@@ -34,6 +34,9 @@ export const useChatStore = defineStore('chat', {
       messageList: [],
       sendTime: null,
       tokenCount: 0,
+      // 增量协议：已知的最后一条消息ID / 是否完整重发
+      lastMsgId: null,
+      fullResend: false,
     },
   }),
 
@@ -93,6 +96,8 @@ export const useChatStore = defineStore('chat', {
         messageList: [],
         sendTime: null,
         tokenCount: 0,
+        lastMsgId: null,
+        fullResend: false,
         isDeepThink: 0,
         isNetworkSearch: 0,
       }